@@ -0,0 +1,269 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Point d'entrée en ligne de commande, sans interface graphique : lance le
+//même téléchargement que Main, pour les scripts ou un serveur sans écran.
+//Aucune classe AWT ou Swing n'est chargée.
+//java -cp <jar> fr.bloomenetwork.fatestaynight.packager.Cli --help
+public class Cli {
+
+    //Codes de sortie
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED_DOCUMENTS = 1;
+    public static final int EXIT_USAGE = 2;
+    public static final int EXIT_DRIVE_ERROR = 3;
+    public static final int EXIT_INTERRUPTED = 130;
+
+    //Délai laissé aux documents en cours lors d'un Ctrl+C
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+
+    private static final String USAGE = String.join("\n",
+            "Usage : java -cp <jar> fr.bloomenetwork.fatestaynight.packager.Cli [options]",
+            "  -o, --output DOSSIER    répertoire de sortie (package)",
+            "  -t, --threads N         nombre de threads de traitement (" + PackagingScheduler.DEFAULT_THREADS + ")",
+            "  -r, --routes R1,R2      routes à télécharger (toutes) : " + String.join(", ", PackagingRun.ROUTES),
+            "      --resume MODE       resume, failures ou full (resume)",
+            "      --print NIVEAUX     niveaux affichés, ex. info,error (info,debug,error)",
+            "      --log NIVEAUX       niveaux journalisés (error,syntax)",
+            "      --log-file FICHIER  fichier où sauvegarder le journal à la fin",
+            "      --report FORMAT     json, text ou none (json)",
+            "      --report-file FICHIER",
+            "  -h, --help",
+            "Codes de sortie : 0 succès, 1 documents en échec, 2 usage, 3 erreur Google Drive, 130 interrompu.");
+
+    private static class UsageException extends Exception {
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    String outputFolder = "package";
+    int threads = PackagingScheduler.DEFAULT_THREADS;
+    List<String> routes = new ArrayList<>(Arrays.asList(PackagingRun.ROUTES));
+    CheckpointJournal.Mode resumeMode = CheckpointJournal.Mode.RESUME;
+    String logFile = null;
+    String reportFormat = "json";
+    String reportFile = null;
+
+    public static void main(String[] args) {
+        //l'autorisation Google Drive affiche alors son adresse au lieu d'ouvrir un navigateur
+        System.setProperty("java.awt.headless", "true");
+        System.exit(new Cli().run(args));
+    }
+
+    public int run(String[] args) {
+        try {
+            if (!parse(args)) {
+                System.out.println(USAGE);
+                return EXIT_OK;
+            }
+        } catch (UsageException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        GoogleAPI googleAPI;
+        try {
+            googleAPI = new GoogleAPI();
+            Utils.print("Connecté à l'API Google Drive.\n");
+        } catch (GeneralSecurityException | IOException e) {
+            Utils.print(e.toString(), Utils.ERROR);
+            return EXIT_DRIVE_ERROR;
+        }
+
+        ProgressBus progressBus = new ProgressBus();
+        progressBus.addListener(new LogProgressListener(PROGRESS_INTERVAL_MS));
+        PackagingRun run = new PackagingRun(googleAPI, progressBus, new PipelineMetrics());
+        run.setOutputFolder(outputFolder);
+        run.setThreads(threads);
+        run.setResumeMode(resumeMode);
+
+        //Ctrl+C : les documents en cours sont terminés et le journal fermé
+        Thread shutdownHook = new Thread(() -> {
+            run.stop();
+            try {
+                run.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "cli-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try {
+            run.start(routes);
+            run.await();
+        } catch (IOException e) {
+            Utils.print(e.toString(), Utils.ERROR);
+            return EXIT_DRIVE_ERROR;
+        } catch (InterruptedException e) {
+            run.stop();
+            return EXIT_INTERRUPTED;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // arrêt de la JVM déjà en cours
+        }
+
+        ProgressSnapshot snapshot = progressBus.snapshot();
+        writeReport(new RunReport(run.getMetrics(), snapshot));
+        if (logFile != null)
+            Utils.saveLog(logFile);
+
+        if (run.isStopped())
+            return EXIT_INTERRUPTED;
+        List<String> unlisted = run.unlistedRoutes();
+        if (!unlisted.isEmpty()) {
+            Utils.print("Routes non listées : " + String.join(", ", unlisted), Utils.ERROR);
+            return EXIT_DRIVE_ERROR;
+        }
+        return snapshot.overall.failed > 0 ? EXIT_FAILED_DOCUMENTS : EXIT_OK;
+    }
+
+    private void writeReport(RunReport report) {
+        try {
+            switch (reportFormat) {
+                case "json":
+                    if (reportFile != null)
+                        report.write(Paths.get(reportFile));
+                    Utils.print("Rapport d'exécution écrit : " + (reportFile != null ? reportFile : report.write()));
+                    break;
+                case "text":
+                    if (reportFile != null) {
+                        Path path = Paths.get(reportFile);
+                        if (path.getParent() != null)
+                            Files.createDirectories(path.getParent());
+                        Files.write(path, report.toText().getBytes(StandardCharsets.UTF_8));
+                    } else {
+                        System.out.print(report.toText());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            Utils.print("Impossible d'écrire le rapport d'exécution : " + e, Utils.ERROR);
+        }
+    }
+
+    //Retourne false si l'aide a été demandée
+    boolean parse(String[] args) throws UsageException {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h": case "--help":
+                    return false;
+                case "-o": case "--output":
+                    outputFolder = value(args, ++i, arg);
+                    break;
+                case "-t": case "--threads":
+                    try {
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new UsageException("Nombre de threads invalide : " + args[i]);
+                    }
+                    if (threads < 1)
+                        throw new UsageException("Nombre de threads invalide : " + threads);
+                    break;
+                case "-r": case "--routes":
+                    routes = parseRoutes(value(args, ++i, arg));
+                    break;
+                case "--resume":
+                    resumeMode = parseResumeMode(value(args, ++i, arg));
+                    break;
+                case "--print":
+                    boolean[] printed = parseLevels(value(args, ++i, arg));
+                    for (int level = 0; level < printed.length; level++)
+                        Utils.setLevelPrinted(level, printed[level]);
+                    break;
+                case "--log":
+                    boolean[] logged = parseLevels(value(args, ++i, arg));
+                    for (int level = 0; level < logged.length; level++)
+                        Utils.setLevelLogged(level, logged[level]);
+                    break;
+                case "--log-file":
+                    logFile = value(args, ++i, arg);
+                    break;
+                case "--report":
+                    reportFormat = value(args, ++i, arg);
+                    if (!Arrays.asList("json", "text", "none").contains(reportFormat))
+                        throw new UsageException("Format de rapport inconnu : " + reportFormat);
+                    break;
+                case "--report-file":
+                    reportFile = value(args, ++i, arg);
+                    break;
+                default:
+                    throw new UsageException("Option inconnue : " + arg);
+            }
+        }
+        return true;
+    }
+
+    private static String value(String[] args, int i, String option) throws UsageException {
+        if (i >= args.length)
+            throw new UsageException("Valeur manquante pour " + option);
+        return args[i];
+    }
+
+    private static List<String> parseRoutes(String value) throws UsageException {
+        List<String> result = new ArrayList<>();
+        for (String name : value.split(",")) {
+            String route = findRoute(name.trim());
+            if (route == null)
+                throw new UsageException("Route inconnue : " + name.trim());
+            if (!result.contains(route))
+                result.add(route);
+        }
+        return result;
+    }
+
+    //Accepte le nom exact du dossier ou ses initiales (ubw, hf...), sans tenir compte de la casse
+    private static String findRoute(String name) {
+        for (String route : PackagingRun.ROUTES) {
+            StringBuilder initials = new StringBuilder();
+            for (String word : route.split(" "))
+                initials.append(word.charAt(0));
+            if (route.equalsIgnoreCase(name) || (route.contains(" ") && initials.toString().equalsIgnoreCase(name)))
+                return route;
+        }
+        return null;
+    }
+
+    private static CheckpointJournal.Mode parseResumeMode(String value) throws UsageException {
+        switch (value.toLowerCase()) {
+            case "resume":
+                return CheckpointJournal.Mode.RESUME;
+            case "failures":
+                return CheckpointJournal.Mode.RETRY_FAILURES;
+            case "full":
+                return CheckpointJournal.Mode.FULL;
+            default:
+                throw new UsageException("Mode de reprise inconnu : " + value);
+        }
+    }
+
+    private static boolean[] parseLevels(String value) throws UsageException {
+        boolean[] levels = new boolean[Utils.LEVEL_NAMES.length];
+        if (value.equalsIgnoreCase("none"))
+            return levels;
+        for (String name : value.split(",")) {
+            int level = Arrays.asList(Utils.LEVEL_NAMES).indexOf(name.trim().toUpperCase());
+            if (level < 0)
+                throw new UsageException("Niveau inconnu : " + name.trim());
+            levels[level] = true;
+        }
+        return levels;
+    }
+}
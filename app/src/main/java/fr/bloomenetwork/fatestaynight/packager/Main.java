@@ -8,10 +8,11 @@ import java.awt.FlowLayout;
 import java.awt.GridBagLayout;
 import java.awt.GridBagConstraints;
 import java.io.IOException;
-import java.security.GeneralSecurityException;
+import java.util.Arrays;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -19,6 +20,7 @@ import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.BorderFactory;
 
 import java.awt.event.*;
@@ -31,16 +33,26 @@ public class Main extends JFrame {
 
     //Composants graphiques
     private JButton connectionButton;
+    private JButton stopButton;
     private JTextField tfOutputFolder;
     private JTextField tfLogFile;
     private JButton saveLogButton;
+    private JComboBox<CheckpointJournal.Mode> resumeModeBox;
     private JTextArea textOutput;
     private JProgressBar progressBarFate;
     private JProgressBar progressBarUBW;
     private JProgressBar progressBarHF;
+    private JLabel progressLabel;
 
     //Gestion de l'API Google Drive
-    private GoogleAPI googleAPI = null;
+    private volatile GoogleAPI googleAPI = null;
+
+    //Avancement du téléchargement, publié vers les barres de chargement
+    private final ProgressBus progressBus = new ProgressBus();
+    //Durées de chaque étape, pour le rapport d'exécution
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    //Téléchargement en cours
+    private volatile PackagingRun run = null;
 
     public Main() {
         JPanel configPane = new JPanel(new GridBagLayout());
@@ -61,6 +73,10 @@ public class Main extends JFrame {
         constraints.gridx = 6;
         constraints.gridwidth = 1;
         configPane.add(connectionButton, constraints);
+        stopButton = new JButton("Arrêter");
+        stopButton.setEnabled(false);
+        constraints.gridx = 7;
+        configPane.add(stopButton, constraints);
         //ajouter le listener sur le JTextField
         tfOutputFolder.addActionListener(new ActionListener() {
             //capturer un événement sur le JTextField
@@ -74,7 +90,7 @@ public class Main extends JFrame {
         });
         JCheckBox[] printLevels = new JCheckBox[4];
         JCheckBox[] logLevels = new JCheckBox[4];
-        String[] levelNames = {"INFO", "DEBUG", "ERROR", "SYNTAX"};
+        String[] levelNames = Utils.LEVEL_NAMES;
         constraints.gridx = 0;
         constraints.gridy = 1;
         constraints.gridwidth = 1;
@@ -107,6 +123,14 @@ public class Main extends JFrame {
         constraints.gridx = 5;
         constraints.gridwidth = 2;
         configPane.add(saveLogButton, constraints);
+        constraints.gridx = 0;
+        constraints.gridy = 3;
+        constraints.gridwidth = 2;
+        configPane.add(new JLabel("Reprise :"), constraints);
+        resumeModeBox = new JComboBox<>(CheckpointJournal.Mode.values());
+        constraints.gridx = 2;
+        constraints.gridwidth = 3;
+        configPane.add(resumeModeBox, constraints);
         
         textOutput = new JTextArea();
         textOutput.setRows(15);
@@ -135,52 +159,46 @@ public class Main extends JFrame {
         progressBarHF.setStringPainted(true);
         progressBarHF.setForeground(new Color(98, 46, 98));
         progressBarHF.setBorderPainted(false);
+        // Débit et temps restant
+        progressLabel = new JLabel(" ", JLabel.CENTER);
+        // Les barres sont mises à jour sur l'EDT à chaque publication de l'avancement
+        progressBus.addListener(snapshot -> SwingUtilities.invokeLater(() -> updateProgress(snapshot)));
 
-        //Listener sur le premier bouton qui permet d'initialiser le service de l'API Google
+        //Listener sur le premier bouton qui permet d'initialiser le service de l'API Google.
+        //La connexion (et l'autorisation dans le navigateur) se fait hors de
+        //l'EDT ; le téléchargement n'est lancé qu'une fois le client prêt
         connectionButton.addActionListener(e -> {
-            try {
-                googleAPI = new GoogleAPI();
-                connectionButton.setEnabled(false);
-                connectionButton.setText("Téléchargement");
-                Utils.print("Connecté à l'API Google Drive.\n");
-            } catch (GeneralSecurityException | IOException e1) {
-                Utils.print(e1.toString(), Utils.ERROR);
-            }
+            connectionButton.setEnabled(false);
+            connectionButton.setText("Connexion...");
+            tfOutputFolder.setEditable(false);
+            resumeModeBox.setEnabled(false);
+            String folder = tfOutputFolder.getText();
+            CheckpointJournal.Mode resumeMode = (CheckpointJournal.Mode) resumeModeBox.getSelectedItem();
 
-            // Démarre le téléchargement de tous les fichiers de script dans différents Thread
-            FetchingThread ftFate = new FetchingThread(googleAPI, progressBarFate, "Fate");
-            FetchingThread ftUBW = new FetchingThread(googleAPI, progressBarUBW, "Unlimited Blade Works");
-            FetchingThread ftHF = new FetchingThread(googleAPI, progressBarHF, "Heavens Feel");
-            //FetchingThread ftStatuts = new FetchingThread(googleAPI, progressBarHF, "Statuts");
-            FetchingThread ftAdditional = new FetchingThread(googleAPI, progressBarHF, "Scripts supplémentaires");
+            GoogleAPI.connect().whenComplete((api, error) -> {
+                if (error != null) {
+                    Utils.print(error.toString(), Utils.ERROR);
+                    SwingUtilities.invokeLater(this::resetForm);
+                    return;
+                }
+                googleAPI = api;
+                Utils.print("Connecté à l'API Google Drive.\n");
+                SwingUtilities.invokeLater(() -> connectionButton.setText("Téléchargement"));
+                startRun(folder, resumeMode);
+            });
+        });
 
-            tfOutputFolder.setEditable(false);
-            // Crée le répertoire si celui-ci n'existe pas
-            createDirectory();
-
-            ftFate.setOutputFolder(tfOutputFolder.getText());
-            ftUBW.setOutputFolder(tfOutputFolder.getText());
-            ftHF.setOutputFolder(tfOutputFolder.getText());
-            //ftStatuts.setOutputFolder(tfOutputFolder.getText());
-            ftAdditional.setOutputFolder(tfOutputFolder.getText());
-
-            Thread tFate = new Thread(ftFate);
-            Thread tUBW = new Thread(ftUBW);
-            Thread tHF = new Thread(ftHF);
-            //Thread tStatuts = new Thread(ftStatuts);
-            Thread tAdditional = new Thread(ftAdditional);
-
-            tFate.start();
-            tUBW.start();
-            tHF.start();
-            //tStatuts.start();
-            tAdditional.start();
+        //Arrête le téléchargement après les documents en cours
+        stopButton.addActionListener(e -> {
+            stopButton.setEnabled(false);
+            if (run != null)
+                run.stop();
         });
 
         //Mise en page de la fenêtre
         this.setTitle("Fate/Stay Night Packager - 0.9");
         this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        this.setSize(600, 374);
+        this.setSize(680, 424);
 
         //Barres de chargement
         progressPane.add(new JLabel(" Fate ", JLabel.CENTER));
@@ -190,19 +208,93 @@ public class Main extends JFrame {
         progressPane.add(progressBarUBW, BorderLayout.CENTER);
         progressPane.add(progressBarHF, BorderLayout.CENTER);
         progressPane.setLayout(new GridLayout(2,3));
+        JPanel southPane = new JPanel(new BorderLayout());
+        southPane.add(progressPane, BorderLayout.CENTER);
+        southPane.add(progressLabel, BorderLayout.SOUTH);
 
         JScrollPane scrollPane = new JScrollPane(textOutput);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         scrollPane.setBorder(null);
 
         this.add(configPane, BorderLayout.NORTH);
-        this.add(progressPane, BorderLayout.SOUTH);
+        this.add(southPane, BorderLayout.SOUTH);
         this.add(scrollPane);
 
         this.setLocationRelativeTo(null);
         this.setVisible(true);
     }
 
+    /**
+     * Lance le téléchargement une fois connecté. Appelé hors de l'EDT : le
+     * journal et l'index de recherche sont relus avant le départ.
+     */
+    private void startRun(String folder, CheckpointJournal.Mode resumeMode) {
+        run = new PackagingRun(googleAPI, progressBus, metrics);
+        run.setOutputFolder(folder);
+        run.setResumeMode(resumeMode);
+        //appelé après les vérifications du corpus, que le rapport d'exécution inclut
+        run.setOnFinished(() -> {
+            writeRunReport(progressBus.snapshot());
+            SwingUtilities.invokeLater(() -> {
+                stopButton.setEnabled(false);
+                connectionButton.setText("Terminé");
+            });
+        });
+        //activé avant le départ : la fin du téléchargement le désactive ensuite
+        SwingUtilities.invokeLater(() -> stopButton.setEnabled(true));
+        try {
+            run.start(Arrays.asList(PackagingRun.ROUTES));
+        } catch (IOException | RuntimeException e) {
+            //journal ou dossier de sortie inutilisable : le formulaire redevient modifiable
+            Utils.print(e.toString(), Utils.ERROR);
+            SwingUtilities.invokeLater(this::resetForm);
+        }
+    }
+
+    /**
+     * Rend la main à l'utilisateur après un échec de la connexion ou du
+     * lancement. Doit être appelé sur l'EDT.
+     */
+    private void resetForm() {
+        stopButton.setEnabled(false);
+        connectionButton.setText("Télécharger");
+        connectionButton.setEnabled(true);
+        tfOutputFolder.setEditable(true);
+        resumeModeBox.setEnabled(true);
+    }
+
+    /**
+     * Met à jour les barres de chargement. Doit être appelé sur l'EDT.
+     * La barre HF regroupe Heaven's Feel et les scripts supplémentaires.
+     */
+    private void updateProgress(ProgressSnapshot snapshot) {
+        updateProgressBar(progressBarFate, snapshot, "Fate");
+        updateProgressBar(progressBarUBW, snapshot, "Unlimited Blade Works");
+        updateProgressBar(progressBarHF, snapshot, "Heavens Feel", "Scripts supplémentaires");
+        progressLabel.setText(snapshot.format());
+    }
+
+    private static void updateProgressBar(JProgressBar progressBar, ProgressSnapshot snapshot, String... routes) {
+        int total = 0, processed = 0;
+        for (String route : routes) {
+            ProgressSnapshot.Counters counters = snapshot.routes.get(route);
+            if (counters != null) {
+                total += counters.total;
+                processed += counters.processed();
+            }
+        }
+        progressBar.setMaximum(total);
+        progressBar.setValue(processed);
+    }
+
+    private void writeRunReport(ProgressSnapshot snapshot) {
+        try {
+            Utils.print("Rapport d'exécution écrit : " + new RunReport(metrics, snapshot).write());
+        } catch (IOException e) {
+            Utils.print("Impossible d'écrire le rapport d'exécution : " + e, Utils.ERROR);
+        }
+    }
+
     /**
      * Crée un répertoire du nom du JTextField si celui-ci n'existe pas déjà
      */
@@ -217,6 +309,8 @@ public class Main extends JFrame {
     }
 
     public static void main(String[] args) {
+        //Le transport HTTPS se prépare pendant la construction de la fenêtre
+        GoogleAPI.warmUp();
         Main main = new Main();
     }
 
@@ -0,0 +1,68 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Entrées des benchmarks, construites à partir des exemples de src/jmh/resources/bench :
+//un script de quatre pages (dialogues, citations, @if/@else, quelques erreurs)
+//et un fichier de traduction, répétés à la taille voulue.
+class BenchmarkInputs {
+
+    static String resource(String name) throws IOException {
+        try (InputStream is = BenchmarkInputs.class.getResourceAsStream("/bench/" + name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1)
+                out.write(buffer, 0, len);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    //Script de `pages` pages numérotées à la suite, sans BOM comme en sortie de docxToTxt
+    static String scenario(int pages) throws IOException {
+        String[] sample = resource("scenario.ks").split("(?=\\*page)");
+        StringBuilder sb = new StringBuilder();
+        for (int page = 0; page < pages; page++) {
+            String text = sample[page % sample.length];
+            sb.append("*page").append(page).append(text.substring(text.indexOf('|')));
+        }
+        return sb.toString();
+    }
+
+    static String translation(int entries) throws IOException {
+        String sample = resource("translation.po");
+        int first = sample.indexOf("\n#:") + 1;
+        String header = sample.substring(0, first);
+        String[] blocks = sample.substring(first).split("\n(?=#:)");
+        StringBuilder sb = new StringBuilder(header);
+        for (int i = 0; i < entries; i++) {
+            String block = blocks[i % blocks.length].replaceFirst("msgctxt \"c\\d+\"", "msgctxt \"c" + i + "\"");
+            sb.append(block.endsWith("\n") ? block : block + "\n").append('\n');
+        }
+        return sb.toString();
+    }
+
+    //Lignes de texte du script (ni commande, ni marque de page, ni commentaire)
+    static String[] textLines(String scenario) {
+        List<String> lines = new ArrayList<>();
+        for (String line : scenario.split("\n")) {
+            if (!line.isEmpty() && "@*;".indexOf(line.charAt(0)) == -1)
+                lines.add(line);
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    //Exports Google Docs : voir CorpusGenerator
+    static String documentXml(String text) {
+        return CorpusGenerator.documentXml(text);
+    }
+
+    static byte[] docx(String documentXml) throws IOException {
+        return CorpusGenerator.docxFromXml(documentXml);
+    }
+}
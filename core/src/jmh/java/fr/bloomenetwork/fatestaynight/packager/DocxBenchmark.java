@@ -0,0 +1,51 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//Conversion d'un export Google Docs en texte : extraction de
+//word/document.xml, puis remplacement des balises.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocxBenchmark {
+
+    //Nombre de pages du script exporté
+    @Param({"20", "400"})
+    public int pages;
+
+    private String documentXml;
+    private byte[] docx;
+
+    @Setup
+    public void setup() throws IOException {
+        documentXml = BenchmarkInputs.documentXml(BenchmarkInputs.scenario(pages));
+        docx = BenchmarkInputs.docx(documentXml);
+    }
+
+    @Benchmark
+    public String docxToTxt() {
+        return Utils.docxToTxt(documentXml);
+    }
+
+    @Benchmark
+    public String extractAndConvert() throws IOException {
+        return Utils.docxToTxt(new ByteArrayInputStream(docx));
+    }
+}
@@ -0,0 +1,76 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//Chaque correcteur de TextProcess, appliqué à toutes les lignes de texte
+//du script d'exemple (une opération = toutes les lignes).
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LineFixBenchmark {
+
+    private String[] lines;
+    private BiFunction<String, Integer, Void> report;
+
+    @Setup
+    public void setup(Blackhole bh) throws IOException {
+        lines = BenchmarkInputs.textLines(BenchmarkInputs.scenario(4));
+        report = (msg, column) -> {
+            bh.consume(msg);
+            return null;
+        };
+    }
+
+    @Benchmark
+    public void fixNbsp(Blackhole bh) {
+        for (String line : lines)
+            bh.consume(TextProcess.fixNbsp(line));
+    }
+
+    @Benchmark
+    public void fixApostrophes(Blackhole bh) {
+        for (String line : lines)
+            bh.consume(TextProcess.fixApostrophes(line, report));
+    }
+
+    @Benchmark
+    public void fixSuspensionPoints(Blackhole bh) {
+        for (String line : lines)
+            bh.consume(TextProcess.fixSuspensionPoints(line, report));
+    }
+
+    @Benchmark
+    public void fixAlinea(Blackhole bh) {
+        for (String line : lines)
+            bh.consume(TextProcess.fixAlinea(line, 2, report));
+    }
+
+    @Benchmark
+    public void fixQuotes(Blackhole bh) {
+        for (String line : lines)
+            bh.consume(TextProcess.fixQuotes(line, false, report));
+    }
+
+    @Benchmark
+    public void reportErrors() {
+        for (String line : lines)
+            TextProcess.reportErrors(line, report);
+    }
+}
@@ -0,0 +1,74 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+//Vérification de fichiers entiers. Le cache des lignes (LineCache) est
+//désactivé, sauf pour les variantes *LineCache : dès la deuxième itération,
+//toutes les lignes y sont déjà en cache. fixScenarioFileArena se compare
+//ainsi à fixScenarioFile, et fixScenarioFileArenaLineCache à fixScenarioFileLineCache.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfsn.lint.lineCache=0")
+@State(Scope.Benchmark)
+public class TextProcessBenchmark {
+
+    //Nombre de pages du script, entrées du fichier de traduction
+    @Param({"20", "400"})
+    public int size;
+
+    private String scenario;
+    private String translation;
+    //Le même script, rangé dans une TextArena
+    private TextView arenaScenario;
+
+    @Setup
+    public void setup() throws IOException {
+        scenario = BenchmarkInputs.scenario(size);
+        translation = BenchmarkInputs.translation(size);
+        TextArena arena = new TextArena();
+        arenaScenario = arena.text(arena.put("bench.ks", scenario));
+    }
+
+    @Benchmark
+    public String fixScenarioFile(Blackhole bh) throws Exception {
+        return TextProcess.fixScenarioFile("bench.ks", scenario, bh::consume);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dfsn.lint.lineCache=65536")
+    public String fixScenarioFileLineCache(Blackhole bh) throws Exception {
+        return TextProcess.fixScenarioFile("bench.ks", scenario, bh::consume);
+    }
+
+    @Benchmark
+    public String fixScenarioFileArena(Blackhole bh) throws Exception {
+        return TextProcess.fixScenarioFile("bench.ks", arenaScenario, bh::consume);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dfsn.lint.lineCache=65536")
+    public String fixScenarioFileArenaLineCache(Blackhole bh) throws Exception {
+        return TextProcess.fixScenarioFile("bench.ks", arenaScenario, bh::consume);
+    }
+
+    @Benchmark
+    public String fixTranslationFile(Blackhole bh) {
+        return TextProcess.fixTranslationFile("bench.po", translation, bh::consume);
+    }
+}
@@ -0,0 +1,239 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Journal des documents traités, pour reprendre un téléchargement interrompu
+//(jeton expiré, mise en veille, erreur Google Drive...) sans tout retélécharger.
+//Chaque ligne, ajoutée à la fin du fichier dès qu'une étape est terminée,
+//donne pour un document : sa version Drive, la dernière étape atteinte,
+//son statut et l'empreinte SHA-256 du fichier écrit.
+//Le fichier est compacté (une ligne par document) à l'ouverture.
+public class CheckpointJournal implements Closeable {
+
+    public enum Mode {
+        RESUME("Reprendre"),
+        RETRY_FAILURES("Échecs seulement"),
+        FULL("Tout retélécharger");
+
+        private final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private static final String OK = "OK";
+    private static final String FAILED = "FAILED";
+    private static final String SEPARATOR = "\t";
+
+    public static class Entry {
+
+        public final String fileId;
+        public final String version;
+        public final Stage stage;
+        public final boolean failed;
+        //Taille du docx exporté, ou du fichier écrit
+        public final long bytes;
+        public final String hash;
+        //Chemin du fichier écrit, relatif au dossier de sortie ("" si aucun)
+        public final String output;
+        public final String appVersion;
+        public final String name;
+
+        Entry(String fileId, String version, Stage stage, boolean failed, long bytes,
+              String hash, String output, String appVersion, String name) {
+            this.fileId = fileId;
+            this.version = version;
+            this.stage = stage;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.hash = hash;
+            this.output = output;
+            this.appVersion = appVersion;
+            this.name = name;
+        }
+
+        //Le document a été entièrement traité
+        public boolean isComplete() {
+            return !failed && stage == Stage.WRITE;
+        }
+
+        String toLine() {
+            return String.join(SEPARATOR, fileId, version, stage.name(), failed ? FAILED : OK,
+                    Long.toString(bytes), hash, output, appVersion, clean(name));
+        }
+
+        static Entry parse(String line) {
+            String[] fields = line.split(SEPARATOR, -1);
+            if (fields.length != 9)
+                return null; // ligne tronquée par un arrêt brutal
+            try {
+                return new Entry(fields[0], fields[1], Stage.valueOf(fields[2]), FAILED.equals(fields[3]),
+                        Long.parseLong(fields[4]), fields[5], fields[6], fields[7], fields[8]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private final Path path;
+    private final Path outputFolder;
+    private final String appVersion;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    //Taille du docx lors du dernier export réussi, conservée même après l'écriture
+    private final Map<String, Long> exportSizes = new LinkedHashMap<>();
+    private BufferedWriter writer;
+
+    private CheckpointJournal(Path path, Path outputFolder, String appVersion) {
+        this.path = path;
+        this.outputFolder = outputFolder;
+        this.appVersion = appVersion;
+    }
+
+    //Ouvre (ou crée) le journal associé au dossier de sortie
+    public static CheckpointJournal open(Path path, Path outputFolder, String appVersion) throws IOException {
+        CheckpointJournal journal = new CheckpointJournal(path, outputFolder, appVersion);
+        journal.load();
+        return journal;
+    }
+
+    private void load() throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        if (Files.exists(path)) {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                Entry entry = Entry.parse(line);
+                if (entry != null)
+                    remember(entry);
+            }
+            //Réécrit le journal avec la dernière ligne de chaque document
+            Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                for (Entry entry : entries.values()) {
+                    if (entry.stage != Stage.EXPORT && exportSizes.containsKey(entry.fileId)) {
+                        out.write(new Entry(entry.fileId, entry.version, Stage.EXPORT, false,
+                                exportSizes.get(entry.fileId), "", "", entry.appVersion, entry.name).toLine());
+                        out.newLine();
+                    }
+                    out.write(entry.toLine());
+                    out.newLine();
+                }
+            }
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void remember(Entry entry) {
+        entries.put(entry.fileId, entry);
+        if (entry.stage == Stage.EXPORT && !entry.failed)
+            exportSizes.put(entry.fileId, entry.bytes);
+    }
+
+    //Le document est à jour : même version Drive et même version du
+    //programme, et le fichier écrit n'a pas changé depuis
+    public synchronized boolean isUpToDate(String fileId, String version) {
+        Entry entry = entries.get(fileId);
+        if (entry == null || !entry.isComplete() || !entry.version.equals(version)
+                || !entry.appVersion.equals(appVersion))
+            return false;
+        if (entry.output.isEmpty())
+            return true; // document ignoré, rien n'a été écrit
+        Path output = outputFolder.resolve(entry.output);
+        try {
+            return Files.exists(output) && Utils.sha256(Files.readAllBytes(output)).equals(entry.hash);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public synchronized boolean hasFailed(String fileId) {
+        Entry entry = entries.get(fileId);
+        return entry != null && entry.failed;
+    }
+
+    //Le document doit-il être traité dans le mode de reprise demandé ?
+    public boolean shouldProcess(String fileId, String version, Mode mode) {
+        switch (mode) {
+            case RESUME:
+                return !isUpToDate(fileId, version);
+            case RETRY_FAILURES:
+                return hasFailed(fileId);
+            default:
+                return true;
+        }
+    }
+
+    //Taille du docx lors du précédent export, -1 si inconnue
+    public synchronized long lastExportSize(String fileId) {
+        Long size = exportSizes.get(fileId);
+        return size != null ? size : -1;
+    }
+
+    public synchronized Entry last(String fileId) {
+        return entries.get(fileId);
+    }
+
+    //Version Drive de chaque fichier écrit, par chemin relatif au dossier de sortie ('/' comme séparateur)
+    public synchronized Map<String, String> outputVersions() {
+        Map<String, String> versions = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            if (entry.isComplete() && !entry.output.isEmpty())
+                versions.put(entry.output.replace('\\', '/'), entry.version);
+        }
+        return versions;
+    }
+
+    public void exported(String fileId, String version, String name, long bytes) {
+        append(new Entry(fileId, version, Stage.EXPORT, false, bytes, "", "", appVersion, name));
+    }
+
+    //output : chemin relatif au dossier de sortie, "" si le document a été ignoré
+    public void written(String fileId, String version, String name, String output, byte[] content) {
+        String hash = content != null ? Utils.sha256(content) : "";
+        long bytes = content != null ? content.length : 0;
+        append(new Entry(fileId, version, Stage.WRITE, false, bytes, hash, output, appVersion, name));
+    }
+
+    public void failed(String fileId, String version, String name, Stage stage) {
+        append(new Entry(fileId, version, stage, true, 0, "", "", appVersion, name));
+    }
+
+    private synchronized void append(Entry entry) {
+        remember(entry);
+        try {
+            writer.write(entry.toLine());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            Utils.print("Impossible d'écrire dans le journal " + path + " : " + e, Utils.ERROR);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private static String clean(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
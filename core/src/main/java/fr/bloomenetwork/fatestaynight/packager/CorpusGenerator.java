@@ -0,0 +1,398 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+//Génère un corpus synthétique, pour les tests de charge et les benchmarks :
+//scripts KiriKiri (.ks) avec *page, @say storage=, @if/@else/@endif, [lr],
+//dialogues et citations, fichiers de traduction (.po), et leurs exports
+//docx tels que Google Drive les renvoie.
+//Chaque fichier est tiré d'un générateur aléatoire propre, initialisé à
+//partir de la graine et de son numéro : le même fichier est identique d'une
+//exécution à l'autre, quels que soient le nombre de fichiers et l'ordre de génération.
+//Sans erreur injectée (setErrorDensity(0)), les scripts ne produisent aucun diagnostic.
+public class CorpusGenerator {
+
+    //Taille du corpus à l'échelle 1, proche de celle du vrai corpus :
+    //600 scènes d'environ 40 pages, 60 fichiers de traduction
+    public static final int BASE_SCRIPTS = 600;
+    public static final int BASE_TRANSLATIONS = 60;
+
+    private static final String USAGE = String.join("\n",
+            "Usage : java -cp core.jar fr.bloomenetwork.fatestaynight.packager.CorpusGenerator -o DOSSIER [options]",
+            "  -o, --output DOSSIER      dossier de sortie (ks/, po/ et docx/)",
+            "  --seed N                  graine (1 par défaut)",
+            "  --scale N                 taille du corpus : N x (600 scripts, 60 traductions)",
+            "  --scripts N, --translations N  nombre de fichiers, à la place de --scale",
+            "  --pages N                 nombre moyen de pages par script (40)",
+            "  --line-length M:E         longueur des lignes de texte : moyenne et écart type (90:45)",
+            "  --errors D                proportion de lignes avec une erreur (0.02)",
+            "  --no-docx                 n'écrit pas les exports docx");
+
+    private static final String[][] ROUTES = {
+        //route dans @resetvoice, dossier Google Drive, préfixe des voix
+        {"saber", "Fate", "sab"},
+        {"rin", "Unlimited Blade Works", "rin"},
+        {"sakura", "Heavens Feel", "sak"},
+    };
+
+    private static final String[] NAMES = {
+        "Shirō", "Saber", "Rin", "Sakura", "Tohsaka", "Archer", "Illya", "Taiga", "Kirei", "Shinji",
+        "Rider", "Lancer", "Matō", "Kojirō", "Ryūdō", "Issei", "Fuji-nee", "Berserker",
+    };
+
+    private static final String[] WORDS = {
+        "le", "la", "les", "un", "une", "des", "du", "de", "et", "mais", "puis", "alors", "encore", "déjà",
+        "jamais", "toujours", "soudain", "lentement", "vraiment", "peut-être", "sans", "avec", "dans", "sur",
+        "sous", "vers", "devant", "derrière", "près", "loin", "ciel", "soleil", "lune", "nuit", "soir",
+        "matin", "vent", "pluie", "cour", "temple", "école", "maison", "cuisine", "salon", "couloir", "porte",
+        "fenêtre", "escalier", "rue", "pont", "ville", "forêt", "église", "épée", "arc", "lance", "armure",
+        "bouclier", "magie", "mana", "cercle", "sort", "son Servant", "le Master", "un Sceau", "guerre", "Graal",
+        "combat", "ennemi", "allié", "silence", "regard", "voix", "main", "bras", "épaule", "cœur", "souffle",
+        "sang", "douleur", "peur", "colère", "espoir", "promesse", "souvenir", "rêve", "idéal", "justice",
+        "regarde", "attend", "marche", "court", "frappe", "recule", "hésite", "sourit", "soupire", "répond",
+        "murmure", "crie", "comprend", "oublie", "sent", "entend", "voit", "garde", "protège", "suit",
+        "froid", "chaud", "sombre", "clair", "calme", "étrange", "immense", "fragile", "rouge", "bleu",
+        "blanc", "noir", "doré", "silencieux", "épuisé", "inquiet", "sérieux", "prudent", "seul", "ensemble",
+        "l’air", "l’ombre", "l’autre", "l’instant", "l’arme", "d’abord", "d’un", "d’une", "qu’il", "qu’elle",
+        "n’est", "c’est", "j’ai", "s’arrête", "s’approche", "m’attend",
+    };
+
+    private static final String[] ENGLISH = {
+        "the", "a", "and", "but", "then", "already", "never", "always", "suddenly", "slowly", "really",
+        "with", "without", "in", "on", "under", "toward", "behind", "near", "far", "sky", "sun", "moon",
+        "night", "evening", "wind", "rain", "yard", "temple", "school", "house", "kitchen", "hallway",
+        "door", "street", "bridge", "town", "forest", "church", "sword", "bow", "lance", "armor", "magic",
+        "Servant", "Master", "Command", "Spell", "war", "Grail", "fight", "enemy", "silence", "voice",
+        "hand", "heart", "blood", "fear", "hope", "promise", "dream", "ideal", "justice", "looks", "waits",
+        "walks", "runs", "smiles", "sighs", "answers", "whispers", "understands", "protects", "cold",
+        "dark", "calm", "strange", "red", "blue", "white", "black", "golden", "quiet", "tired", "alone",
+    };
+
+    private static final String[] FLAGS = {
+        "f.saber_alive", "f.rin_ally", "f.sakura_route", "f.archer_contract", "f.illya_met", "f.h_scene",
+    };
+
+    private static final String[] BACKGROUNDS = {
+        "bg_01a", "bg_02b", "bg_05a", "bg_06a", "bg_11c", "bg_21a", "bg_31b",
+    };
+
+    private static final String END = " !";
+    private static final String QUESTION = " ?";
+
+    private final long seed;
+    private int meanPages = 40;
+    private double meanLineLength = 90;
+    private double lineLengthStdDev = 45;
+    private double errorDensity = 0.02;
+
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    //Nombre moyen de pages par script
+    public void setPages(int meanPages) {
+        this.meanPages = meanPages;
+    }
+
+    //Longueur des lignes de texte, en caractères (loi normale, au moins 12)
+    public void setLineLength(double mean, double stdDev) {
+        this.meanLineLength = mean;
+        this.lineLengthStdDev = stdDev;
+    }
+
+    //Proportion de lignes de texte dans lesquelles une erreur est introduite
+    public void setErrorDensity(double errorDensity) {
+        this.errorDensity = errorDensity;
+    }
+
+    //Dossier Google Drive de la route du script
+    public static String routeFolder(int index) {
+        return ROUTES[index % ROUTES.length][1];
+    }
+
+    //Sous-dossier du jour, dans le dossier de la route
+    public static String dayFolder(int index) {
+        return String.format("Jour %02d", day(index));
+    }
+
+    //Nom du Google Doc du script (en ASCII, pour tous les systèmes de fichiers)
+    public static String scenarioName(int index) {
+        return String.format("%s - Jour %02d - Scene %02d", ROUTES[index % ROUTES.length][0],
+                day(index), scene(index));
+    }
+
+    public static String translationName(int index) {
+        return String.format("Traduction %03d", index);
+    }
+
+    private static int day(int index) {
+        return index / ROUTES.length / 15 + 1;
+    }
+
+    private static int scene(int index) {
+        return index / ROUTES.length % 15 + 1;
+    }
+
+    private Random random(int index, long salt) {
+        return new Random(seed * 0x9E3779B97F4A7C15L + index * 31L + salt);
+    }
+
+    //Script de la scène `index`
+    public String scenario(int index) {
+        Random random = random(index, 0);
+        String[] route = ROUTES[index % ROUTES.length];
+        int pages = Math.max(1, (int) Math.round(meanPages * (0.5 + random.nextDouble())));
+        int voice = 1;
+        StringBuilder sb = new StringBuilder(pages * 8 * (int) (meanLineLength + 8));
+        for (int page = 0; page < pages; page++) {
+            sb.append("*page").append(page).append("|\n");
+            if (page == 0)
+                sb.append(String.format("@resetvoice route=%s day=%d scene=%d\n", route[0], day(index), scene(index)));
+            if (random.nextInt(4) == 0)
+                sb.append("@bg storage=").append(pick(random, BACKGROUNDS)).append(" time=")
+                  .append(500 + random.nextInt(6) * 100).append('\n');
+            if (random.nextInt(40) == 0)
+                sb.append(";TODO relire cette page\n");
+            int blocks = 2 + random.nextInt(5);
+            for (int block = 0; block < blocks; block++) {
+                int kind = random.nextInt(10);
+                if (kind < 4) {
+                    sb.append(String.format("@say storage=%s_%02d_%02d_%03d\n", route[2], day(index), scene(index),
+                            voice++));
+                    dialogue(random, sb);
+                } else if (kind == 4 && block > 0) {
+                    //les deux branches laissent le même état (paragraphe terminé)
+                    sb.append("@if exp=\"").append(pick(random, FLAGS)).append("\"\n");
+                    narration(random, sb);
+                    if (random.nextBoolean()) {
+                        sb.append("@else\n");
+                        narration(random, sb);
+                    }
+                    sb.append("@endif\n");
+                } else {
+                    narration(random, sb);
+                }
+            }
+            if (random.nextInt(8) == 0)
+                sb.append("@r\n");
+            sb.append("@pg\n");
+        }
+        return sb.toString();
+    }
+
+    private void narration(Random random, StringBuilder sb) {
+        String text = sentence(random, lineLength(random));
+        if (random.nextInt(6) == 0)
+            text = text + " « " + sentence(random, 20 + random.nextInt(40)) + " », " + pick(random, new String[] {
+                "disait Kiritsugu.", "pensai-je.", "avait-elle dit.", "lisait-on sur la porte.",
+            });
+        sb.append("  ").append(withError(random, text, false)).append("[lr]\n");
+    }
+
+    //Réplique sur une ou plusieurs lignes : alinéa de 3 pour les lignes suivantes
+    private void dialogue(Random random, StringBuilder sb) {
+        int lines = random.nextInt(5) == 0 ? 2 : 1;
+        for (int i = 0; i < lines; i++) {
+            String text = withError(random, sentence(random, lineLength(random)), true);
+            sb.append(i == 0 ? "  “" : "   ").append(text);
+            sb.append(i == lines - 1 ? "”[lr]\n" : "[r]\n");
+        }
+    }
+
+    private int lineLength(Random random) {
+        return (int) Math.max(12, Math.round(meanLineLength + random.nextGaussian() * lineLengthStdDev));
+    }
+
+    //Phrases d'environ `length` caractères, chacune terminée par . … ! ou ?
+    private static String sentence(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            int start = sb.length();
+            int words = 3 + random.nextInt(8);
+            for (int w = 0; w < words; w++) {
+                if (w > 0)
+                    sb.append(random.nextInt(12) == 0 ? ", " : " ");
+                sb.append(random.nextInt(7) == 0 ? pick(random, NAMES) : pick(random, WORDS));
+            }
+            sb.setCharAt(start, Character.toUpperCase(sb.charAt(start)));
+            int end = random.nextInt(10);
+            sb.append(end < 6 ? "." : end < 7 ? "…" : end < 8 ? END : QUESTION);
+        }
+        return sb.toString();
+    }
+
+    //Introduit éventuellement une erreur relevée par TextProcess
+    private String withError(Random random, String text, boolean dialogue) {
+        if (random.nextDouble() >= errorDensity)
+            return text;
+        switch (random.nextInt(dialogue ? 11 : 10)) {
+            case 0: return text + " Et puis...";                         // points de suspension
+            case 1: return text + " C'est tout.";                        // apostrophe droite
+            case 2: return text + " " + pick(random, new String[] {"Shiro", "Sabre", "Kojiro", "Mato", "Tōsaka"})
+                    + " attendait.";                                     // orthographe
+            case 3: return text + " Attends!";                           // espace insécable
+            case 4: return text + " Quoi!?";                             // ponctuation
+            case 5: return "Au final, " + text;                          // usage
+            case 6: return text + " Il était 10h.";                      // 10 h
+            case 7: return text + " Le servant attendait.";              // minuscule
+            case 8: return text + " La Servant attendait.";              // masculin
+            case 9: return text.substring(0, text.length() / 2) + "[lr] " + text.substring(text.length() / 2);
+            default: return text.substring(0, text.length() - 1) + "x";  // réplique non terminée
+        }
+    }
+
+    //Fichier de traduction `index`
+    public String translation(int index) {
+        Random random = random(index, 1);
+        int entries = Math.max(1, (int) Math.round(meanPages * 5 * (0.5 + random.nextDouble())));
+        StringBuilder sb = new StringBuilder("msgid \"\"\nmsgstr \"\"\n\"Content-Type: text/plain; charset=UTF-8\\n\"\n");
+        for (int i = 0; i < entries; i++) {
+            StringBuilder english = new StringBuilder();
+            int words = 4 + random.nextInt(12);
+            for (int w = 0; w < words; w++)
+                english.append(w > 0 ? " " : "").append(pick(random, ENGLISH));
+            english.setCharAt(0, Character.toUpperCase(english.charAt(0)));
+            sb.append("\n#: ").append(scenarioName(index)).append(".ks:").append(i * 3 + 4).append('\n');
+            sb.append("msgctxt \"c").append(i).append("\"\n");
+            sb.append("msgid \"").append(english).append(".\"\n");
+            sb.append("msgstr \"").append(withError(random, sentence(random, lineLength(random)), false)).append("\"\n");
+        }
+        return sb.toString();
+    }
+
+    //word/document.xml tel qu'exporté par Google Docs : un paragraphe par ligne.
+    //Utils.docxToTxt redonne exactement le texte.
+    public static String documentXml(String text) {
+        StringBuilder sb = new StringBuilder(text.length() * 2 + 256);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>")
+          .append("<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>");
+        for (String line : text.split("\n")) {
+            sb.append("<w:p><w:pPr><w:spacing w:after=\"0\"/></w:pPr><w:r><w:rPr><w:rtl w:val=\"0\"/></w:rPr>")
+              .append("<w:t xml:space=\"preserve\">")
+              .append(line.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;"))
+              .append("</w:t></w:r></w:p>");
+        }
+        return sb.append("<w:sectPr/></w:body></w:document>").toString();
+    }
+
+    public static byte[] docx(String text) throws IOException {
+        return docxFromXml(documentXml(text));
+    }
+
+    //Archive minimale : seul word/document.xml est lu par Utils.docxToTxt
+    public static byte[] docxFromXml(String documentXml) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("[Content_Types].xml"));
+            zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\r\n"
+                    + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                    + "<Override PartName=\"/word/document.xml\" ContentType=\"application/"
+                    + "vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/></Types>")
+                    .getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("word/document.xml"));
+            zip.write(documentXml.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    //Écrit le corpus : ks/<route>/<script>.ks, po/<traduction>.po et leurs
+    //exports dans docx/. Retourne le nombre d'octets de texte écrits.
+    public long write(Path output, int scripts, int translations, boolean withDocx) throws IOException {
+        AtomicLong bytes = new AtomicLong();
+        try {
+            IntStream.range(0, scripts + translations).parallel().forEach(i -> {
+                boolean script = i < scripts;
+                int index = script ? i : i - scripts;
+                String text = script ? scenario(index) : translation(index);
+                String folder = script ? "ks/" + routeFolder(index) + "/" : "po/";
+                String name = script ? scenarioName(index) : translationName(index);
+                try {
+                    byte[] content = text.getBytes(StandardCharsets.UTF_8);
+                    Utils.writeFile(output.resolve(folder + name + (script ? ".ks" : ".po")).toString(), content);
+                    if (withDocx)
+                        Utils.writeFile(output.resolve("docx/" + folder.substring(3) + name + ".docx").toString(),
+                                docx(text));
+                    bytes.addAndGet(content.length);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw e;
+        }
+        return bytes.get();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    public static void main(String[] args) {
+        Path output = null;
+        long seed = 1;
+        double scale = 1;
+        int scripts = -1;
+        int translations = -1;
+        int pages = 40;
+        double[] lineLength = {90, 45};
+        double errors = 0.02;
+        boolean withDocx = true;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o": case "--output": output = Paths.get(args[++i]); break;
+                    case "--seed": seed = Long.parseLong(args[++i]); break;
+                    case "--scale": scale = Double.parseDouble(args[++i]); break;
+                    case "--scripts": scripts = Integer.parseInt(args[++i]); break;
+                    case "--translations": translations = Integer.parseInt(args[++i]); break;
+                    case "--pages": pages = Integer.parseInt(args[++i]); break;
+                    case "--line-length": {
+                        String[] values = args[++i].split(":");
+                        lineLength[0] = Double.parseDouble(values[0]);
+                        lineLength[1] = values.length > 1 ? Double.parseDouble(values[1]) : 0;
+                        break;
+                    }
+                    case "--errors": errors = Double.parseDouble(args[++i]); break;
+                    case "--no-docx": withDocx = false; break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+            if (output == null)
+                throw new IllegalArgumentException("--output manquant");
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        CorpusGenerator generator = new CorpusGenerator(seed);
+        generator.setPages(pages);
+        generator.setLineLength(lineLength[0], lineLength[1]);
+        generator.setErrorDensity(errors);
+        if (scripts < 0)
+            scripts = (int) Math.round(BASE_SCRIPTS * scale);
+        if (translations < 0)
+            translations = (int) Math.round(BASE_TRANSLATIONS * scale);
+        long start = System.nanoTime();
+        try {
+            long bytes = generator.write(output, scripts, translations, withDocx);
+            System.out.println(String.format("%d scripts et %d traductions (%.1f Mo) écrits dans %s en %.1f s.",
+                    scripts, translations, bytes / 1e6, output, (System.nanoTime() - start) / 1e9));
+        } catch (IOException e) {
+            System.err.println(output + " : " + e);
+            System.exit(2);
+        }
+    }
+}
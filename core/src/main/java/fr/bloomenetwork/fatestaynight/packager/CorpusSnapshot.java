@@ -0,0 +1,190 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+//Instantané du corpus (.ks et .po du paquet) en un seul fichier, pour
+//revérifier sans Google Drive ni milliers de fichiers à ouvrir et décoder :
+//un CorpusSnapshot ouvert est une seule projection en mémoire
+//(FileChannel.map), et le texte de chaque fichier une TextView sur cette
+//projection, lue sans décodage.
+//
+//Format (grand-boutiste) :
+//  en-tête  magic "FSNP", version, nombre de fichiers, longueur (octets) du nom du
+//           dossier d'origine, date de création (ms, long)
+//  table    par fichier, triée par nom : début et longueur (octets) du nom,
+//           révision Drive (long, -1 si inconnue), empreinte FNV-1a du texte (long),
+//           début (octets) et longueur (caractères) du texte, 0
+//  noms     dossier d'origine puis fichiers, en UTF-8, puis bourrage jusqu'à un multiple de 8
+//  textes   UTF-16
+//Le fichier ne peut dépasser 2 Go (taille d'une projection).
+public class CorpusSnapshot {
+
+    private static final int MAGIC = 0x46534E50; //"FSNP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 40;
+
+    private final ByteBuffer buffer;
+    private final CharBuffer chars;
+    private final int count;
+
+    private CorpusSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.chars = buffer.duplicate().position(0).asCharBuffer();
+        this.count = buffer.getInt(8);
+    }
+
+    public static CorpusSnapshot open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("instantané trop grand : " + file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+            throw new IOException("format d'instantané inconnu : " + file);
+        return new CorpusSnapshot(buffer);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long created() {
+        return buffer.getLong(16);
+    }
+
+    //Dossier dont l'instantané a été pris, tel que donné à write ('/' comme séparateur)
+    public String folder() {
+        byte[] bytes = new byte[buffer.getInt(12)];
+        buffer.duplicate().position(HEADER_SIZE + count * ENTRY_SIZE).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public String name(int i) {
+        int entry = entry(i);
+        byte[] bytes = new byte[buffer.getInt(entry + 4)];
+        buffer.duplicate().position(buffer.getInt(entry)).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public long revision(int i) {
+        return buffer.getLong(entry(i) + 8);
+    }
+
+    public long hash(int i) {
+        return buffer.getLong(entry(i) + 16);
+    }
+
+    //Texte du fichier, vu directement dans la projection
+    public TextView text(int i) {
+        int entry = entry(i);
+        return new TextView(chars, buffer.getInt(entry + 24) / 2, buffer.getInt(entry + 28));
+    }
+
+    //Indice du fichier (recherche dichotomique dans la table triée), -1 s'il est absent
+    public int indexOf(String name) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = name(middle).compareTo(name);
+            if (cmp < 0)
+                low = middle + 1;
+            else if (cmp > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    private int entry(int i) {
+        if (i < 0 || i >= count)
+            throw new IndexOutOfBoundsException("fichier " + i + " sur " + count);
+        return HEADER_SIZE + i * ENTRY_SIZE;
+    }
+
+    //Écrit l'instantané des .ks et .po du dossier et de ses sous-dossiers,
+    //nommés par leur chemin relatif au dossier ('/' comme séparateur).
+    //revisions : version Drive par chemin relatif, quand elle est connue.
+    //Retourne le nombre de fichiers.
+    public static int write(Path folder, Path file, Map<String, String> revisions) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) walk::iterator) {
+                String name = path.getFileName().toString();
+                if (Files.isRegularFile(path) && (name.endsWith(".ks") || name.endsWith(".po")))
+                    names.add(folder.relativize(path).toString().replace('\\', '/'));
+            }
+        }
+        Collections.sort(names);
+
+        byte[] root = folder.toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8);
+        List<byte[]> nameBytes = new ArrayList<>();
+        int namesLength = root.length;
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            nameBytes.add(bytes);
+            namesLength += bytes.length;
+        }
+        long namesBase = HEADER_SIZE + (long) names.size() * ENTRY_SIZE;
+        long textBase = (namesBase + namesLength + 7) & ~7L;
+
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            //textes d'abord, à la suite les uns des autres : la table est écrite ensuite
+            ByteBuffer table = ByteBuffer.allocate((int) textBase);
+            table.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(names.size()).putInt(root.length).putLong(System.currentTimeMillis());
+            long position = textBase;
+            int nameOffset = (int) namesBase + root.length;
+            for (int i = 0; i < names.size(); i++) {
+                String text = new String(Files.readAllBytes(folder.resolve(names.get(i))), StandardCharsets.UTF_8);
+                ByteBuffer encoded = ByteBuffer.allocate(text.length() * 2);
+                encoded.asCharBuffer().put(text);
+                if (position + encoded.capacity() > Integer.MAX_VALUE)
+                    throw new IOException("instantané trop grand : plus de 2 Go");
+                while (encoded.hasRemaining())
+                    channel.write(encoded, position + encoded.position());
+
+                String revision = revisions.get(names.get(i));
+                long revisionNumber = -1;
+                try {
+                    if (revision != null && !revision.isEmpty())
+                        revisionNumber = Long.parseLong(revision);
+                } catch (NumberFormatException e) {
+                    //version non numérique : inconnue
+                }
+                table.putInt(nameOffset).putInt(nameBytes.get(i).length)
+                     .putLong(revisionNumber).putLong(PageCache.hash(text, 0, text.length()))
+                     .putInt((int) position).putInt(text.length()).putInt(0).putInt(0);
+                nameOffset += nameBytes.get(i).length;
+                position += encoded.capacity();
+            }
+            table.put(root);
+            for (byte[] bytes : nameBytes)
+                table.put(bytes);
+            table.position(0);
+            while (table.hasRemaining())
+                channel.write(table, table.position());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return names.size();
+    }
+}
@@ -0,0 +1,35 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+//Erreur ou avertissement relevé par TextProcess sur une ligne d'un fichier
+public class Diagnostic {
+
+    public final String fileName;
+    public final int line;
+    //Numéro de page du script, -1 pour les fichiers .po
+    public final int page;
+    //Colonne dans l'extrait, -1 si l'erreur concerne toute la ligne
+    public final int column;
+    public final String message;
+    public final String extract;
+    //Message formaté tel qu'affiché dans le journal
+    private final String text;
+
+    public Diagnostic(String fileName, int line, int page, int column, String message, String extract, String text) {
+        this.fileName = fileName;
+        this.line = line;
+        this.page = page;
+        this.column = column;
+        this.message = message;
+        this.extract = extract;
+        this.text = text;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,41 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//Événement Java Flight Recorder couvrant une étape du traitement d'un
+//document (export, extraction, conversion, vérification, écriture).
+//Hors enregistrement JFR, begin()/commit() ne coûtent presque rien.
+@Name("fr.bloomenetwork.fatestaynight.DocumentStage")
+@Label("Document Stage")
+@Category({"FSN Packager", "Pipeline"})
+@Description("Étape du traitement d'un document")
+@StackTrace(false)
+public class DocumentStageEvent extends Event {
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Route")
+    public String route;
+
+    @Label("File Id")
+    public String fileId;
+
+    @Label("File Name")
+    public String fileName;
+
+    @Label("Bytes")
+    @Description("Octets pour l'export et l'écriture, caractères pour les étapes de texte")
+    @DataAmount
+    public long bytes;
+
+    @Label("Diagnostics")
+    @Description("Nombre d'erreurs relevées par la vérification")
+    public int diagnostics;
+}
@@ -0,0 +1,48 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Exécuteurs pour les entrées/sorties bloquantes (requêtes Google Drive).
+//Sur un JDK avec threads virtuels (21+), chaque tâche a son propre thread
+//virtuel ; sinon un pool borné de threads classiques est utilisé.
+//La propriété système fsn.io.threads=platform force le pool borné.
+public class IoExecutors {
+
+    private static final String MODE_PROPERTY = "fsn.io.threads";
+
+    private IoExecutors() {
+    }
+
+    public static ExecutorService newIoExecutor(int fallbackThreads) {
+        if (!"platform".equals(System.getProperty(MODE_PROPERTY))) {
+            ExecutorService executor = newVirtualThreadPerTaskExecutor();
+            if (executor != null)
+                return executor;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(fallbackThreads, r -> {
+            Thread thread = new Thread(r, "drive-io-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static boolean isVirtual(ExecutorService executor) {
+        return executor.getClass().getName().contains("ThreadPerTaskExecutor");
+    }
+
+    //Appel par réflexion pour que le code compile et tourne sur les JDK
+    //antérieurs. Retourne null si les threads virtuels sont indisponibles
+    //(JDK trop ancien, ou en preview sans --enable-preview).
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
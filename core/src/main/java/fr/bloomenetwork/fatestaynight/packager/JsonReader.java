@@ -0,0 +1,196 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Lecture de JSON, sans dépendance externe. Les objets deviennent des Map,
+//les tableaux des List, les nombres des Long (entiers) ou des Double.
+//Lève une IllegalArgumentException si le texte n'est pas du JSON valide, ou
+//si les objets et tableaux sont imbriqués sur plus de MAX_DEPTH niveaux (la
+//lecture est récursive : un message malveillant épuiserait la pile).
+public class JsonReader {
+
+    public static final int MAX_DEPTH = 256;
+
+    private final String text;
+    private int pos = 0;
+    //Objets et tableaux en cours de lecture
+    private int depth = 0;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    public static Object parse(String text) {
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.pos != text.length())
+            throw reader.error("fin de texte attendue");
+        return value;
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (pos >= text.length())
+            throw error("valeur attendue");
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{':
+            case '[':
+                if (++depth > MAX_DEPTH)
+                    throw error("plus de " + MAX_DEPTH + " niveaux d'imbrication");
+                Object value = c == '{' ? readObject() : readArray();
+                depth--;
+                return value;
+            case '"':
+                return readString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    return readNumber();
+                throw error("caractère inattendu '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"')
+                throw error("nom de champ attendu");
+            String name = readString();
+            skipWhitespace();
+            if (peek() != ':')
+                throw error("':' attendu");
+            pos++;
+            object.put(name, readValue());
+            skipWhitespace();
+            char c = peek();
+            pos++;
+            if (c == '}')
+                return object;
+            if (c != ',')
+                throw error("',' ou '}' attendu");
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            char c = peek();
+            pos++;
+            if (c == ']')
+                return array;
+            if (c != ',')
+                throw error("',' ou ']' attendu");
+        }
+    }
+
+    private String readString() {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (true) {
+            if (pos >= text.length())
+                throw error("chaîne non terminée");
+            char c = text.charAt(pos++);
+            if (c == '"')
+                return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length())
+                throw error("chaîne non terminée");
+            char escaped = text.charAt(pos++);
+            switch (escaped) {
+                case '"': case '\\': case '/':
+                    sb.append(escaped);
+                    break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos + 4 > text.length())
+                        throw error("séquence \\u incomplète");
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("séquence \\u invalide");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    throw error("échappement inconnu \\" + escaped);
+            }
+        }
+    }
+
+    private Number readNumber() {
+        int start = pos;
+        boolean decimal = false;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E')
+                decimal = true;
+            else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9')))
+                break;
+            pos++;
+        }
+        String number = text.substring(start, pos);
+        try {
+            if (!decimal)
+                return Long.parseLong(number);
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("nombre invalide " + number);
+        }
+    }
+
+    private void expect(String word) {
+        if (!text.startsWith(word, pos))
+            throw error(word + " attendu");
+        pos += word.length();
+    }
+
+    private char peek() {
+        if (pos >= text.length())
+            throw error("fin de texte inattendue");
+        return text.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+            pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSON invalide à la position " + pos + " : " + message);
+    }
+}
@@ -0,0 +1,139 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+
+//Écriture de JSON indenté, sans dépendance externe.
+//Exemple : new JsonWriter().beginObject().name("a").value(1).endObject().toString()
+public class JsonWriter {
+
+    private final StringBuilder out = new StringBuilder();
+    //Pour chaque niveau ouvert : true si au moins un élément a été écrit
+    private final Deque<Boolean> levels = new ArrayDeque<>();
+    private boolean afterName = false;
+    private final boolean pretty;
+
+    public JsonWriter() {
+        this(true);
+    }
+
+    public JsonWriter(boolean pretty) {
+        this.pretty = pretty;
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        out.append('{');
+        levels.push(false);
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        out.append('[');
+        levels.push(false);
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) {
+        beforeValue();
+        quote(name);
+        out.append(pretty ? ": " : ":");
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        beforeValue();
+        if (value == null)
+            out.append("null");
+        else
+            quote(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) {
+        beforeValue();
+        out.append(value);
+        return this;
+    }
+
+    public JsonWriter value(double value) {
+        beforeValue();
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            out.append("null");
+        else
+            out.append(String.format(Locale.ROOT, "%.3f", value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        beforeValue();
+        out.append(value);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private JsonWriter close(char c) {
+        boolean hasElements = levels.pop();
+        if (hasElements)
+            newLine();
+        out.append(c);
+        return this;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (!levels.isEmpty()) {
+            if (levels.peek())
+                out.append(',');
+            levels.pop();
+            levels.push(true);
+            newLine();
+        }
+    }
+
+    private void newLine() {
+        if (pretty) {
+            out.append('\n');
+            for (int i = 0; i < levels.size(); i++)
+                out.append("  ");
+        }
+    }
+
+    private void quote(String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20)
+                        out.append(String.format("\\u%04x", (int) c));
+                    else
+                        out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
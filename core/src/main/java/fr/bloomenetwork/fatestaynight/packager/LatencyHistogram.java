@@ -0,0 +1,75 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Histogramme de durées à buckets logarithmiques : chaque puissance de 2
+//est découpée en 16 sous-buckets, soit une erreur relative inférieure à 6,25 %
+//sur les percentiles, pour une mémoire fixe. Utilisable par plusieurs
+//threads sans verrou.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucketIndex(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long previous;
+        while (nanos > (previous = max.get()) && !max.compareAndSet(previous, nanos));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    public double getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    //Retourne la borne supérieure du bucket contenant le percentile demandé
+    //(entre 0 et 100), plafonnée au maximum observé
+    public long percentileNanos(double percentile) {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(bucketUpperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> exponent) & (SUB_BUCKETS - 1);
+        return (exponent + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = index / SUB_BUCKETS - 1;
+        long subBucket = (index % SUB_BUCKETS) | SUB_BUCKETS;
+        return ((subBucket + 1) << exponent) - 1;
+    }
+}
@@ -0,0 +1,180 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+//Cache LRU borné des lignes de texte déjà vérifiées par TextProcess.
+//Les scripts répètent beaucoup de lignes (répliques, onomatopées...) : pour
+//une même ligne et un même état (dialogue, citation, alinéa attendu), le
+//résultat est identique, à la position près. Chaque entrée garde la ligne
+//corrigée, l'état en sortie et les diagnostics relatifs à la ligne, rejoués
+//à l'identique lors d'un succès.
+//Le cache est découpé en segments verrouillés séparément, pour les
+//vérifications en parallèle.
+public class LineCache {
+
+    private static final int SEGMENTS = 16;
+
+    //Diagnostic relatif à une ligne : message, colonne, et version de la
+    //ligne (avant ou après correction) dont est tiré l'extrait
+    static class Report {
+        final String line;
+        final String message;
+        final int column;
+
+        Report(String line, String message, int column) {
+            this.line = line;
+            this.message = message;
+            this.column = column;
+        }
+    }
+
+    static class Key {
+        //String dans le cache ; TextView pour une recherche, sans copie de la ligne
+        final CharSequence line;
+        final int state;
+        final String waitTextReport;
+        private final int hash;
+
+        Key(CharSequence line, int state, String waitTextReport) {
+            this.line = line;
+            this.state = state;
+            this.waitTextReport = waitTextReport;
+            int h = (line instanceof TextView ? ((TextView) line).contentHash() : line.hashCode()) * 31 + state;
+            this.hash = waitTextReport == null ? h : h * 31 + waitTextReport.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return hash == other.hash && state == other.state && sameText(line, other.line)
+                    && (waitTextReport == null ? other.waitTextReport == null
+                                               : waitTextReport.equals(other.waitTextReport));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean sameText(CharSequence a, CharSequence b) {
+            if (a instanceof TextView)
+                return ((TextView) a).contentEquals(b);
+            if (b instanceof TextView)
+                return ((TextView) b).contentEquals(a);
+            return a.equals(b);
+        }
+    }
+
+    static class Entry {
+        final String fixedLine;
+        //dernière version de la ligne pendant la vérification, citée par les
+        //diagnostics de fin de page et de fichier
+        final String lastLine;
+        //talking, inQuote et needAlinea après la ligne (voir LintState.textLineBits)
+        final int exitState;
+        final List<Report> reports;
+
+        Entry(String fixedLine, String lastLine, int exitState, List<Report> reports) {
+            this.fixedLine = fixedLine;
+            this.lastLine = lastLine;
+            this.exitState = exitState;
+            this.reports = reports.isEmpty() ? Collections.emptyList() : reports;
+        }
+    }
+
+    //Segment LRU (ordre d'accès), borné à capacity entrées, verrouillé par l'appelant
+    private static class Segment {
+        final Map<Key, Entry> entries;
+
+        Segment(int capacity) {
+            entries = new LinkedHashMap<Key, LineCache.Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, LineCache.Entry> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final int capacity;
+
+    public LineCache(int capacity) {
+        this.capacity = capacity;
+        int segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(segmentCapacity);
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    Entry get(Key key) {
+        Map<Key, Entry> segment = segment(key);
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null)
+            hits.increment();
+        else
+            misses.increment();
+        return entry;
+    }
+
+    void put(Key key, Entry entry) {
+        Map<Key, Entry> segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment.entries) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment.entries) {
+                segment.entries.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    private Map<Key, Entry> segment(Key key) {
+        int h = key.hash ^ (key.hash >>> 16);
+        return segments[(h & 0x7fffffff) % SEGMENTS].entries;
+    }
+}
@@ -0,0 +1,364 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Vérification de fichiers locaux (.ks, .po, ou .docx exportés de Google Docs),
+//sans Google Drive ni interface graphique : ne dépend que du module core.
+//Les diagnostics sont affichés sur la sortie standard ; avec --output, les
+//fichiers corrigés sont écrits dans le dossier donné.
+public class Lint {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_DIAGNOSTICS = 1;
+    public static final int EXIT_ERROR = 2;
+
+    //Au-delà, le mode surveillance n'affiche que le résumé (vérification initiale)
+    private static final int WATCH_DETAILS_MAX = 20;
+
+    private static final String USAGE = String.join("\n",
+            "Usage : java -jar core.jar [--output DOSSIER] [--cache DOSSIER] fichiers...",
+            "        java -jar core.jar [--output DOSSIER] [--cache DOSSIER] --snapshot FICHIER",
+            "        java -jar core.jar [--cache DOSSIER] --watch DOSSIER",
+            "        java -jar core.jar --shards N [--by-route] [--shard-dir DOSSIER] [--merge] [options] fichiers...",
+            "  -o, --output DOSSIER  écrit les fichiers corrigés dans ce dossier",
+            "  -c, --cache DOSSIER   garde les résultats de chaque page dans ce dossier : seules",
+            "                        les pages modifiées seront revérifiées la fois suivante",
+            "  -w, --watch DOSSIER   surveille le dossier et revérifie les fichiers à chaque modification",
+            "  --voices CHEMIN       vérifie que les voix des @say existent : dossier de l'archive des voix",
+            "                        ou fichier listant un nom de fichier par ligne",
+            "  --compendium FICHIER  écrit les traductions des .po dédoublonnées dans ce fichier",
+            "  -s, --snapshot FICHIER  vérifie tous les fichiers d'un instantané du paquet",
+            "                        (journal/package.snapshot, écrit à la fin de chaque téléchargement)",
+            "  --shards N            répartit les fichiers entre N processus (un tas mémoire chacun),",
+            "                        puis fusionne leurs résultats dans l'ordre d'une vérification simple",
+            "  --by-route            répartit par route (dossier du fichier) plutôt que par fichier",
+            "  --shard-dir DOSSIER   résultats des processus (journal/shards par défaut)",
+            "  --merge               ne lance pas les processus : fusionne les résultats déjà présents",
+            "                        dans --shard-dir (processus lancés sur d'autres machines)",
+            "  --shard I/N           processus de vérification : vérifie la part I (1 à N) des fichiers",
+            "                        et écrit ses résultats dans --shard-dir, pour --merge",
+            "Codes de sortie : 0 aucun diagnostic, 1 diagnostics relevés, 2 erreur.");
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    public static int run(String[] args) {
+        Path output = null;
+        Path watched = null;
+        Path cache = null;
+        Path voices = null;
+        Path compendium = null;
+        Path snapshot = null;
+        int shards = 1;
+        int shard = 0;
+        boolean byRoute = false;
+        boolean merge = false;
+        Path shardDir = Paths.get("journal", "shards");
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-h": case "--help":
+                    System.out.println(USAGE);
+                    return EXIT_OK;
+                case "-o": case "--output":
+                    if (++i >= args.length) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    output = Paths.get(args[i]);
+                    break;
+                case "-c": case "--cache":
+                    if (++i >= args.length) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    cache = Paths.get(args[i]);
+                    break;
+                case "-w": case "--watch":
+                    if (++i >= args.length) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    watched = Paths.get(args[i]);
+                    break;
+                case "--voices":
+                    if (++i >= args.length) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    voices = Paths.get(args[i]);
+                    break;
+                case "--compendium":
+                    if (++i >= args.length) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    compendium = Paths.get(args[i]);
+                    break;
+                case "-s": case "--snapshot":
+                    if (++i >= args.length) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    snapshot = Paths.get(args[i]);
+                    break;
+                case "--shards":
+                case "--shard":
+                    try {
+                        String[] value = args[++i].split("/", -1);
+                        if (args[i - 1].equals("--shard")) {
+                            shard = Integer.parseInt(value[0]);
+                            shards = Integer.parseInt(value[1]);
+                            if (shard < 1)
+                                throw new IllegalArgumentException(args[i]);
+                        } else {
+                            shards = Integer.parseInt(value[0]);
+                        }
+                    } catch (RuntimeException e) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    if (shards < 1 || shard < 0 || shard > shards) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    break;
+                case "--shard-dir":
+                    if (++i >= args.length) {
+                        System.err.println(USAGE);
+                        return EXIT_ERROR;
+                    }
+                    shardDir = Paths.get(args[i]);
+                    break;
+                case "--by-route":
+                    byRoute = true;
+                    break;
+                case "--merge":
+                    merge = true;
+                    break;
+                default:
+                    files.add(Paths.get(args[i]));
+            }
+        }
+        if (cache != null)
+            TextProcess.setPageCache(new PageCache(cache));
+        if (watched != null) {
+            //sans dossier de cache, les pages sont gardées en mémoire le temps de la surveillance
+            if (cache == null)
+                TextProcess.setPageCache(new PageCache());
+            return watch(watched);
+        }
+        if (files.isEmpty() && snapshot == null) {
+            System.err.println(USAGE);
+            return EXIT_ERROR;
+        }
+
+        int status = EXIT_OK;
+        List<Document> documents = new ArrayList<>();
+        for (Path file : files)
+            documents.add(new Document(file));
+        if (snapshot != null) {
+            try {
+                CorpusSnapshot pack = CorpusSnapshot.open(snapshot);
+                for (int i = 0; i < pack.size(); i++)
+                    documents.add(new Document(pack, i));
+            } catch (IOException e) {
+                System.err.println(snapshot + " : " + e);
+                status = EXIT_ERROR;
+            }
+        }
+        if (shard > 0)
+            return ShardedLint.work(documents, shard, shards, byRoute, shardDir, output);
+
+        //les @jump/@call entre les fichiers donnés, leurs voix et leurs traductions sont vérifiés à la fin
+        SymbolIndex symbols = new SymbolIndex();
+        TranslationMemory translations = new TranslationMemory();
+        if (shards > 1) {
+            if (!merge && ShardedLint.start(args, shards, shardDir) != EXIT_OK)
+                return EXIT_ERROR;
+            int merged = ShardedLint.merge(documents, shards, byRoute, shardDir, symbols, translations);
+            if (merged == EXIT_ERROR || status == EXIT_OK)
+                status = merged;
+        } else {
+            for (Document document : documents) {
+                try {
+                    int diagnostics = report(check(document, output), symbols, translations);
+                    if (diagnostics > 0 && status == EXIT_OK)
+                        status = EXIT_DIAGNOSTICS;
+                } catch (IOException e) {
+                    System.err.println(document.docName + " : " + e);
+                    status = EXIT_ERROR;
+                }
+            }
+        }
+        int corpusDiagnostics = symbols.resolve(diagnostic -> System.out.println(diagnostic.getText()));
+        try {
+            if (voices != null)
+                symbols.voices().loadArchive(voices);
+            corpusDiagnostics += symbols.voices().check(diagnostic -> System.out.println(diagnostic.getText()));
+        } catch (IOException e) {
+            System.err.println(voices + " : " + e);
+            return EXIT_ERROR;
+        }
+        try {
+            corpusDiagnostics += translations.check(diagnostic -> System.out.println(diagnostic.getText()));
+            if (compendium != null)
+                translations.writeCompendium(compendium);
+        } catch (IOException e) {
+            System.err.println((compendium != null ? compendium : "traductions") + " : " + e);
+            return EXIT_ERROR;
+        }
+        if (corpusDiagnostics > 0 && status == EXIT_OK)
+            status = EXIT_DIAGNOSTICS;
+        return status;
+    }
+
+    //Mode surveillance : affiche les diagnostics des fichiers modifiés, jusqu'à l'arrêt du programme
+    static int watch(Path folder) {
+        try (LintWatcher watcher = new LintWatcher(folder)) {
+            watcher.setListener((changed, nanos) -> {
+                if (changed.size() <= WATCH_DETAILS_MAX) {
+                    for (Map.Entry<Path, List<Diagnostic>> entry : changed.entrySet()) {
+                        System.out.println("== " + folder.relativize(entry.getKey()) + " : "
+                                + (Files.exists(entry.getKey()) ? entry.getValue().size() + " diagnostic(s)" : "supprimé"));
+                        for (Diagnostic diagnostic : entry.getValue())
+                            System.out.println(diagnostic.getText());
+                    }
+                }
+                System.out.println(String.format("[%s] %d fichier(s) vérifié(s) en %d ms, %d diagnostic(s) dans %d fichier(s).",
+                        LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")), changed.size(),
+                        TimeUnit.NANOSECONDS.toMillis(nanos), watcher.totalDiagnostics(), watcher.fileCount()));
+            });
+            watcher.start();
+            System.out.println("Surveillance de " + folder + " (Ctrl+C pour arrêter).");
+            watcher.run();
+        } catch (IOException e) {
+            System.err.println(folder + " : " + e);
+            return EXIT_ERROR;
+        }
+        return EXIT_OK;
+    }
+
+    //Document à vérifier : fichier local (.ks, .po ou .docx) ou fichier d'un
+    //instantané, lu seulement au moment de sa vérification
+    static class Document {
+
+        //Nom affiché dans les diagnostics : chemin du fichier
+        final String docName;
+        private final Path file;
+        private final CorpusSnapshot snapshot;
+        private final int index;
+
+        Document(Path file) {
+            this.docName = file.toString();
+            this.file = file;
+            this.snapshot = null;
+            this.index = -1;
+        }
+
+        Document(CorpusSnapshot snapshot, int index) {
+            this.docName = Paths.get(snapshot.folder()).resolve(snapshot.name(index)).toString();
+            this.file = null;
+            this.snapshot = snapshot;
+            this.index = index;
+        }
+
+        //Route : nom du dossier du document
+        String route() {
+            Path parent = Paths.get(docName).getParent();
+            return parent == null || parent.getFileName() == null ? "" : parent.getFileName().toString();
+        }
+    }
+
+    //Document vérifié : nom du script (.ks ou .po, chemin relatif pour un
+    //instantané), texte corrigé et diagnostics
+    static class Checked {
+
+        final String name;
+        final String docName;
+        //.po sur disque, relu pour les extraits des traductions (null si aucun)
+        final Path source;
+        final String fixed;
+        final List<String> diagnostics;
+
+        Checked(String name, String docName, Path source, String fixed, List<String> diagnostics) {
+            this.name = name;
+            this.docName = docName;
+            this.source = source;
+            this.fixed = fixed;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    //Vérifie un document ; avec output, le fichier corrigé y est écrit
+    static Checked check(Document document, Path output) throws IOException {
+        String name;
+        CharSequence content;
+        Path source;
+        if (document.snapshot != null) {
+            //lu dans la projection, sans copie
+            name = document.snapshot.name(document.index);
+            content = document.snapshot.text(document.index);
+            Path original = Paths.get(document.docName);
+            source = Files.exists(original) ? original : null;
+        } else {
+            Path file = document.file;
+            name = file.getFileName().toString();
+            source = name.endsWith(".po") ? file : null;
+            if (name.endsWith(".docx")) {
+                String text;
+                try (InputStream is = Files.newInputStream(file)) {
+                    text = Utils.docxToTxt(is);
+                }
+                //Comme pour Google Drive, le type de script se déduit du contenu
+                String baseName = name.substring(0, name.length() - ".docx".length());
+                if (text.contains("*page0|"))
+                    name = baseName + ".ks";
+                else if (text.contains("msgid \""))
+                    name = baseName + ".po";
+                else
+                    throw new IOException("document non supporté");
+                content = text;
+            } else if (name.endsWith(".ks") || name.endsWith(".po")) {
+                content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            } else {
+                throw new IOException("extension non supportée (.ks, .po ou .docx)");
+            }
+        }
+
+        List<String> diagnostics = new ArrayList<>();
+        String fixed = Utils.lintContent(name, document.docName, content, diagnostic -> diagnostics.add(diagnostic.getText()));
+        if (output != null) {
+            Utils.writeFile(output.resolve(name).toString(), fixed);
+            //les extraits et le compendium sont relus dans le fichier corrigé, ou à défaut dans le .po d'origine
+            if (name.endsWith(".po"))
+                source = output.resolve(name);
+        }
+        return new Checked(name, document.docName, source, fixed, diagnostics);
+    }
+
+    //Affiche les diagnostics d'un document vérifié et retourne leur nombre ;
+    //les scripts sont ajoutés à l'index des références et les traductions à
+    //la mémoire de traduction
+    static int report(Checked checked, SymbolIndex symbols, TranslationMemory translations) {
+        for (String diagnostic : checked.diagnostics)
+            System.out.println(diagnostic);
+        if (checked.name.endsWith(".ks"))
+            symbols.addScenario(Paths.get(checked.name).getFileName().toString(), checked.docName, checked.fixed);
+        if (checked.name.endsWith(".po"))
+            translations.addTranslation(checked.docName, checked.source, checked.fixed);
+        return checked.diagnostics.size();
+    }
+}
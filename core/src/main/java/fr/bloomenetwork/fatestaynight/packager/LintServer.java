@@ -0,0 +1,446 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+//Serveur de vérification pour les éditeurs des traducteurs : garde en mémoire
+//les règles de TextProcess, déjà compilées par le JIT, pour revérifier un
+//fichier à chaque sauvegarde ou frappe en quelques millisecondes.
+//
+//Protocole JSON-RPC 2.0, un message JSON par ligne, sur l'entrée/sortie
+//standard (par défaut) ou sur un port local (--port) :
+//  -> {"jsonrpc":"2.0","id":1,"method":"lint","params":{"uri":"a.ks","version":3,"text":"...","fix":false}}
+//  <- {"jsonrpc":"2.0","id":1,"result":{"uri":"a.ks","version":3,"diagnostics":[{"line":..,"page":..,
+//      "column":..,"message":"..","extract":".."}]}}
+//Le type de fichier se déduit de l'extension de l'uri (.ks ou .po) ; avec
+//"fix", le texte corrigé est renvoyé dans "text".
+//Une requête "lint" annule la vérification en cours du même uri, qui reçoit
+//l'erreur -32800 ; "$/cancelRequest" {"id":..} annule une requête précise.
+//Une notification (sans "id") ne reçoit aucune réponse, pas même d'erreur.
+//"shutdown" arrête le serveur.
+public class LintServer {
+
+    public static final int PARSE_ERROR = -32700;
+    public static final int INVALID_REQUEST = -32600;
+    public static final int METHOD_NOT_FOUND = -32601;
+    public static final int INVALID_PARAMS = -32602;
+    public static final int INTERNAL_ERROR = -32603;
+    public static final int REQUEST_CANCELLED = -32800;
+
+    //Vérifications effectuées au démarrage pour que le JIT compile les règles
+    private static final int WARMUP_ITERATIONS = 300;
+    private static final String WARMUP_SCENARIO = String.join("\n",
+            "*page0|",
+            "@resetvoice route=saber day=1 scene=1",
+            "  Le soleil se couchait déjà quand je suis rentré.[lr]",
+            "  « Bonsoir, Shirō ! » lança Taiga depuis le salon...[pg]",
+            "*page1|",
+            "@say storage=sab_01_01_01",
+            "  « Master, l'ennemi est proche. »[lr]",
+            "   « Je sais. Reste près de moi ! »[pg]");
+    private static final String WARMUP_TRANSLATION = String.join("\n",
+            "msgid \"\"",
+            "msgstr \"\"",
+            "",
+            "#: a.ks:1",
+            "msgctxt \"c0\"",
+            "msgid \"Welcome back, Shirou!\"",
+            "msgstr \"« Bon retour, Shirō ! »\"");
+
+    private static final String USAGE = String.join("\n",
+            "Usage : java -cp core.jar fr.bloomenetwork.fatestaynight.packager.LintServer [--port N] [--threads N] [--snapshot FICHIER]",
+            "  --snapshot : la mise en température vérifie les fichiers de cet instantané du paquet,",
+            "  dont les pages sont alors déjà en cache à l'ouverture dans l'éditeur ;",
+            "  sans --port, les requêtes sont lues sur l'entrée standard et les réponses écrites sur la sortie standard.");
+
+    private final ExecutorService workers;
+    private volatile boolean shutdown = false;
+    private ServerSocket serverSocket = null;
+
+    public LintServer(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "lint-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = -1;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        CorpusSnapshot snapshot = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--port"))
+                    port = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--threads"))
+                    threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--snapshot"))
+                    snapshot = CorpusSnapshot.open(Paths.get(args[++i]));
+                else
+                    throw new IllegalArgumentException(args[i]);
+            }
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(2);
+        }
+
+        LintServer server = new LintServer(threads);
+        //Lors de la frappe, seule la page modifiée est revérifiée
+        TextProcess.setPageCache(new PageCache());
+        if (port >= 0) {
+            server.warmUp(snapshot);
+            server.listen(port);
+        } else {
+            //La sortie standard est réservée au protocole : les messages du
+            //journal (Utils.print) partent sur la sortie d'erreur
+            PrintStream protocol = System.out;
+            System.setOut(System.err);
+            server.warmUp(snapshot);
+            server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                    new OutputStreamWriter(protocol, StandardCharsets.UTF_8));
+        }
+        server.close();
+    }
+
+    //Lance la mise en température en tâche de fond : les premières requêtes
+    //ne l'attendent pas
+    public void warmUp() {
+        warmUp(null);
+    }
+
+    //Avec un instantané du paquet, la mise en température en vérifie chaque
+    //fichier, lu dans la projection : le JIT compile les règles sur le vrai
+    //corpus et les pages de tous les fichiers sont en cache
+    public void warmUp(CorpusSnapshot snapshot) {
+        Thread thread = new Thread(() -> {
+            Consumer<Diagnostic> ignore = diagnostic -> {};
+            try {
+                if (snapshot != null) {
+                    long start = System.nanoTime();
+                    for (int i = 0; i < snapshot.size() && !shutdown; i++)
+                        lint(snapshot.name(i), snapshot.text(i), ignore);
+                    Utils.print(String.format("%d fichier(s) de l'instantané vérifié(s) (%d ms).", snapshot.size(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)), Utils.DEBUG);
+                    return;
+                }
+                for (int i = 0; i < WARMUP_ITERATIONS && !shutdown; i++) {
+                    TextProcess.fixScenarioFile("warmup.ks", WARMUP_SCENARIO, ignore);
+                    TextProcess.fixTranslationFile("warmup.po", WARMUP_TRANSLATION, ignore);
+                }
+            } catch (Exception e) {
+                Utils.print("Échec de la mise en température : " + e, Utils.DEBUG);
+            }
+        }, "lint-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    //Écoute sur le port local donné (0 : port libre) ; chaque connexion est une session
+    public void listen(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Utils.print("LintServer à l'écoute sur " + serverSocket.getLocalSocketAddress());
+        while (!shutdown) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (shutdown)
+                    break;
+                throw e;
+            }
+            Thread thread = new Thread(() -> {
+                try (Socket s = socket) {
+                    serve(new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)),
+                            new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    Utils.print("Connexion interrompue : " + e, Utils.DEBUG);
+                }
+            }, "lint-session");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    //Traite les requêtes d'une session jusqu'à la fin du flux ou "shutdown"
+    public void serve(BufferedReader in, Writer out) throws IOException {
+        Session session = new Session(out);
+        String line;
+        while (!shutdown && (line = in.readLine()) != null) {
+            if (!line.trim().isEmpty())
+                session.handle(line);
+        }
+        session.cancelAll();
+    }
+
+    public void close() {
+        shutdown = true;
+        workers.shutdownNow();
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // déjà fermé
+            }
+        }
+    }
+
+    //Vérifie un fichier selon son extension et retourne le texte corrigé
+    static String lint(String uri, CharSequence text, Consumer<Diagnostic> diagnostics) throws Exception {
+        if (uri.endsWith(".ks"))
+            return TextProcess.fixScenarioFile(uri, text, diagnostics);
+        if (uri.endsWith(".po"))
+            return TextProcess.fixTranslationFile(uri, text.toString(), diagnostics);
+        throw new IllegalArgumentException("extension non supportée (.ks ou .po) : " + uri);
+    }
+
+    //Vérification en cours
+    private static class Request {
+
+        final Object id;
+        final String uri;
+        //Passe à vrai quand la réponse (résultat ou annulation) a été envoyée
+        final AtomicBoolean answered = new AtomicBoolean();
+        FutureTask<Void> task;
+
+        Request(Object id, String uri) {
+            this.id = id;
+            this.uri = uri;
+        }
+    }
+
+    private class Session {
+
+        private final Writer out;
+        private final Map<Object, Request> byId = new HashMap<>();
+        private final Map<String, Request> byUri = new HashMap<>();
+
+        Session(Writer out) {
+            this.out = out;
+        }
+
+        void handle(String line) {
+            Map<?, ?> message;
+            try {
+                Object parsed = JsonReader.parse(line);
+                if (!(parsed instanceof Map)) {
+                    sendError(null, INVALID_REQUEST, "objet JSON attendu");
+                    return;
+                }
+                message = (Map<?, ?>) parsed;
+            } catch (IllegalArgumentException e) {
+                sendError(null, PARSE_ERROR, e.getMessage());
+                return;
+            }
+            Object id = message.get("id");
+            Object method = message.get("method");
+            Object params = message.get("params");
+            if (!(method instanceof String)) {
+                sendError(id, INVALID_REQUEST, "méthode manquante");
+                return;
+            }
+            switch ((String) method) {
+                case "lint":
+                    if (!(params instanceof Map)) {
+                        reply(id, INVALID_PARAMS, "paramètres manquants");
+                        return;
+                    }
+                    lint(id, (Map<?, ?>) params);
+                    break;
+                case "$/cancelRequest":
+                    Request request;
+                    synchronized (this) {
+                        request = params instanceof Map ? byId.get(((Map<?, ?>) params).get("id")) : null;
+                    }
+                    if (request != null)
+                        cancel(request);
+                    break;
+                case "shutdown":
+                    cancelAll();
+                    sendResult(id, null);
+                    LintServer.this.close();
+                    break;
+                default:
+                    reply(id, METHOD_NOT_FOUND, "méthode inconnue : " + method);
+            }
+        }
+
+        private void lint(Object id, Map<?, ?> params) {
+            Object uri = params.get("uri");
+            Object text = params.get("text");
+            if (!(uri instanceof String) || !(text instanceof String)) {
+                reply(id, INVALID_PARAMS, "uri et text sont obligatoires");
+                return;
+            }
+            Object version = params.get("version");
+            boolean fix = Boolean.TRUE.equals(params.get("fix"));
+            Request request = new Request(id, (String) uri);
+            request.task = new FutureTask<>(() -> {
+                run(request, (String) text, version, fix);
+                return null;
+            });
+            Request previous;
+            synchronized (this) {
+                previous = byUri.put(request.uri, request);
+                if (id != null)
+                    byId.put(id, request);
+            }
+            //Une version plus récente du fichier rend la précédente inutile
+            if (previous != null)
+                cancel(previous);
+            workers.execute(request.task);
+        }
+
+        private void run(Request request, String text, Object version, boolean fix) {
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            try {
+                String fixed = LintServer.lint(request.uri, text, diagnostics::add);
+                if (request.answered.compareAndSet(false, true))
+                    sendResult(request.id, json -> writeResult(json, request.uri, version, diagnostics,
+                            fix ? fixed : null));
+            } catch (CancellationException e) {
+                if (request.answered.compareAndSet(false, true))
+                    reply(request.id, REQUEST_CANCELLED, "requête annulée");
+            } catch (Exception e) {
+                if (request.answered.compareAndSet(false, true))
+                    reply(request.id, e instanceof IllegalArgumentException ? INVALID_PARAMS : INTERNAL_ERROR,
+                            e.toString());
+            } finally {
+                forget(request);
+            }
+        }
+
+        private void cancel(Request request) {
+            if (request.answered.compareAndSet(false, true)) {
+                request.task.cancel(true);
+                reply(request.id, REQUEST_CANCELLED, "requête annulée");
+                forget(request);
+            }
+        }
+
+        void cancelAll() {
+            List<Request> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(byUri.values());
+            }
+            for (Request request : pending)
+                cancel(request);
+        }
+
+        private synchronized void forget(Request request) {
+            byUri.remove(request.uri, request);
+            if (request.id != null)
+                byId.remove(request.id, request);
+        }
+
+        private void writeResult(JsonWriter json, String uri, Object version, List<Diagnostic> diagnostics,
+                                 String fixed) {
+            json.beginObject();
+            json.name("uri").value(uri);
+            json.name("version");
+            writeValue(json, version);
+            json.name("diagnostics").beginArray();
+            for (Diagnostic diagnostic : diagnostics) {
+                json.beginObject();
+                json.name("line").value(diagnostic.line);
+                json.name("page").value(diagnostic.page);
+                json.name("column").value(diagnostic.column);
+                json.name("message").value(diagnostic.message);
+                json.name("extract").value(diagnostic.extract);
+                json.endObject();
+            }
+            json.endArray();
+            if (fixed != null)
+                json.name("text").value(fixed);
+            json.endObject();
+        }
+
+        private void sendResult(Object id, Consumer<JsonWriter> result) {
+            if (id == null)
+                return; // notification : pas de réponse
+            JsonWriter json = new JsonWriter(false);
+            json.beginObject();
+            json.name("jsonrpc").value("2.0");
+            json.name("id");
+            writeValue(json, id);
+            json.name("result");
+            if (result == null)
+                writeValue(json, null);
+            else
+                result.accept(json);
+            json.endObject();
+            send(json.toString());
+        }
+
+        //Erreur d'une requête valide : une notification n'a pas de réponse,
+        //même en cas d'erreur ou d'annulation
+        private void reply(Object id, int code, String message) {
+            if (id != null)
+                sendError(id, code, message);
+        }
+
+        //Erreur, avec un id null si la requête est illisible
+        private void sendError(Object id, int code, String message) {
+            JsonWriter json = new JsonWriter(false);
+            json.beginObject();
+            json.name("jsonrpc").value("2.0");
+            json.name("id");
+            writeValue(json, id);
+            json.name("error").beginObject();
+            json.name("code").value(code);
+            json.name("message").value(message);
+            json.endObject();
+            json.endObject();
+            send(json.toString());
+        }
+
+        private synchronized void send(String message) {
+            try {
+                out.write(message);
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                Utils.print("Impossible d'envoyer la réponse : " + e, Utils.ERROR);
+            }
+        }
+    }
+
+    private static void writeValue(JsonWriter json, Object value) {
+        if (value instanceof Long || value instanceof Integer)
+            json.value(((Number) value).longValue());
+        else if (value instanceof Number)
+            json.value(((Number) value).doubleValue());
+        else if (value instanceof Boolean)
+            json.value((Boolean) value);
+        else if (value == null)
+            json.value((String) null);
+        else
+            json.value(value.toString());
+    }
+}
@@ -0,0 +1,63 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.Objects;
+
+//État de la vérification d'un script entre deux lignes (TextProcess.fixScenarioFile) :
+//dialogue ou citation en cours, alinéa attendu, et état sauvegardé aux @if/@else.
+class LintState {
+
+    boolean talking = false;
+    boolean talkingBeforeIf = false;
+    boolean talkingEndofIf = false;
+    boolean inQuote = false;
+    boolean inQuoteBeforeIf = false;
+    boolean inQuoteEndofIf = false;
+    boolean needAlinea = true;
+    boolean alineaBeforeIf = true;
+    boolean alineaEndofIf = true;
+    int branchState = 0; // 1 : if, 2: else
+    //Erreur de paragraphe à signaler sur la prochaine ligne de texte
+    String waitTextReport = null;
+
+    LintState copy() {
+        LintState copy = new LintState();
+        copy.talking = talking;
+        copy.talkingBeforeIf = talkingBeforeIf;
+        copy.talkingEndofIf = talkingEndofIf;
+        copy.inQuote = inQuote;
+        copy.inQuoteBeforeIf = inQuoteBeforeIf;
+        copy.inQuoteEndofIf = inQuoteEndofIf;
+        copy.needAlinea = needAlinea;
+        copy.alineaBeforeIf = alineaBeforeIf;
+        copy.alineaEndofIf = alineaEndofIf;
+        copy.branchState = branchState;
+        copy.waitTextReport = waitTextReport;
+        return copy;
+    }
+
+    //Seuls talking, inQuote et needAlinea influent sur le traitement d'une ligne de texte
+    int textLineBits() {
+        return (talking ? 1 : 0) | (inQuote ? 2 : 0) | (needAlinea ? 4 : 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof LintState))
+            return false;
+        LintState other = (LintState) o;
+        return talking == other.talking && talkingBeforeIf == other.talkingBeforeIf
+                && talkingEndofIf == other.talkingEndofIf && inQuote == other.inQuote
+                && inQuoteBeforeIf == other.inQuoteBeforeIf && inQuoteEndofIf == other.inQuoteEndofIf
+                && needAlinea == other.needAlinea && alineaBeforeIf == other.alineaBeforeIf
+                && alineaEndofIf == other.alineaEndofIf && branchState == other.branchState
+                && Objects.equals(waitTextReport, other.waitTextReport);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(talking, talkingBeforeIf, talkingEndofIf, inQuote, inQuoteBeforeIf, inQuoteEndofIf,
+                needAlinea, alineaBeforeIf, alineaEndofIf, branchState, waitTextReport);
+    }
+}
@@ -0,0 +1,219 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//Surveille une arborescence de scripts (.ks, .po) et revérifie uniquement les
+//fichiers modifiés. Les diagnostics des autres fichiers restent en mémoire,
+//ainsi que l'empreinte de leur contenu : un fichier réenregistré sans
+//modification n'est pas revérifié.
+//Les rafales d'événements (sauvegarde en plusieurs écritures, copie d'un
+//dossier...) sont regroupées : la vérification attend DEBOUNCE_MS sans
+//nouvel événement, et au plus MAX_DELAY_MS.
+public class LintWatcher implements Closeable {
+
+    private static final long DEBOUNCE_MS = 150;
+    private static final long MAX_DELAY_MS = 1000;
+
+    //Appelé après chaque vérification, avec les diagnostics des fichiers
+    //revérifiés (liste vide pour un fichier supprimé ou sans erreur)
+    public interface Listener {
+        void filesChecked(Map<Path, List<Diagnostic>> changed, long nanos);
+    }
+
+    private static class Result {
+        final String hash;
+        final List<Diagnostic> diagnostics;
+
+        Result(String hash, List<Diagnostic> diagnostics) {
+            this.hash = hash;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    private final Path root;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<Path, Result> results = new ConcurrentHashMap<>();
+    private Listener listener = (changed, nanos) -> {};
+
+    public LintWatcher(Path root) throws IOException {
+        this.root = root;
+        this.watchService = root.getFileSystem().newWatchService();
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    //Vérifie toute l'arborescence et commence à la surveiller
+    public void start() throws IOException {
+        long start = System.nanoTime();
+        Map<Path, List<Diagnostic>> checked = check(registerAll(root));
+        listener.filesChecked(checked, System.nanoTime() - start);
+    }
+
+    //Boucle de surveillance, jusqu'à close() ou l'interruption du thread
+    public void run() throws IOException {
+        try {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(watchService.take(), changed);
+                //Regroupe les événements qui suivent de près
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MS);
+                WatchKey key;
+                while (System.nanoTime() < deadline
+                        && (key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changed);
+                }
+                long start = System.nanoTime();
+                Map<Path, List<Diagnostic>> checked = check(changed);
+                if (!checked.isEmpty())
+                    listener.filesChecked(checked, System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // close() appelé
+        }
+    }
+
+    //Diagnostics de tous les fichiers connus, triés par chemin
+    public Map<Path, List<Diagnostic>> diagnostics() {
+        Map<Path, List<Diagnostic>> result = new TreeMap<>();
+        for (Map.Entry<Path, Result> entry : results.entrySet())
+            result.put(entry.getKey(), entry.getValue().diagnostics);
+        return result;
+    }
+
+    public int totalDiagnostics() {
+        int total = 0;
+        for (Result result : results.values())
+            total += result.diagnostics.size();
+        return total;
+    }
+
+    public int fileCount() {
+        return results.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) throws IOException {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                //Des événements ont été perdus : tout est revérifié,
+                //les empreintes évitent de relancer les fichiers inchangés
+                changed.addAll(results.keySet());
+                if (directory != null)
+                    changed.addAll(registerAll(directory));
+                continue;
+            }
+            if (directory == null)
+                continue;
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+                changed.addAll(registerAll(path));
+            else if (isScript(path))
+                changed.add(path);
+            else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                //dossier supprimé : ses scripts disparaissent aussi
+                for (Path known : results.keySet()) {
+                    if (known.startsWith(path))
+                        changed.add(known);
+                }
+            }
+        }
+        if (!key.reset())
+            directories.remove(key);
+    }
+
+    //Surveille le dossier et ses sous-dossiers, et retourne les scripts qu'ils contiennent
+    private List<Path> registerAll(Path start) throws IOException {
+        List<Path> scripts = new ArrayList<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isScript(file))
+                    scripts.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return scripts;
+    }
+
+    //Revérifie les fichiers en parallèle ; ceux dont le contenu n'a pas changé sont ignorés
+    private Map<Path, List<Diagnostic>> check(Iterable<Path> paths) {
+        List<Path> list = new ArrayList<>();
+        paths.forEach(list::add);
+        Map<Path, List<Diagnostic>> checked = new ConcurrentHashMap<>();
+        list.parallelStream().forEach(path -> {
+            List<Diagnostic> diagnostics = checkFile(path);
+            if (diagnostics != null)
+                checked.put(path, diagnostics);
+        });
+        return new TreeMap<>(checked);
+    }
+
+    //Retourne null si le fichier n'a pas changé depuis la dernière vérification
+    private List<Diagnostic> checkFile(Path path) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (IOException e) {
+            //encore verrouillé ou en cours d'écriture par l'éditeur : les
+            //diagnostics précédents sont gardés, un autre événement suivra
+            if (Files.exists(path))
+                return null;
+            //fichier supprimé
+            return results.remove(path) != null ? Collections.emptyList() : null;
+        }
+        String hash = Utils.sha256(bytes);
+        Result previous = results.get(path);
+        if (previous != null && previous.hash.equals(hash))
+            return null;
+        List<Diagnostic> diagnostics = Collections.synchronizedList(new ArrayList<>());
+        String name = root.relativize(path).toString();
+        Utils.lintContent(name, name, new String(bytes, StandardCharsets.UTF_8), diagnostics::add);
+        List<Diagnostic> result = Collections.unmodifiableList(new ArrayList<>(diagnostics));
+        results.put(path, new Result(hash, result));
+        return result;
+    }
+
+    private static boolean isScript(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".ks") || name.endsWith(".po");
+    }
+}
@@ -0,0 +1,26 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+//Affiche l'avancement dans le journal, pour les exécutions sans interface
+//graphique. Limite l'affichage à une ligne par intervalle.
+public class LogProgressListener implements ProgressListener {
+
+    private final long intervalMillis;
+    private long lastPrint;
+    private boolean finishedPrinted = false;
+
+    public LogProgressListener(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+        this.lastPrint = -intervalMillis;
+    }
+
+    @Override
+    public synchronized void progressUpdated(ProgressSnapshot snapshot) {
+        if (finishedPrinted)
+            return;
+        if (snapshot.isFinished() || snapshot.elapsedMillis - lastPrint >= intervalMillis) {
+            lastPrint = snapshot.elapsedMillis;
+            finishedPrinted = snapshot.isFinished();
+            Utils.print(snapshot.format());
+        }
+    }
+}
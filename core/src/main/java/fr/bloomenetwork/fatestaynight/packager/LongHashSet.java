@@ -0,0 +1,52 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+//Ensemble de long à adressage ouvert, sans objet par élément (0 : case libre).
+//Utilisé par les index du corpus (SymbolIndex, VoiceIndex).
+class LongHashSet {
+    private long[] keys = new long[1024];
+    private int size = 0;
+
+    //Faux si la clé était déjà présente
+    boolean add(long key) {
+        if ((size + 1) * 2 > keys.length)
+            grow();
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key)
+                return false;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        size++;
+        return true;
+    }
+
+    boolean contains(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key)
+                return true;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = keys;
+        keys = new long[old.length * 2];
+        size = 0;
+        for (long key : old) {
+            if (key != 0)
+                add(key);
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,244 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+//Résultats de la vérification des scripts, page par page (TextProcess.fixScenarioFile).
+//Une page (section commençant par *page) n'est revérifiée que si son contenu
+//ou l'état en entrée (dialogue, citation, alinéa, @if en cours) a changé :
+//après une correction d'un mot, seule la page modifiée est retraitée, plus
+//les pages suivantes si l'état en sortie de la page a changé.
+//Sans dossier, le cache est gardé en mémoire (serveur, mode surveillance) ;
+//avec un dossier, chaque document y est enregistré dans un fichier JSON, relu
+//lors de la vérification suivante.
+public class PageCache {
+
+    private static final int FORMAT_VERSION = 1;
+
+    //Diagnostic relatif à la page : ligne depuis le début de la page
+    static class Report {
+        final int line;
+        final int column;
+        final String message;
+        final String extract;
+
+        Report(int line, int column, String message, String extract) {
+            this.line = line;
+            this.column = column;
+            this.message = message;
+            this.extract = extract;
+        }
+    }
+
+    static class Page {
+        //Empreinte et longueur du texte d'origine de la page
+        final long hash;
+        final int length;
+        final LintState entry;
+        final LintState exit;
+        final int lineCount;
+        //Numéro de page affiché dans les diagnostics
+        final int pageNumber;
+        //Dernière ligne traitée, pour l'extrait des diagnostics de fin de fichier
+        final String lastLine;
+        final String fixed;
+        final List<Report> reports;
+
+        Page(long hash, int length, LintState entry, LintState exit, int lineCount, int pageNumber,
+             String lastLine, String fixed, List<Report> reports) {
+            this.hash = hash;
+            this.length = length;
+            this.entry = entry;
+            this.exit = exit;
+            this.lineCount = lineCount;
+            this.pageNumber = pageNumber;
+            this.lastLine = lastLine;
+            this.fixed = fixed;
+            this.reports = reports.isEmpty() ? Collections.emptyList() : reports;
+        }
+    }
+
+    private final Path directory;
+    private final Map<String, List<Page>> documents = new ConcurrentHashMap<>();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder relinted = new LongAdder();
+
+    //Cache en mémoire seulement
+    public PageCache() {
+        this(null);
+    }
+
+    public PageCache(Path directory) {
+        this.directory = directory;
+    }
+
+    //Pages de la dernière vérification du document, null si inconnu
+    List<Page> get(String fileName) {
+        if (directory == null)
+            return documents.get(fileName);
+        try {
+            return read(fileName, new String(Files.readAllBytes(file(fileName)), StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            //cache illisible (écriture interrompue...) : le document est revérifié
+            Utils.print("Cache des pages illisible pour " + fileName + " : " + e, Utils.DEBUG);
+            return null;
+        }
+    }
+
+    void put(String fileName, List<Page> pages) {
+        if (directory == null) {
+            documents.put(fileName, pages);
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path path = file(fileName);
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, write(fileName, pages).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Utils.print("Impossible d'enregistrer le cache des pages de " + fileName + " : " + e, Utils.ERROR);
+        }
+    }
+
+    void pageReused() {
+        reused.increment();
+    }
+
+    void pageRelinted() {
+        relinted.increment();
+    }
+
+    //Nombre de pages dont le résultat a été repris du cache
+    public long getReused() {
+        return reused.sum();
+    }
+
+    //Nombre de pages vérifiées
+    public long getRelinted() {
+        return relinted.sum();
+    }
+
+    private Path file(String fileName) {
+        return directory.resolve(Utils.sha256(fileName.getBytes(StandardCharsets.UTF_8)) + ".json");
+    }
+
+    //Empreinte 64 bits (FNV-1a) de text[start, end[, sans copie du texte
+    static long hash(CharSequence text, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static String write(String fileName, List<Page> pages) {
+        JsonWriter json = new JsonWriter(false);
+        json.beginObject();
+        json.name("format").value(FORMAT_VERSION);
+        json.name("version").value(RunReport.version());
+        json.name("fileName").value(fileName);
+        json.name("pages").beginArray();
+        for (Page page : pages) {
+            json.beginObject();
+            json.name("hash").value(page.hash);
+            json.name("length").value(page.length);
+            json.name("entry");
+            writeState(json, page.entry);
+            json.name("exit");
+            writeState(json, page.exit);
+            json.name("lines").value(page.lineCount);
+            json.name("page").value(page.pageNumber);
+            json.name("lastLine").value(page.lastLine);
+            json.name("fixed").value(page.fixed);
+            json.name("diagnostics").beginArray();
+            for (Report report : page.reports) {
+                json.beginObject();
+                json.name("line").value(report.line);
+                json.name("column").value(report.column);
+                json.name("message").value(report.message);
+                json.name("extract").value(report.extract);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        return json.toString();
+    }
+
+    //Retourne null si le fichier vient d'une autre version (les règles ont pu changer)
+    @SuppressWarnings("unchecked")
+    private static List<Page> read(String fileName, String text) {
+        Map<String, Object> root = (Map<String, Object>) JsonReader.parse(text);
+        if (((Long) root.get("format")) != FORMAT_VERSION || !RunReport.version().equals(root.get("version"))
+                || !fileName.equals(root.get("fileName")))
+            return null;
+        List<Page> pages = new ArrayList<>();
+        for (Object o : (List<Object>) root.get("pages")) {
+            Map<String, Object> page = (Map<String, Object>) o;
+            List<Report> reports = new ArrayList<>();
+            for (Object r : (List<Object>) page.get("diagnostics")) {
+                Map<String, Object> report = (Map<String, Object>) r;
+                reports.add(new Report(toInt(report.get("line")), toInt(report.get("column")),
+                        (String) report.get("message"), (String) report.get("extract")));
+            }
+            pages.add(new Page((Long) page.get("hash"), toInt(page.get("length")),
+                    readState((Map<String, Object>) page.get("entry")),
+                    readState((Map<String, Object>) page.get("exit")),
+                    toInt(page.get("lines")), toInt(page.get("page")),
+                    (String) page.get("lastLine"), (String) page.get("fixed"), reports));
+        }
+        return pages;
+    }
+
+    private static void writeState(JsonWriter json, LintState state) {
+        json.beginObject();
+        json.name("talking").value(state.talking);
+        json.name("talkingBeforeIf").value(state.talkingBeforeIf);
+        json.name("talkingEndofIf").value(state.talkingEndofIf);
+        json.name("inQuote").value(state.inQuote);
+        json.name("inQuoteBeforeIf").value(state.inQuoteBeforeIf);
+        json.name("inQuoteEndofIf").value(state.inQuoteEndofIf);
+        json.name("needAlinea").value(state.needAlinea);
+        json.name("alineaBeforeIf").value(state.alineaBeforeIf);
+        json.name("alineaEndofIf").value(state.alineaEndofIf);
+        json.name("branchState").value(state.branchState);
+        json.name("waitTextReport").value(state.waitTextReport);
+        json.endObject();
+    }
+
+    private static LintState readState(Map<String, Object> json) {
+        LintState state = new LintState();
+        state.talking = (Boolean) json.get("talking");
+        state.talkingBeforeIf = (Boolean) json.get("talkingBeforeIf");
+        state.talkingEndofIf = (Boolean) json.get("talkingEndofIf");
+        state.inQuote = (Boolean) json.get("inQuote");
+        state.inQuoteBeforeIf = (Boolean) json.get("inQuoteBeforeIf");
+        state.inQuoteEndofIf = (Boolean) json.get("inQuoteEndofIf");
+        state.needAlinea = (Boolean) json.get("needAlinea");
+        state.alineaBeforeIf = (Boolean) json.get("alineaBeforeIf");
+        state.alineaEndofIf = (Boolean) json.get("alineaEndofIf");
+        state.branchState = toInt(json.get("branchState"));
+        state.waitTextReport = (String) json.get("waitTextReport");
+        return state;
+    }
+
+    private static int toInt(Object value) {
+        return ((Long) value).intValue();
+    }
+}
@@ -0,0 +1,135 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Mesure la durée de chaque étape du traitement, document par document,
+//et garde les documents les plus lents pour le rapport d'exécution.
+public class PipelineMetrics {
+
+    private static final int SLOWEST_KEPT = 20;
+
+    //Durées mesurées pour un document
+    public static class DocumentTiming {
+
+        public final String route;
+        public final String fileId;
+        public final String fileName;
+        private final long[] stageNanos = new long[Stage.values().length];
+        private final long[] stageBytes = new long[Stage.values().length];
+        private long totalNanos;
+
+        DocumentTiming(String route, String fileId, String fileName) {
+            this.route = route;
+            this.fileId = fileId;
+            this.fileName = fileName;
+        }
+
+        public long nanos(Stage stage) {
+            return stageNanos[stage.ordinal()];
+        }
+
+        public long bytes(Stage stage) {
+            return stageBytes[stage.ordinal()];
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+    }
+
+    //Chronomètre d'un document : chaque appel à stage() mesure le temps
+    //écoulé depuis le précédent appel (ou depuis mark()), et émet
+    //l'événement JFR correspondant
+    public class DocumentTimer {
+
+        private final DocumentTiming timing;
+        private long mark;
+        private DocumentStageEvent event;
+
+        DocumentTimer(DocumentTiming timing) {
+            this.timing = timing;
+            mark();
+        }
+
+        public void mark() {
+            mark = System.nanoTime();
+            event = new DocumentStageEvent();
+            event.begin();
+        }
+
+        public long stage(Stage stage, long bytes) {
+            return stage(stage, bytes, 0);
+        }
+
+        public long stage(Stage stage, long bytes, int diagnostics) {
+            long now = System.nanoTime();
+            long nanos = now - mark;
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.name();
+                event.route = timing.route;
+                event.fileId = timing.fileId;
+                event.fileName = timing.fileName;
+                event.bytes = bytes;
+                event.diagnostics = diagnostics;
+                event.commit();
+            }
+            mark();
+            timing.stageNanos[stage.ordinal()] += nanos;
+            timing.stageBytes[stage.ordinal()] += bytes;
+            timing.totalNanos += nanos;
+            record(stage, nanos, bytes);
+            return nanos;
+        }
+
+        public void finish() {
+            synchronized (slowest) {
+                slowest.add(timing);
+                if (slowest.size() > SLOWEST_KEPT)
+                    slowest.poll();
+            }
+        }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLongArray bytes = new AtomicLongArray(Stage.values().length);
+    private final PriorityQueue<DocumentTiming> slowest =
+            new PriorityQueue<>(Comparator.comparingLong(DocumentTiming::getTotalNanos));
+
+    public PipelineMetrics() {
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    public DocumentTimer startDocument(String route, String fileId, String fileName) {
+        return new DocumentTimer(new DocumentTiming(route, fileId, fileName));
+    }
+
+    //Enregistre une mesure qui n'est pas liée à un document (listage Drive)
+    public void record(Stage stage, long nanos, long bytes) {
+        histograms[stage.ordinal()].record(nanos);
+        this.bytes.addAndGet(stage.ordinal(), bytes);
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public long bytes(Stage stage) {
+        return bytes.get(stage.ordinal());
+    }
+
+    //Documents les plus lents, du plus lent au moins lent
+    public List<DocumentTiming> slowestDocuments() {
+        List<DocumentTiming> result;
+        synchronized (slowest) {
+            result = new ArrayList<>(slowest);
+        }
+        result.sort(Comparator.comparingLong(DocumentTiming::getTotalNanos).reversed());
+        return result;
+    }
+}
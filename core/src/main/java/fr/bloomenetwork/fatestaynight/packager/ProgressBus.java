@@ -0,0 +1,208 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Centralise l'avancement du téléchargement : les threads de travail y
+//signalent chaque étape terminée, et un thread de publication envoie
+//régulièrement une ProgressSnapshot aux listeners (interface graphique,
+//journal en mode console...).
+public class ProgressBus {
+
+    private static final long PUBLISH_PERIOD_MS = 250;
+    //Poids de la dernière mesure dans la moyenne glissante des débits
+    private static final double SMOOTHING = 0.2;
+
+    private static class RouteCounters {
+        final AtomicInteger total = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicLongArray stageDocuments = new AtomicLongArray(Stage.values().length);
+        final AtomicLongArray stageBytes = new AtomicLongArray(Stage.values().length);
+        volatile boolean finished;
+    }
+
+    private final Map<String, RouteCounters> routes = new LinkedHashMap<>();
+    private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService publisher;
+    private long startTime = System.nanoTime();
+    private boolean finalPublished = false;
+
+    //Mesures de la publication précédente, pour les débits lissés
+    private long lastTime;
+    private long lastDocuments;
+    private long lastBytes;
+    private double documentsPerSecond;
+    private double bytesPerSecond;
+    private boolean rateInitialized;
+
+    public void addListener(ProgressListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ProgressListener listener) {
+        listeners.remove(listener);
+    }
+
+    //Déclare une route avant son démarrage, pour qu'elle compte dans
+    //l'avancement global dès le début
+    public void registerRoute(String route) {
+        counters(route);
+    }
+
+    public void documentsFound(String route, int count) {
+        counters(route).total.addAndGet(count);
+    }
+
+    public void stageCompleted(String route, Stage stage, long bytes) {
+        RouteCounters counters = counters(route);
+        counters.stageDocuments.incrementAndGet(stage.ordinal());
+        counters.stageBytes.addAndGet(stage.ordinal(), bytes);
+    }
+
+    //Document traité jusqu'au bout, ou volontairement ignoré
+    public void documentDone(String route) {
+        counters(route).done.incrementAndGet();
+    }
+
+    public void documentFailed(String route) {
+        counters(route).failed.incrementAndGet();
+    }
+
+    public void routeFinished(String route) {
+        counters(route).finished = true;
+        if (isFinished())
+            publish();
+    }
+
+    public boolean isFinished() {
+        synchronized (routes) {
+            if (routes.isEmpty())
+                return false;
+            for (RouteCounters counters : routes.values()) {
+                if (!counters.finished)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    //Démarre la publication périodique vers les listeners
+    public synchronized void start() {
+        if (publisher != null)
+            return;
+        startTime = System.nanoTime();
+        lastTime = startTime;
+        publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "progress-bus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleAtFixedRate(this::publish, PUBLISH_PERIOD_MS, PUBLISH_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    //Arrête la publication après un dernier envoi
+    public synchronized void stop() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+            publisher = null;
+        }
+        publish();
+    }
+
+    //La dernière snapshot (isFinished()) n'est publiée qu'une seule fois
+    private synchronized void publish() {
+        if (finalPublished)
+            return;
+        ProgressSnapshot snapshot = snapshot();
+        finalPublished = snapshot.isFinished();
+        for (ProgressListener listener : listeners) {
+            try {
+                listener.progressUpdated(snapshot);
+            } catch (RuntimeException e) {
+                Utils.print(e.toString(), Utils.ERROR);
+            }
+        }
+        if (snapshot.isFinished() && publisher != null) {
+            publisher.shutdown();
+            publisher = null;
+        }
+    }
+
+    public synchronized ProgressSnapshot snapshot() {
+        Map<String, ProgressSnapshot.Counters> routeSnapshots = new LinkedHashMap<>();
+        int total = 0, done = 0, failed = 0;
+        long[] stageDocuments = new long[Stage.values().length];
+        long[] stageBytes = new long[Stage.values().length];
+        synchronized (routes) {
+            for (Map.Entry<String, RouteCounters> entry : routes.entrySet()) {
+                ProgressSnapshot.Counters counters = freeze(entry.getValue());
+                routeSnapshots.put(entry.getKey(), counters);
+                total += counters.total;
+                done += counters.done;
+                failed += counters.failed;
+                for (Stage stage : Stage.values()) {
+                    stageDocuments[stage.ordinal()] += counters.documents(stage);
+                    stageBytes[stage.ordinal()] += counters.bytes(stage);
+                }
+            }
+        }
+        ProgressSnapshot.Counters overall = new ProgressSnapshot.Counters(
+                total, done, failed, isFinished(), stageDocuments, stageBytes);
+
+        //Débits en moyenne glissante exponentielle, le volume étant celui
+        //téléchargé depuis Google Drive
+        long now = System.nanoTime();
+        long processed = overall.processed();
+        long bytes = overall.bytes(Stage.EXPORT);
+        double elapsed = (now - lastTime) / 1e9;
+        if (elapsed >= PUBLISH_PERIOD_MS / 2000.0) {
+            double instantDocuments = (processed - lastDocuments) / elapsed;
+            double instantBytes = (bytes - lastBytes) / elapsed;
+            if (rateInitialized) {
+                documentsPerSecond += SMOOTHING * (instantDocuments - documentsPerSecond);
+                bytesPerSecond += SMOOTHING * (instantBytes - bytesPerSecond);
+            } else if (processed > 0) {
+                documentsPerSecond = instantDocuments;
+                bytesPerSecond = instantBytes;
+                rateInitialized = true;
+            }
+            lastTime = now;
+            lastDocuments = processed;
+            lastBytes = bytes;
+        }
+        long remaining = total - processed;
+        long eta = -1;
+        if (overall.finished)
+            eta = 0;
+        else if (documentsPerSecond > 0.01)
+            eta = Math.round(remaining / documentsPerSecond);
+
+        return new ProgressSnapshot(routeSnapshots, overall, (now - startTime) / 1_000_000,
+                documentsPerSecond, bytesPerSecond, eta);
+    }
+
+    private static ProgressSnapshot.Counters freeze(RouteCounters counters) {
+        long[] stageDocuments = new long[Stage.values().length];
+        long[] stageBytes = new long[Stage.values().length];
+        for (int i = 0; i < stageDocuments.length; i++) {
+            stageDocuments[i] = counters.stageDocuments.get(i);
+            stageBytes[i] = counters.stageBytes.get(i);
+        }
+        return new ProgressSnapshot.Counters(counters.total.get(), counters.done.get(),
+                counters.failed.get(), counters.finished, stageDocuments, stageBytes);
+    }
+
+    private RouteCounters counters(String route) {
+        synchronized (routes) {
+            return routes.computeIfAbsent(route, r -> new RouteCounters());
+        }
+    }
+}
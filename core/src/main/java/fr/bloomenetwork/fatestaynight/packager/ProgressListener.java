@@ -0,0 +1,9 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+//Reçoit périodiquement l'état d'avancement publié par le ProgressBus.
+//Appelé depuis le thread de publication : une interface graphique doit
+//repasser elle-même sur l'EDT.
+public interface ProgressListener {
+
+    void progressUpdated(ProgressSnapshot snapshot);
+}
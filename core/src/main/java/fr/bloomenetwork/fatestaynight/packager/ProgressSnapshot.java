@@ -0,0 +1,72 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.Collections;
+import java.util.Map;
+
+//Photographie immuable de l'avancement, par route et globale
+public class ProgressSnapshot {
+
+    public static class Counters {
+
+        public final int total;
+        public final int done;
+        public final int failed;
+        public final boolean finished;
+        //Nombre de documents et volume (octets, ou caractères pour les étapes
+        //de texte) par étape, indexés par Stage.ordinal()
+        private final long[] stageDocuments;
+        private final long[] stageBytes;
+
+        Counters(int total, int done, int failed, boolean finished, long[] stageDocuments, long[] stageBytes) {
+            this.total = total;
+            this.done = done;
+            this.failed = failed;
+            this.finished = finished;
+            this.stageDocuments = stageDocuments;
+            this.stageBytes = stageBytes;
+        }
+
+        public long documents(Stage stage) {
+            return stageDocuments[stage.ordinal()];
+        }
+
+        public long bytes(Stage stage) {
+            return stageBytes[stage.ordinal()];
+        }
+
+        //Documents traités, qu'ils aient réussi ou échoué
+        public int processed() {
+            return done + failed;
+        }
+    }
+
+    public final Map<String, Counters> routes;
+    public final Counters overall;
+    public final long elapsedMillis;
+    public final double documentsPerSecond;
+    public final double bytesPerSecond;
+    //Temps restant estimé en secondes, -1 si inconnu
+    public final long etaSeconds;
+
+    ProgressSnapshot(Map<String, Counters> routes, Counters overall, long elapsedMillis,
+                     double documentsPerSecond, double bytesPerSecond, long etaSeconds) {
+        this.routes = Collections.unmodifiableMap(routes);
+        this.overall = overall;
+        this.elapsedMillis = elapsedMillis;
+        this.documentsPerSecond = documentsPerSecond;
+        this.bytesPerSecond = bytesPerSecond;
+        this.etaSeconds = etaSeconds;
+    }
+
+    public boolean isFinished() {
+        return overall.finished;
+    }
+
+    public String format() {
+        String eta = etaSeconds < 0 ? "--:--"
+                : String.format("%02d:%02d", etaSeconds / 60, etaSeconds % 60);
+        return String.format("%d/%d documents (%d erreurs) - %.1f doc/s - %.2f Mo/s - reste %s",
+                overall.processed(), overall.total, overall.failed,
+                documentsPerSecond, bytesPerSecond / (1024 * 1024), eta);
+    }
+}
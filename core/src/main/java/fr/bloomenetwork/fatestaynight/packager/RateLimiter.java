@@ -0,0 +1,73 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+//Limiteur de débit à seau de jetons : au plus `permitsPerSecond` requêtes
+//par seconde en régime établi, avec une rafale initiale de `burst` requêtes.
+//Chaque appel à acquire() réserve le prochain créneau libre puis attend
+//qu'il arrive, ce qui sert les demandeurs dans l'ordre d'arrivée.
+public class RateLimiter {
+
+    //Intervalle de vérification d'une attente annulable
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    //Instant à partir duquel le prochain jeton sera disponible
+    private long nextFreeTime;
+
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0)
+            throw new IllegalArgumentException("permitsPerSecond doit être positif");
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstNanos = intervalNanos * Math.max(0, burst - 1);
+        this.nextFreeTime = System.nanoTime() - burstNanos;
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0)
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+    //Comme acquire(), mais abandonne l'attente dès que cancelled devient vrai
+    //(vérifié au plus toutes les 50 ms) : le jeton réservé est alors rendu,
+    //pour ne pas retarder les demandeurs suivants.
+    //Retourne false si l'attente a été abandonnée.
+    public boolean acquire(BooleanSupplier cancelled) throws InterruptedException {
+        if (cancelled.getAsBoolean())
+            return false;
+        long deadline = System.nanoTime() + reserve();
+        try {
+            long wait;
+            while ((wait = deadline - System.nanoTime()) > 0) {
+                if (cancelled.getAsBoolean()) {
+                    release();
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.min(wait, POLL_NANOS));
+            }
+        } catch (InterruptedException e) {
+            release();
+            throw e;
+        }
+        return true;
+    }
+
+    //Réserve un jeton et retourne le temps d'attente avant de pouvoir l'utiliser
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        //les jetons non utilisés s'accumulent jusqu'à la taille de la rafale
+        if (nextFreeTime < now - burstNanos)
+            nextFreeTime = now - burstNanos;
+        long wait = nextFreeTime - now;
+        nextFreeTime += intervalNanos;
+        return wait;
+    }
+
+    //Rend un jeton réservé mais non utilisé
+    private synchronized void release() {
+        nextFreeTime -= intervalNanos;
+    }
+}
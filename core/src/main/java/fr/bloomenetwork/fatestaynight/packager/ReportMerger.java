@@ -0,0 +1,159 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+//Remet dans un ordre stable les diagnostics et erreurs des documents traités
+//en parallèle : route (par nom), document (ordre du listage), ligne, puis
+//ordre d'émission dans le document.
+//Chaque document est mis de côté pendant son traitement, puis transmis dès que
+//tous ceux qui le précèdent l'ont été : le rapport s'écrit au fil de l'eau,
+//seuls les documents terminés en avance restent en mémoire.
+//Le journal (Utils.saveLog) est ainsi identique d'une exécution à l'autre.
+public class ReportMerger {
+
+    //Destination des messages, dans l'ordre : Utils::print par défaut
+    public interface Output {
+        void print(String message, int level);
+    }
+
+    private static class Entry {
+        final int line;
+        //Rang d'émission dans le document : les colonnes ne sont pas comparables
+        //(relatives à l'extrait, -1 pour toute la ligne)
+        final int sequence;
+        final String message;
+        final int level;
+
+        Entry(int line, int sequence, String message, int level) {
+            this.line = line;
+            this.sequence = sequence;
+            this.message = message;
+            this.level = level;
+        }
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER =
+            Comparator.<Entry>comparingInt(e -> e.line).thenComparingInt(e -> e.sequence);
+
+    //Messages d'un document, transmis à sa fermeture (à ligne égale, dans
+    //l'ordre où la vérification les a émis)
+    public class Document {
+
+        private final String route;
+        private final String key;
+        private final List<Entry> entries = new ArrayList<>();
+
+        private Document(String route, String key) {
+            this.route = route;
+            this.key = key;
+        }
+
+        public synchronized void diagnostic(Diagnostic diagnostic) {
+            entries.add(new Entry(diagnostic.line, entries.size(), diagnostic.getText(), Utils.SYNTAX));
+        }
+
+        //Message sur le document entier, placé après ses diagnostics
+        public synchronized void print(String message, int level) {
+            entries.add(new Entry(Integer.MAX_VALUE, entries.size(), message, level));
+        }
+
+        public void close() {
+            documentDone(this);
+        }
+
+        private synchronized void writeTo(Output output) {
+            entries.sort(ENTRY_ORDER);
+            for (Entry entry : entries)
+                output.print(entry.message, entry.level);
+            entries.clear();
+        }
+    }
+
+    private static class Route {
+        //Clés des documents dans l'ordre du rapport, null tant que la route n'est pas listée
+        List<String> order = null;
+        final Set<String> listed = new HashSet<>();
+        //Prochain document à transmettre
+        int next = 0;
+        final Map<String, Document> done = new HashMap<>();
+        boolean finished = false;
+    }
+
+    private final Output output;
+    private final Map<String, Route> routes = new TreeMap<>();
+
+    public ReportMerger() {
+        this(Utils::print);
+    }
+
+    public ReportMerger(Output output) {
+        this.output = output;
+    }
+
+    //Annonce une route, avant le début du traitement
+    public synchronized void expectRoute(String route) {
+        routes.computeIfAbsent(route, r -> new Route());
+    }
+
+    //Donne l'ordre des documents de la route
+    public synchronized void routeListed(String route, List<String> keys) {
+        Route listed = route(route);
+        listed.order = new ArrayList<>(keys);
+        listed.listed.addAll(keys);
+        flush();
+    }
+
+    public Document open(String route, String key) {
+        return new Document(route, key);
+    }
+
+    //Les documents de la route qui n'ont pas été traités (arrêt) sont sautés
+    public synchronized void routeDone(String route) {
+        route(route).finished = true;
+        flush();
+    }
+
+    private synchronized void documentDone(Document document) {
+        Route route = route(document.route);
+        if (route.order != null && !route.listed.contains(document.key)) {
+            //document hors du listage : rien ne permet de le placer
+            document.writeTo(output);
+            return;
+        }
+        route.done.put(document.key, document);
+        flush();
+    }
+
+    private Route route(String name) {
+        return routes.computeIfAbsent(name, r -> new Route());
+    }
+
+    //Transmet les documents terminés qui ne sont plus précédés d'aucun document en cours
+    private void flush() {
+        for (Route route : routes.values()) {
+            if (route.order == null && !route.finished)
+                return;
+            List<String> order = route.order != null ? route.order : new ArrayList<>();
+            while (route.next < order.size()) {
+                Document document = route.done.remove(order.get(route.next));
+                if (document == null && !route.finished)
+                    return;
+                if (document != null)
+                    document.writeTo(output);
+                route.next++;
+            }
+            if (route.finished && !route.done.isEmpty()) {
+                for (Document document : new TreeMap<>(route.done).values())
+                    document.writeTo(output);
+                route.done.clear();
+            }
+        }
+    }
+}
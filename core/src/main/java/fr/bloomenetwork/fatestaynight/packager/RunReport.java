@@ -0,0 +1,153 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+//Rapport d'exécution au format JSON : durées par étape (p50/p95/p99/max),
+//volumes, avancement par route et documents les plus lents.
+//Permet de comparer les performances d'une version à l'autre.
+public class RunReport {
+
+    private static final String REPORT_PATH = "./reports/";
+    private static final int FORMAT_VERSION = 1;
+
+    private final PipelineMetrics metrics;
+    private final ProgressSnapshot progress;
+    private final LocalDateTime date = LocalDateTime.now();
+
+    public RunReport(PipelineMetrics metrics, ProgressSnapshot progress) {
+        this.metrics = metrics;
+        this.progress = progress;
+    }
+
+    //Écrit le rapport dans le dossier des rapports et retourne son chemin
+    public Path write() throws IOException {
+        Path path = Paths.get(REPORT_PATH + "FSN Packager - "
+                + date.format(DateTimeFormatter.ofPattern("dd-MM-yyyy HH-mm-ss")) + ".json");
+        write(path);
+        return path;
+    }
+
+    public void write(Path path) throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        Files.write(path, toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String toJson() {
+        JsonWriter json = new JsonWriter();
+        json.beginObject();
+        json.name("format").value(FORMAT_VERSION);
+        json.name("version").value(version());
+        json.name("date").value(date.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        json.name("wallTimeMs").value(progress.elapsedMillis);
+        json.name("documents").beginObject();
+        writeCounters(json, progress.overall);
+        json.endObject();
+
+        json.name("stages").beginObject();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = metrics.histogram(stage);
+            json.name(stage.name().toLowerCase()).beginObject();
+            json.name("count").value(histogram.getCount());
+            json.name("bytes").value(metrics.bytes(stage));
+            json.name("meanMs").value(histogram.getMeanNanos() / 1e6);
+            json.name("p50Ms").value(histogram.percentileNanos(50) / 1e6);
+            json.name("p95Ms").value(histogram.percentileNanos(95) / 1e6);
+            json.name("p99Ms").value(histogram.percentileNanos(99) / 1e6);
+            json.name("maxMs").value(histogram.getMaxNanos() / 1e6);
+            json.endObject();
+        }
+        json.endObject();
+
+        json.name("routes").beginObject();
+        for (Map.Entry<String, ProgressSnapshot.Counters> entry : progress.routes.entrySet()) {
+            json.name(entry.getKey()).beginObject();
+            writeCounters(json, entry.getValue());
+            json.endObject();
+        }
+        json.endObject();
+
+        json.name("slowestDocuments").beginArray();
+        for (PipelineMetrics.DocumentTiming timing : metrics.slowestDocuments()) {
+            json.beginObject();
+            json.name("route").value(timing.route);
+            json.name("fileId").value(timing.fileId);
+            json.name("name").value(timing.fileName);
+            json.name("totalMs").value(timing.getTotalNanos() / 1e6);
+            for (Stage stage : Stage.values()) {
+                if (stage != Stage.LIST)
+                    json.name(stage.name().toLowerCase() + "Ms").value(timing.nanos(stage) / 1e6);
+            }
+            json.name("exportBytes").value(timing.bytes(Stage.EXPORT));
+            json.endObject();
+        }
+        json.endArray();
+
+        LineCache lineCache = TextProcess.lineCache();
+        json.name("lineCache").beginObject();
+        json.name("hits").value(lineCache.getHits());
+        json.name("misses").value(lineCache.getMisses());
+        json.name("hitRate").value(lineCache.getHitRate());
+        json.endObject();
+        PageCache pageCache = TextProcess.pageCache();
+        if (pageCache != null) {
+            json.name("pageCache").beginObject();
+            json.name("reused").value(pageCache.getReused());
+            json.name("relinted").value(pageCache.getRelinted());
+            json.endObject();
+        }
+        json.endObject();
+        return json.toString();
+    }
+
+    //Résumé lisible du rapport, pour la ligne de commande
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("FSN Packager %s - %s%n", version(),
+                date.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+        sb.append(String.format("Durée : %.1f s, documents : %d/%d traités, %d en échec%n",
+                progress.elapsedMillis / 1000.0, progress.overall.done, progress.overall.total,
+                progress.overall.failed));
+        sb.append(String.format("%-9s %7s %10s %10s %10s %10s%n", "Étape", "Nombre", "p50 (ms)", "p95 (ms)",
+                "p99 (ms)", "max (ms)"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = metrics.histogram(stage);
+            sb.append(String.format("%-9s %7d %10.1f %10.1f %10.1f %10.1f%n", stage.name().toLowerCase(),
+                    histogram.getCount(), histogram.percentileNanos(50) / 1e6,
+                    histogram.percentileNanos(95) / 1e6, histogram.percentileNanos(99) / 1e6,
+                    histogram.getMaxNanos() / 1e6));
+        }
+        for (Map.Entry<String, ProgressSnapshot.Counters> entry : progress.routes.entrySet()) {
+            ProgressSnapshot.Counters counters = entry.getValue();
+            sb.append(String.format("%s : %d/%d, %d en échec%n", entry.getKey(), counters.done,
+                    counters.total, counters.failed));
+        }
+        LineCache lineCache = TextProcess.lineCache();
+        if (lineCache.getHits() + lineCache.getMisses() > 0)
+            sb.append(String.format("Cache des lignes : %.1f %% de succès (%d/%d)%n", lineCache.getHitRate() * 100,
+                    lineCache.getHits(), lineCache.getHits() + lineCache.getMisses()));
+        PageCache pageCache = TextProcess.pageCache();
+        if (pageCache != null && pageCache.getReused() + pageCache.getRelinted() > 0)
+            sb.append(String.format("Pages : %d revérifiées, %d reprises du cache%n", pageCache.getRelinted(),
+                    pageCache.getReused()));
+        return sb.toString();
+    }
+
+    private static void writeCounters(JsonWriter json, ProgressSnapshot.Counters counters) {
+        json.name("total").value(counters.total);
+        json.name("done").value(counters.done);
+        json.name("failed").value(counters.failed);
+    }
+
+    static String version() {
+        String version = RunReport.class.getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+}
@@ -0,0 +1,720 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//Index plein texte des fichiers du paquet (.ks et .po) : pour chaque mot
+//normalisé (minuscules, sans accents), ses positions (fichier, ligne, colonne).
+//Un nom ou une expression se retrouve ainsi dans toutes les routes sans
+//relire les milliers de fichiers.
+//
+//Les documents sont ajoutés au fil du téléchargement (update, depuis
+//plusieurs threads) ; un document inchangé (même empreinte) n'est pas
+//réindexé, un document modifié remplace l'ancien, qui n'est retiré du
+//fichier qu'à l'enregistrement. Le fichier (save) est fait de tables
+//d'entiers à offsets fixes et de mots triés : search(Path, …) y cherche
+//directement par projection en mémoire (FileChannel.map), sans le décoder.
+public class SearchIndex {
+
+    private static final int MAGIC = 0x46534E53; //"FSNS"
+    private static final int FORMAT_VERSION = 1;
+    //En-tête : magic, version, documents, mots, et début des chaînes, positions des mots, lignes et colonnes
+    private static final int HEADER_INTS = 7;
+    private static final int DOCUMENT_INTS = 6;
+    private static final int TERM_INTS = 4;
+
+    private static final String USAGE = String.join("\n",
+            "Usage : java -cp core.jar fr.bloomenetwork.fatestaynight.packager.SearchIndex [options] requêtes...",
+            "  --index FICHIER    fichier de l'index (journal/package.search par défaut)",
+            "  --update DOSSIER   met d'abord l'index à jour avec les .ks et .po du dossier",
+            "  --snapshot FICHIER met d'abord l'index à jour avec un instantané du paquet (journal/package.snapshot)",
+            "Chaque requête est un mot ou une expression (mots consécutifs) ; la casse et les accents sont ignorés.");
+
+    //Occurrence d'un mot ou du premier mot d'une expression ; ligne et colonne à partir de 0
+    public static class Hit {
+        public final String document;
+        public final int line;
+        public final int column;
+
+        Hit(String document, int line, int column) {
+            this.document = document;
+            this.line = line;
+            this.column = column;
+        }
+
+        @Override
+        public String toString() {
+            return document + ":" + (line + 1) + ":" + (column + 1);
+        }
+    }
+
+    //Positions d'un mot : paires (document, rang du mot dans le document),
+    //triées, et lignes et colonnes de chaque rang
+    private interface Source {
+        IntBuffer postings(String term);
+
+        boolean isLive(int document);
+
+        String document(int document);
+
+        int line(int document, int position);
+
+        int column(int document, int position);
+    }
+
+    private interface TokenConsumer {
+        void accept(String token, int line, int column);
+    }
+
+    //Tableau d'entiers extensible
+    private static class IntList {
+        int size = 0;
+        int[] values = new int[8];
+
+        void add(int a, int b) {
+            if (size + 2 > values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+            values[size++] = a;
+            values[size++] = b;
+        }
+    }
+
+    //Documents, numérotés dans l'ordre d'ajout ; une nouvelle version reçoit un nouveau numéro
+    private final List<String> documents = new ArrayList<>();
+    private final List<Long> hashes = new ArrayList<>();
+    private final List<int[]> lines = new ArrayList<>();
+    private final List<int[]> columns = new ArrayList<>();
+    private final Map<String, Integer> current = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final Map<String, IntList> postings = new HashMap<>();
+
+    //Index vide, ou relu depuis le fichier enregistré par save() ; un fichier
+    //absent ou d'un autre format donne un index vide
+    public static SearchIndex load(Path file) throws IOException {
+        SearchIndex index = new SearchIndex();
+        ByteBuffer buffer;
+        try {
+            buffer = map(file);
+        } catch (NoSuchFileException e) {
+            return index;
+        }
+        if (buffer.remaining() < HEADER_INTS * 4 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+            return index;
+        MappedSource source = new MappedSource(buffer);
+        for (int doc = 0; doc < source.documentCount; doc++) {
+            int base = source.documentBase(doc);
+            int count = buffer.getInt(base + 12);
+            int[] docLines = new int[count];
+            int[] docColumns = new int[count];
+            IntBuffer positions = source.positions(doc);
+            for (int i = 0; i < count; i++) {
+                docLines[i] = positions.get(2 * i);
+                docColumns[i] = positions.get(2 * i + 1);
+            }
+            long hash = ((long) buffer.getInt(base + 16) << 32) | (buffer.getInt(base + 20) & 0xFFFFFFFFL);
+            index.documents.add(source.document(doc));
+            index.hashes.add(hash);
+            index.lines.add(docLines);
+            index.columns.add(docColumns);
+            index.current.put(source.document(doc), doc);
+            index.live.set(doc);
+        }
+        for (int term = 0; term < source.termCount; term++) {
+            int base = source.termBase(term);
+            IntBuffer termPostings = source.termPostings(base);
+            IntList list = new IntList();
+            list.size = termPostings.remaining();
+            list.values = new int[Math.max(8, list.size)];
+            termPostings.get(list.values, 0, list.size);
+            index.postings.put(source.string(buffer.getInt(base), buffer.getInt(base + 4)), list);
+        }
+        return index;
+    }
+
+    //Indexe un document (ou le réindexe s'il a changé) ; retourne faux s'il était déjà à jour
+    public boolean update(String name, String text) {
+        name = name.replace('\\', '/');
+        long hash = PageCache.hash(text, 0, text.length());
+        synchronized (this) {
+            Integer previous = current.get(name);
+            if (previous != null && hashes.get(previous) == hash)
+                return false;
+        }
+        List<String> tokens = new ArrayList<>();
+        IntList positions = new IntList();
+        tokenize(name, text, (token, line, column) -> {
+            tokens.add(token);
+            positions.add(line, column);
+        });
+        int[] docLines = new int[tokens.size()];
+        int[] docColumns = new int[tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            docLines[i] = positions.values[2 * i];
+            docColumns[i] = positions.values[2 * i + 1];
+        }
+        synchronized (this) {
+            Integer previous = current.get(name);
+            if (previous != null)
+                live.clear(previous);
+            int doc = documents.size();
+            documents.add(name);
+            hashes.add(hash);
+            lines.add(docLines);
+            columns.add(docColumns);
+            current.put(name, doc);
+            live.set(doc);
+            for (int i = 0; i < tokens.size(); i++)
+                postings.computeIfAbsent(tokens.get(i), t -> new IntList()).add(doc, i);
+        }
+        return true;
+    }
+
+    public synchronized void remove(String name) {
+        Integer previous = current.remove(name.replace('\\', '/'));
+        if (previous != null)
+            live.clear(previous);
+    }
+
+    public synchronized boolean contains(String name) {
+        return current.containsKey(name.replace('\\', '/'));
+    }
+
+    public synchronized int documentCount() {
+        return current.size();
+    }
+
+    //Met à jour l'index avec les .ks et .po du dossier et de ses
+    //sous-dossiers, et retire les documents du dossier qui n'existent plus.
+    //Retourne le nombre de documents ajoutés ou réindexés.
+    public int updateFolder(Path folder) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) walk::iterator) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".ks") || name.endsWith(".po"))
+                    files.add(path);
+            }
+        }
+        Set<String> names = new HashSet<>();
+        int updated = 0;
+        for (Path file : files) {
+            String name = file.toString().replace('\\', '/');
+            names.add(name);
+            if (update(name, new String(Files.readAllBytes(file), StandardCharsets.UTF_8)))
+                updated++;
+        }
+        String prefix = folder.toString().replace('\\', '/') + "/";
+        synchronized (this) {
+            for (String name : new ArrayList<>(current.keySet())) {
+                if (name.startsWith(prefix) && !names.contains(name))
+                    remove(name);
+            }
+        }
+        return updated;
+    }
+
+    //Comme updateFolder, depuis un instantané du dossier : un document
+    //inchangé est reconnu à l'empreinte de la table, sans lire son texte
+    public int updateSnapshot(CorpusSnapshot snapshot) {
+        String prefix = snapshot.folder() + "/";
+        Set<String> names = new HashSet<>();
+        int updated = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            String name = prefix + snapshot.name(i);
+            names.add(name);
+            synchronized (this) {
+                Integer previous = current.get(name);
+                if (previous != null && hashes.get(previous) == snapshot.hash(i))
+                    continue;
+            }
+            if (update(name, snapshot.text(i).toString()))
+                updated++;
+        }
+        synchronized (this) {
+            for (String name : new ArrayList<>(current.keySet())) {
+                if (name.startsWith(prefix) && !names.contains(name))
+                    remove(name);
+            }
+        }
+        return updated;
+    }
+
+    //Occurrences d'un mot ou d'une expression, triées par document, ligne et colonne
+    public synchronized List<Hit> search(String query) {
+        return search(new MemorySource(), query);
+    }
+
+    //Même recherche, directement dans le fichier enregistré par save()
+    public static List<Hit> search(Path file, String query) throws IOException {
+        ByteBuffer buffer = map(file);
+        if (buffer.remaining() < HEADER_INTS * 4 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+            throw new IOException("format d'index inconnu : " + file);
+        return search(new MappedSource(buffer), query);
+    }
+
+    //Enregistre les documents à jour (les anciennes versions sont retirées),
+    //dans un fichier temporaire remplacé ensuite d'un coup
+    public synchronized void save(Path file) throws IOException {
+        //renumérotation des documents à jour, dans l'ordre
+        int[] renumbered = new int[documents.size()];
+        List<Integer> kept = new ArrayList<>();
+        for (int doc = 0; doc < documents.size(); doc++) {
+            renumbered[doc] = live.get(doc) ? kept.size() : -1;
+            if (live.get(doc))
+                kept.add(doc);
+        }
+        //mots triés par octets UTF-8, comme les compare la recherche dans le fichier
+        List<byte[]> termBytes = new ArrayList<>();
+        List<IntList> termPostings = new ArrayList<>();
+        List<Map.Entry<String, IntList>> entries = new ArrayList<>(postings.entrySet());
+        byte[][] keys = new byte[entries.size()][];
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            keys[i] = entries.get(i).getKey().getBytes(StandardCharsets.UTF_8);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+        for (int i : order) {
+            IntList source = entries.get(i).getValue();
+            IntList compacted = new IntList();
+            for (int k = 0; k < source.size; k += 2) {
+                if (renumbered[source.values[k]] >= 0)
+                    compacted.add(renumbered[source.values[k]], source.values[k + 1]);
+            }
+            if (compacted.size > 0) {
+                termBytes.add(keys[i]);
+                termPostings.add(compacted);
+            }
+        }
+
+        List<byte[]> nameBytes = new ArrayList<>();
+        int stringsLength = 0;
+        for (int doc : kept) {
+            byte[] bytes = documents.get(doc).getBytes(StandardCharsets.UTF_8);
+            nameBytes.add(bytes);
+            stringsLength += bytes.length;
+        }
+        for (byte[] bytes : termBytes)
+            stringsLength += bytes.length;
+        int padding = (4 - stringsLength % 4) % 4;
+        int stringsBase = (HEADER_INTS + DOCUMENT_INTS * kept.size() + TERM_INTS * termBytes.size()) * 4;
+        int postingsBase = stringsBase + stringsLength + padding;
+        long postingsLength = 0;
+        for (IntList list : termPostings)
+            postingsLength += list.size;
+        long positionsBase = postingsBase + postingsLength * 4;
+        long totalPositions = 0;
+        for (int doc : kept)
+            totalPositions += lines.get(doc).length;
+        if (positionsBase + totalPositions * 8 > Integer.MAX_VALUE)
+            throw new IOException("index trop grand");
+
+        if (file.getParent() != null)
+            Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(kept.size());
+            out.writeInt(termBytes.size());
+            out.writeInt(stringsBase);
+            out.writeInt(postingsBase);
+            out.writeInt((int) positionsBase);
+            int stringOffset = 0;
+            int positionOffset = 0;
+            for (int k = 0; k < kept.size(); k++) {
+                int doc = kept.get(k);
+                out.writeInt(stringOffset);
+                out.writeInt(nameBytes.get(k).length);
+                out.writeInt(positionOffset);
+                out.writeInt(lines.get(doc).length);
+                out.writeLong(hashes.get(doc));
+                stringOffset += nameBytes.get(k).length;
+                positionOffset += lines.get(doc).length;
+            }
+            int postingOffset = 0;
+            for (int t = 0; t < termBytes.size(); t++) {
+                out.writeInt(stringOffset);
+                out.writeInt(termBytes.get(t).length);
+                out.writeInt(postingOffset);
+                out.writeInt(termPostings.get(t).size / 2);
+                stringOffset += termBytes.get(t).length;
+                postingOffset += termPostings.get(t).size;
+            }
+            for (byte[] bytes : nameBytes)
+                out.write(bytes);
+            for (byte[] bytes : termBytes)
+                out.write(bytes);
+            out.write(new byte[padding]);
+            for (IntList list : termPostings) {
+                for (int k = 0; k < list.size; k++)
+                    out.writeInt(list.values[k]);
+            }
+            for (int doc : kept) {
+                int[] docLines = lines.get(doc);
+                int[] docColumns = columns.get(doc);
+                for (int i = 0; i < docLines.length; i++) {
+                    out.writeInt(docLines[i]);
+                    out.writeInt(docColumns[i]);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //Positions du mot le plus rare de la requête, puis vérification que les
+    //autres mots occupent les rangs voisins
+    private static List<Hit> search(Source source, String query) {
+        List<String> terms = new ArrayList<>();
+        tokenize("", query, (token, line, column) -> terms.add(token));
+        List<Hit> hits = new ArrayList<>();
+        if (terms.isEmpty())
+            return hits;
+        IntBuffer[] lists = new IntBuffer[terms.size()];
+        int rarest = 0;
+        for (int t = 0; t < terms.size(); t++) {
+            lists[t] = source.postings(terms.get(t));
+            if (lists[t] == null)
+                return hits;
+            if (lists[t].limit() < lists[rarest].limit())
+                rarest = t;
+        }
+        IntBuffer driver = lists[rarest];
+        for (int k = 0; k + 1 < driver.limit(); k += 2) {
+            int doc = driver.get(k);
+            int position = driver.get(k + 1) - rarest;
+            if (position < 0 || !source.isLive(doc))
+                continue;
+            boolean match = true;
+            for (int t = 0; t < lists.length && match; t++)
+                match = t == rarest || contains(lists[t], doc, position + t);
+            if (match)
+                hits.add(new Hit(source.document(doc), source.line(doc, position), source.column(doc, position)));
+        }
+        hits.sort(Comparator.comparing((Hit h) -> h.document).thenComparingInt(h -> h.line)
+                .thenComparingInt(h -> h.column));
+        return hits;
+    }
+
+    //Recherche dichotomique d'une paire (document, rang) dans des paires triées
+    private static boolean contains(IntBuffer list, int doc, int position) {
+        int low = 0;
+        int high = list.limit() / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int d = list.get(2 * middle);
+            int p = list.get(2 * middle + 1);
+            if (d < doc || (d == doc && p < position))
+                low = middle + 1;
+            else if (d == doc && p == position)
+                return true;
+            else
+                high = middle - 1;
+        }
+        return false;
+    }
+
+    //Mots d'un texte, normalisés. Dans un script (.ks), les commandes (@),
+    //commentaires (;), étiquettes (*) et balises […] sont ignorés ; dans un
+    //.po, seul le texte entre guillemets compte. Un caractère échappé (\)
+    //sépare les mots. Lignes et colonnes à partir de 0.
+    private static void tokenize(String name, String text, TokenConsumer consumer) {
+        boolean script = name.endsWith(".ks");
+        boolean po = name.endsWith(".po");
+        StringBuilder token = new StringBuilder();
+        int lineNumber = 0;
+        for (int start = 0; start < text.length(); lineNumber++) {
+            int end = text.indexOf('\n', start);
+            if (end == -1)
+                end = text.length();
+            int from = start < end && text.charAt(start) == '\uFEFF' ? start + 1 : start;
+            int to = end;
+            if (script && from < end && "@;*".indexOf(text.charAt(from)) != -1)
+                to = from;
+            if (po) {
+                int open = text.indexOf('"', from);
+                int close = text.lastIndexOf('"', end - 1);
+                if (text.startsWith("#", from) || open == -1 || open >= end || close <= open)
+                    to = from;
+                else {
+                    from = open + 1;
+                    to = close;
+                }
+            }
+            int tokenStart = -1;
+            boolean inTag = false;
+            for (int i = from; i <= to; i++) {
+                char c = i < to ? text.charAt(i) : ' ';
+                boolean letter = !inTag && Character.isLetterOrDigit(c);
+                if (letter) {
+                    if (tokenStart == -1)
+                        tokenStart = i;
+                    token.append(c);
+                    continue;
+                }
+                if (tokenStart != -1) {
+                    consumer.accept(normalize(token), lineNumber, tokenStart - start);
+                    token.setLength(0);
+                    tokenStart = -1;
+                }
+                if (c == '\\')
+                    i++;
+                else if (script && c == '[')
+                    inTag = true;
+                else if (c == ']')
+                    inTag = false;
+            }
+            start = end + 1;
+        }
+    }
+
+    //Minuscules sans accents : "Épée" -> "epee"
+    private static String normalize(CharSequence token) {
+        boolean ascii = true;
+        for (int i = 0; i < token.length() && ascii; i++)
+            ascii = token.charAt(i) < 128;
+        String lower = token.toString().toLowerCase(Locale.ROOT);
+        if (ascii)
+            return lower;
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK)
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private class MemorySource implements Source {
+        @Override
+        public IntBuffer postings(String term) {
+            IntList list = SearchIndex.this.postings.get(term);
+            return list == null ? null : IntBuffer.wrap(list.values, 0, list.size).slice();
+        }
+
+        @Override
+        public boolean isLive(int document) {
+            return live.get(document);
+        }
+
+        @Override
+        public String document(int document) {
+            return documents.get(document);
+        }
+
+        @Override
+        public int line(int document, int position) {
+            return lines.get(document)[position];
+        }
+
+        @Override
+        public int column(int document, int position) {
+            return columns.get(document)[position];
+        }
+    }
+
+    //Lecture du fichier projeté en mémoire : les mots sont cherchés par dichotomie dans la table triée
+    private static class MappedSource implements Source {
+        final ByteBuffer buffer;
+        final int documentCount;
+        final int termCount;
+        final int stringsBase;
+        final int postingsBase;
+        final int positionsBase;
+        //Noms des documents, décodés à la première occurrence
+        final String[] names;
+
+        MappedSource(ByteBuffer buffer) {
+            this.buffer = buffer;
+            documentCount = buffer.getInt(8);
+            names = new String[documentCount];
+            termCount = buffer.getInt(12);
+            stringsBase = buffer.getInt(16);
+            postingsBase = buffer.getInt(20);
+            positionsBase = buffer.getInt(24);
+        }
+
+        int documentBase(int document) {
+            return (HEADER_INTS + DOCUMENT_INTS * document) * 4;
+        }
+
+        int termBase(int term) {
+            return (HEADER_INTS + DOCUMENT_INTS * documentCount + TERM_INTS * term) * 4;
+        }
+
+        String string(int offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(stringsBase + offset);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        IntBuffer termPostings(int base) {
+            return slice(postingsBase + buffer.getInt(base + 8) * 4, buffer.getInt(base + 12) * 2);
+        }
+
+        IntBuffer positions(int document) {
+            int base = documentBase(document);
+            return slice(positionsBase + buffer.getInt(base + 8) * 8, buffer.getInt(base + 12) * 2);
+        }
+
+        private IntBuffer slice(int offset, int ints) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.limit(offset + ints * 4);
+            return view.slice().asIntBuffer();
+        }
+
+        @Override
+        public IntBuffer postings(String term) {
+            byte[] key = term.getBytes(StandardCharsets.UTF_8);
+            int low = 0;
+            int high = termCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int base = termBase(middle);
+                int cmp = compare(buffer.getInt(base), buffer.getInt(base + 4), key);
+                if (cmp < 0)
+                    low = middle + 1;
+                else if (cmp > 0)
+                    high = middle - 1;
+                else
+                    return termPostings(base);
+            }
+            return null;
+        }
+
+        //Comparaison non signée, octet par octet, du mot du fichier et de la clé
+        private int compare(int offset, int length, byte[] key) {
+            int from = stringsBase + offset;
+            for (int i = 0; i < Math.min(length, key.length); i++) {
+                int cmp = Integer.compare(buffer.get(from + i) & 0xFF, key[i] & 0xFF);
+                if (cmp != 0)
+                    return cmp;
+            }
+            return Integer.compare(length, key.length);
+        }
+
+        @Override
+        public boolean isLive(int document) {
+            return true;
+        }
+
+        @Override
+        public String document(int document) {
+            if (names[document] == null) {
+                int base = documentBase(document);
+                names[document] = string(buffer.getInt(base), buffer.getInt(base + 4));
+            }
+            return names[document];
+        }
+
+        @Override
+        public int line(int document, int position) {
+            return buffer.getInt(positionsBase + (buffer.getInt(documentBase(document) + 8) + position) * 8);
+        }
+
+        @Override
+        public int column(int document, int position) {
+            return buffer.getInt(positionsBase + (buffer.getInt(documentBase(document) + 8) + position) * 8 + 4);
+        }
+    }
+
+    public static void main(String[] args) {
+        Path index = Paths.get("journal", "package.search");
+        Path folder = null;
+        Path snapshot = null;
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-h": case "--help":
+                    System.out.println(USAGE);
+                    return;
+                case "--index":
+                case "--update":
+                case "--snapshot":
+                    if (i + 1 >= args.length) {
+                        System.err.println(USAGE);
+                        System.exit(Lint.EXIT_ERROR);
+                    }
+                    if (args[i].equals("--index"))
+                        index = Paths.get(args[++i]);
+                    else if (args[i].equals("--update"))
+                        folder = Paths.get(args[++i]);
+                    else
+                        snapshot = Paths.get(args[++i]);
+                    break;
+                default:
+                    queries.add(args[i]);
+            }
+        }
+        try {
+            if (folder != null || snapshot != null) {
+                long start = System.nanoTime();
+                SearchIndex updated = load(index);
+                int count = folder != null ? updated.updateFolder(folder) : 0;
+                if (snapshot != null)
+                    count += updated.updateSnapshot(CorpusSnapshot.open(snapshot));
+                updated.save(index);
+                System.out.println(String.format("Index mis à jour : %d document(s) réindexé(s) sur %d (%d ms).", count,
+                        updated.documentCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            }
+            boolean found = false;
+            for (String query : queries) {
+                long start = System.nanoTime();
+                List<Hit> hits = search(index, query);
+                long nanos = System.nanoTime() - start;
+                //extraits : chaque fichier n'est relu qu'une fois, s'il existe encore
+                Map<String, String[]> texts = new HashMap<>();
+                for (Hit hit : hits) {
+                    String[] fileLines = texts.computeIfAbsent(hit.document, name -> {
+                        try {
+                            return new String(Files.readAllBytes(Paths.get(name)), StandardCharsets.UTF_8).split("\n", -1);
+                        } catch (IOException e) {
+                            return new String[0];
+                        }
+                    });
+                    System.out.println(hit + (hit.line < fileLines.length ? ": " + fileLines[hit.line].trim() : ""));
+                }
+                System.out.println(String.format("« %s » : %d occurrence(s) (%.1f ms).", query, hits.size(), nanos / 1e6));
+                found |= !hits.isEmpty();
+            }
+            System.exit(found || queries.isEmpty() ? Lint.EXIT_OK : Lint.EXIT_DIAGNOSTICS);
+        } catch (IOException e) {
+            System.err.println(index + " : " + e);
+            System.exit(Lint.EXIT_ERROR);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+//Vérification répartie entre plusieurs processus, chacun avec son propre tas
+//mémoire, sur la même machine ou sur d'autres : chaque document va à une
+//part (shard) selon l'empreinte stable de son chemin, ou de sa route avec
+//--by-route. Chaque processus (Lint --shard I/N) vérifie sa part et écrit
+//ses résultats dans un fichier shard-I-of-N.lint : pour chaque document, son
+//numéro dans la liste des entrées, ses diagnostics et son texte corrigé.
+//
+//La fusion (Lint --shards N) relit ces fichiers en parallèle, dans l'ordre
+//des numéros : les diagnostics sont affichés et les index de tout le corpus
+//(références, voix, traductions) remplis exactement comme par une
+//vérification en un seul processus, dont la sortie est ainsi identique. Un
+//manifeste (manifest.tsv) récapitule la part, le nombre de diagnostics et
+//l'empreinte du texte corrigé de chaque document.
+//Tous les processus doivent recevoir les mêmes entrées (mêmes fichiers dans
+//le même ordre, ou le même instantané) : l'empreinte de la liste est vérifiée
+//à la fusion.
+public class ShardedLint {
+
+    private static final int MAGIC = 0x46534E52; //"FSNR"
+    private static final int FORMAT_VERSION = 1;
+    //Types d'enregistrement : document vérifié, document illisible, fin du fichier
+    private static final int CHECKED = 0;
+    private static final int FAILED = 1;
+    private static final int END = 2;
+
+    //Part (1 à shards) d'un document
+    static int shardOf(Lint.Document document, int shards, boolean byRoute) {
+        String key = byRoute ? document.route() : document.docName.replace('\\', '/');
+        return (int) Long.remainderUnsigned(PageCache.hash(key, 0, key.length()), shards) + 1;
+    }
+
+    //Processus de vérification : vérifie les documents de la part et écrit ses résultats
+    static int work(List<Lint.Document> documents, int shard, int shards, boolean byRoute, Path dir, Path output) {
+        Path file = resultFile(dir, shard, shards);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int checked = 0;
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(shard);
+                out.writeInt(shards);
+                out.writeBoolean(byRoute);
+                out.writeInt(documents.size());
+                out.writeLong(fingerprint(documents));
+                for (int i = 0; i < documents.size(); i++) {
+                    Lint.Document document = documents.get(i);
+                    if (shardOf(document, shards, byRoute) != shard)
+                        continue;
+                    Lint.Checked result;
+                    try {
+                        result = Lint.check(document, output);
+                    } catch (IOException e) {
+                        out.writeByte(FAILED);
+                        out.writeInt(i);
+                        writeString(out, e.toString());
+                        continue;
+                    }
+                    out.writeByte(CHECKED);
+                    out.writeInt(i);
+                    writeString(out, result.name);
+                    writeString(out, result.source == null ? "" : result.source.toString());
+                    out.writeInt(result.diagnostics.size());
+                    for (String diagnostic : result.diagnostics)
+                        writeString(out, diagnostic);
+                    writeString(out, result.fixed);
+                    checked++;
+                }
+                out.writeByte(END);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println(file + " : " + e);
+            return Lint.EXIT_ERROR;
+        }
+        System.err.println(String.format("Part %d/%d : %d fichier(s) vérifié(s) (%d ms).", shard, shards, checked,
+                (System.nanoTime() - start) / 1_000_000));
+        return Lint.EXIT_OK;
+    }
+
+    //Lance les processus de vérification sur cette machine, avec la même
+    //commande Java et les mêmes options (-Xmx…), et attend leur fin
+    static int start(String[] args, int shards, Path dir) {
+        List<String> jvm = new ArrayList<>();
+        jvm.add(ProcessHandle.current().info().command()
+                .orElse(Paths.get(System.getProperty("java.home"), "bin", "java").toString()));
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (option.startsWith("-X") || option.startsWith("-D"))
+                jvm.add(option);
+        }
+        jvm.add("-cp");
+        jvm.add(System.getProperty("java.class.path"));
+        jvm.add(Lint.class.getName());
+        //mêmes arguments, sauf --shards N qui devient --shard I/N
+        List<String> common = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--shards"))
+                i++;
+            else if (!args[i].equals("--merge"))
+                common.add(args[i]);
+        }
+
+        List<Process> workers = new ArrayList<>();
+        int status = Lint.EXIT_OK;
+        try {
+            Files.createDirectories(dir);
+            for (int shard = 1; shard <= shards; shard++) {
+                Files.deleteIfExists(resultFile(dir, shard, shards));
+                List<String> command = new ArrayList<>(jvm);
+                command.addAll(common);
+                command.add("--shard");
+                command.add(shard + "/" + shards);
+                workers.add(new ProcessBuilder(command).inheritIO().start());
+            }
+        } catch (IOException e) {
+            System.err.println("Impossible de lancer les processus de vérification : " + e);
+            status = Lint.EXIT_ERROR;
+        }
+        for (Process worker : workers) {
+            try {
+                if (worker.waitFor() != Lint.EXIT_OK)
+                    status = Lint.EXIT_ERROR;
+            } catch (InterruptedException e) {
+                workers.forEach(Process::destroy);
+                Thread.currentThread().interrupt();
+                return Lint.EXIT_ERROR;
+            }
+        }
+        return status;
+    }
+
+    //Fusionne les résultats des parts dans l'ordre des documents : affiche les
+    //diagnostics, remplit les index et écrit le manifeste. Retourne le code de
+    //sortie de la vérification des documents.
+    static int merge(List<Lint.Document> documents, int shards, boolean byRoute, Path dir,
+                     SymbolIndex symbols, TranslationMemory translations) {
+        List<DataInputStream> inputs = new ArrayList<>();
+        int status = Lint.EXIT_OK;
+        try {
+            //numéro et type du prochain document de chaque part (numéro -1 quand elle est épuisée)
+            int[] next = new int[shards];
+            int[] type = new int[shards];
+            for (int shard = 1; shard <= shards; shard++) {
+                Path file = resultFile(dir, shard, shards);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+                inputs.add(in);
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != shard
+                        || in.readInt() != shards || in.readBoolean() != byRoute)
+                    throw new IOException(file + " : résultats d'une autre répartition");
+                if (in.readInt() != documents.size() || in.readLong() != fingerprint(documents))
+                    throw new IOException(file + " : résultats d'une autre liste de fichiers");
+                type[shard - 1] = in.readByte();
+                next[shard - 1] = type[shard - 1] == END ? -1 : in.readInt();
+            }
+
+            Path manifest = dir.resolve("manifest.tsv");
+            Path tmp = dir.resolve("manifest.tsv.tmp");
+            int merged = 0;
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                while (true) {
+                    int shard = -1;
+                    for (int s = 0; s < shards; s++) {
+                        if (next[s] != -1 && (shard == -1 || next[s] < next[shard]))
+                            shard = s;
+                    }
+                    if (shard == -1)
+                        break;
+                    DataInputStream in = inputs.get(shard);
+                    int number = next[shard];
+                    if (number >= documents.size())
+                        throw new IOException("document " + number + " inconnu");
+                    Lint.Document document = documents.get(number);
+                    if (type[shard] == FAILED) {
+                        System.err.println(document.docName + " : " + readString(in));
+                        status = Lint.EXIT_ERROR;
+                        writer.write(String.join("\t", Integer.toString(number), Integer.toString(shard + 1),
+                                document.docName, "erreur", ""));
+                    } else {
+                        String name = readString(in);
+                        String source = readString(in);
+                        List<String> diagnostics = new ArrayList<>();
+                        for (int count = in.readInt(); count > 0; count--)
+                            diagnostics.add(readString(in));
+                        String fixed = readString(in);
+                        //un .po relu pour les extraits doit être présent sur cette machine
+                        Path sourcePath = source.isEmpty() || !Files.exists(Paths.get(source)) ? null : Paths.get(source);
+                        int count = Lint.report(new Lint.Checked(name, document.docName, sourcePath, fixed, diagnostics),
+                                symbols, translations);
+                        if (count > 0 && status == Lint.EXIT_OK)
+                            status = Lint.EXIT_DIAGNOSTICS;
+                        writer.write(String.join("\t", Integer.toString(number), Integer.toString(shard + 1),
+                                document.docName, Integer.toString(count),
+                                Long.toHexString(PageCache.hash(fixed, 0, fixed.length()))));
+                    }
+                    writer.newLine();
+                    merged++;
+                    type[shard] = in.readByte();
+                    next[shard] = type[shard] == END ? -1 : in.readInt();
+                }
+            }
+            Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (merged != documents.size())
+                throw new IOException("résultats incomplets : " + merged + " fichier(s) sur " + documents.size());
+        } catch (IOException e) {
+            System.err.println(dir + " : " + e);
+            status = Lint.EXIT_ERROR;
+        } finally {
+            for (DataInputStream in : inputs) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // déjà fermé
+                }
+            }
+        }
+        return status;
+    }
+
+    static Path resultFile(Path dir, int shard, int shards) {
+        return dir.resolve("shard-" + shard + "-of-" + shards + ".lint");
+    }
+
+    //Empreinte de la liste des documents, identique dans tous les processus
+    private static long fingerprint(List<Lint.Document> documents) {
+        StringBuilder names = new StringBuilder();
+        for (Lint.Document document : documents)
+            names.append(document.docName.replace('\\', '/')).append('\n');
+        return PageCache.hash(names, 0, names.length());
+    }
+
+    //writeUTF est limité à 64 Ko : longueur sur 4 octets, puis UTF-8
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
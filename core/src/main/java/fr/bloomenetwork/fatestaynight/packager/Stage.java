@@ -0,0 +1,22 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+//Étapes du traitement d'un document, de Google Drive jusqu'au fichier écrit
+public enum Stage {
+
+    LIST("listage"),
+    EXPORT("export"),
+    EXTRACT("extraction"),
+    CONVERT("conversion"),
+    LINT("vérification"),
+    WRITE("écriture");
+
+    private final String label;
+
+    Stage(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,305 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+//Index des étiquettes et des références entre scripts KiriKiri, pour trouver
+//les @jump/@call/@link (ou [jump]…) vers un fichier ou une étiquette
+//inexistants, que la vérification fichier par fichier ne peut pas voir.
+//
+//Les scripts sont ajoutés au fil du téléchargement (addScenario, depuis
+//plusieurs threads) ; resolve() vérifie ensuite toutes les références en un
+//seul passage. Fichiers et étiquettes sont numérotés une fois pour toutes :
+//les étiquettes définies forment un ensemble de long (fichier, étiquette) et
+//les références des tableaux d'int, sans objet par élément.
+//Le même passage relève les voix des @say, vérifiées par voices().check().
+//Chaque fichier n'est ajouté qu'une fois par index.
+public class SymbolIndex {
+
+    //Commandes dont storage= et target= désignent un autre endroit du jeu
+    private static final String[] JUMP_COMMANDS = {"jump", "call", "link"};
+
+    //Référence lue dans un script, avant sa numérotation
+    private static class Reference {
+        final int line;
+        final int page;
+        final String storage;
+        final String target;
+        final String text;
+
+        Reference(int line, int page, String storage, String target, String text) {
+            this.line = line;
+            this.page = page;
+            this.storage = storage;
+            this.target = target;
+            this.text = text;
+        }
+    }
+
+    //Noms des fichiers (storage) et des étiquettes, numérotés dans l'ordre d'apparition
+    private final Map<String, Integer> storageIds = new HashMap<>();
+    private final List<String> storages = new ArrayList<>();
+    private final List<String> documents = new ArrayList<>();
+    private final Map<String, Integer> labelIds = new HashMap<>();
+    private final List<String> labelNames = new ArrayList<>();
+    //Fichiers ajoutés, et étiquettes définies : (fichier + 1) << 32 | étiquette
+    private final BitSet indexed = new BitSet();
+    private final LongHashSet labels = new LongHashSet();
+    private final VoiceIndex voices = new VoiceIndex();
+
+    //Références : fichier source, ligne, page, fichier et étiquette visés (-1 : aucune)
+    private int references = 0;
+    private int[] referenceSource = new int[256];
+    private int[] referenceLine = new int[256];
+    private int[] referencePage = new int[256];
+    private int[] referenceStorage = new int[256];
+    private int[] referenceLabel = new int[256];
+    private String[] referenceText = new String[256];
+
+    //Ajoute un script : storage est son nom de fichier dans le jeu ("…-01.ks"),
+    //docName le nom affiché dans les diagnostics
+    public void addScenario(String storage, String docName, String text) {
+        storage = storageName(storage);
+        List<String> fileLabels = new ArrayList<>();
+        List<Reference> fileReferences = new ArrayList<>();
+        List<Reference> fileVoices = new ArrayList<>();
+        scan(text, fileLabels, fileReferences, fileVoices);
+        for (Reference voice : fileVoices)
+            voices.add(docName, voice.storage, voice.line, voice.page, voice.text);
+
+        synchronized (this) {
+            int source = storageId(storage);
+            indexed.set(source);
+            documents.set(source, docName);
+            for (String label : fileLabels)
+                labels.add(labelKey(source, labelId(label)));
+            for (Reference reference : fileReferences) {
+                if (references == referenceSource.length)
+                    growReferences();
+                int i = references++;
+                referenceSource[i] = source;
+                referenceLine[i] = reference.line;
+                referencePage[i] = reference.page;
+                referenceStorage[i] = reference.storage == null ? source : storageId(storageName(reference.storage));
+                referenceLabel[i] = reference.target == null ? -1 : labelId(reference.target);
+                referenceText[i] = reference.text;
+            }
+        }
+    }
+
+    //Voix des @say des scripts ajoutés
+    public VoiceIndex voices() {
+        return voices;
+    }
+
+    public synchronized boolean contains(String storage) {
+        Integer id = storageIds.get(storageName(storage));
+        return id != null && indexed.get(id);
+    }
+
+    public synchronized int fileCount() {
+        return indexed.cardinality();
+    }
+
+    public synchronized int labelCount() {
+        return labels.size();
+    }
+
+    public synchronized int referenceCount() {
+        return references;
+    }
+
+    //Vérifie toutes les références et retourne le nombre de références cassées.
+    //Les diagnostics sont donnés triés par document puis par ligne.
+    public int resolve(Consumer<Diagnostic> diagnostics) {
+        List<Diagnostic> broken = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < references; i++) {
+                int storage = referenceStorage[i];
+                String message;
+                if (!indexed.get(storage))
+                    message = "fichier inexistant : " + storages.get(storage);
+                else if (referenceLabel[i] >= 0 && !labels.contains(labelKey(storage, referenceLabel[i])))
+                    message = "étiquette inexistante : *" + labelNames.get(referenceLabel[i])
+                            + (storage != referenceSource[i] ? " dans " + storages.get(storage) : "");
+                else
+                    continue;
+                String text = referenceText[i];
+                broken.add(TextProcess.diagnostic(documents.get(referenceSource[i]), referenceLine[i],
+                        referencePage[i], text, message, -1));
+            }
+        }
+        broken.sort(Comparator.comparing((Diagnostic d) -> d.fileName).thenComparingInt(d -> d.line));
+        broken.forEach(diagnostics);
+        return broken.size();
+    }
+
+    //Ajoute les scripts (.ks) du dossier et de ses sous-dossiers qui ne l'ont
+    //pas encore été, par exemple ceux qui n'ont pas été retéléchargés lors
+    //d'une reprise. Retourne le nombre de fichiers ajoutés.
+    public int addFolder(Path folder) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) walk::iterator) {
+                if (path.getFileName().toString().endsWith(".ks") && !contains(path.getFileName().toString()))
+                    files.add(path);
+            }
+        }
+        int added = 0;
+        for (Path file : files) {
+            String storage = file.getFileName().toString();
+            //deux fichiers homonymes dans des sous-dossiers différents : le premier seulement
+            if (contains(storage))
+                continue;
+            addScenario(storage, storage, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            added++;
+        }
+        return added;
+    }
+
+    //Étiquettes (*nom|titre), références et voix (@say storage=) d'un script. Lignes et
+    //pages sont numérotées comme dans les diagnostics de TextProcess : lignes à partir
+    //de 0, page N+1 après *pageN, 0 avant la première page.
+    private static void scan(String text, List<String> labels, List<Reference> references, List<Reference> voices) {
+        int lineNumber = 0;
+        int page = 0;
+        for (int start = 0; start < text.length(); lineNumber++) {
+            int end = text.indexOf('\n', start);
+            if (end == -1)
+                end = text.length();
+            int lineEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            int first = start < lineEnd && text.charAt(start) == '\uFEFF' ? start + 1 : start;
+            if (first < lineEnd) {
+                char c = text.charAt(first);
+                if (c == '*') {
+                    String label = labelName(text.substring(first + 1, lineEnd));
+                    labels.add(label);
+                    if (label.startsWith("page")) {
+                        try {
+                            page = Integer.parseInt(label.substring(4)) + 1;
+                        } catch (NumberFormatException e) {
+                            //étiquette qui n'est pas une page
+                        }
+                    }
+                } else if (c == '@') {
+                    if (text.startsWith("say ", first + 1)) {
+                        String voice = attribute(text.substring(first + 1, lineEnd), "storage");
+                        if (voice != null)
+                            voices.add(new Reference(lineNumber, page, voice, null, text.substring(start, lineEnd)));
+                    } else if (isJump(text, first + 1))
+                        command(text.substring(first + 1, lineEnd), lineNumber, page, text.substring(start, lineEnd),
+                                references);
+                } else if (c != ';') {
+                    //balises [jump …] dans une ligne de texte
+                    for (int tag = text.indexOf('[', first); tag != -1 && tag < lineEnd;
+                            tag = text.indexOf('[', tag + 1)) {
+                        //la plupart des balises sont des [lr] ou des [r], écartés sans copie
+                        if ((tag > 0 && text.charAt(tag - 1) == '\\') || !isJump(text, tag + 1))
+                            continue;
+                        int close = text.indexOf(']', tag);
+                        if (close == -1 || close > lineEnd)
+                            break;
+                        command(text.substring(tag + 1, close), lineNumber, page, text.substring(start, lineEnd),
+                                references);
+                    }
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    //Vrai si la commande commençant à `from` est l'une des JUMP_COMMANDS
+    private static boolean isJump(String text, int from) {
+        for (String name : JUMP_COMMANDS) {
+            int end = from + name.length();
+            if (text.startsWith(name, from) && (end == text.length() || " ]\r\n".indexOf(text.charAt(end)) != -1))
+                return true;
+        }
+        return false;
+    }
+
+    //Commande sans @ ni crochets : "jump storage=a.ks target=*page3"
+    private static void command(String command, int line, int page, String lineText, List<Reference> references) {
+        String storage = attribute(command, "storage");
+        String target = attribute(command, "target");
+        //sans storage ni target, la commande ne mène nulle part de vérifiable
+        if (storage == null && target == null)
+            return;
+        references.add(new Reference(line, page, storage, target == null ? null : labelName(target), lineText));
+    }
+
+    //Valeur d'un attribut, entre guillemets ou jusqu'à l'espace suivant ; null si absent
+    private static String attribute(String command, String name) {
+        int index = command.indexOf(" " + name + "=");
+        if (index == -1)
+            return null;
+        int start = index + name.length() + 2;
+        if (start < command.length() && (command.charAt(start) == '"' || command.charAt(start) == '\'')) {
+            int end = command.indexOf(command.charAt(start), start + 1);
+            return command.substring(start + 1, end == -1 ? command.length() : end);
+        }
+        int end = command.indexOf(' ', start);
+        String value = command.substring(start, end == -1 ? command.length() : end);
+        return value.isEmpty() ? null : value;
+    }
+
+    //"*page3|Titre" ou "page3" -> "page3"
+    private static String labelName(String label) {
+        int from = label.startsWith("*") ? 1 : 0;
+        int bar = label.indexOf('|');
+        return label.substring(from, bar == -1 ? label.length() : bar).trim();
+    }
+
+    //Nom du fichier sans dossier, avec l'extension .ks si elle est omise
+    private static String storageName(String storage) {
+        int slash = Math.max(storage.lastIndexOf('/'), storage.lastIndexOf('\\'));
+        String name = storage.substring(slash + 1);
+        return name.indexOf('.') == -1 ? name + ".ks" : name;
+    }
+
+    private int storageId(String storage) {
+        Integer id = storageIds.get(storage);
+        if (id == null) {
+            id = storages.size();
+            storageIds.put(storage, id);
+            storages.add(storage);
+            documents.add(storage);
+        }
+        return id;
+    }
+
+    private int labelId(String label) {
+        Integer id = labelIds.get(label);
+        if (id == null) {
+            id = labelNames.size();
+            labelIds.put(label, id);
+            labelNames.add(label);
+        }
+        return id;
+    }
+
+    private static long labelKey(int storage, int label) {
+        return ((long) (storage + 1) << 32) | label;
+    }
+
+    private void growReferences() {
+        int length = referenceSource.length * 2;
+        referenceSource = Arrays.copyOf(referenceSource, length);
+        referenceLine = Arrays.copyOf(referenceLine, length);
+        referencePage = Arrays.copyOf(referencePage, length);
+        referenceStorage = Arrays.copyOf(referenceStorage, length);
+        referenceLabel = Arrays.copyOf(referenceLabel, length);
+        referenceText = Arrays.copyOf(referenceText, length);
+    }
+}
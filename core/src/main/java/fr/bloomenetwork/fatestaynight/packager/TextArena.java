@@ -0,0 +1,205 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Textes des documents gardés en mémoire, pour tout le corpus : au lieu d'un
+//String par document, plus ses lignes, ses pages et leurs copies, chaque
+//texte est recopié une fois dans de grands blocs de char partagés, avec la
+//table des débuts de ses lignes (un int par ligne). Lignes et documents sont
+//rendus sous forme de TextView, sans copie ; TextProcess.fixScenarioFile les
+//vérifie tels quels.
+//
+//Un document remplacé ou retiré laisse sa place inoccupée jusqu'à
+//compact(). Les blocs ne sont jamais réécrits : une vue déjà rendue reste
+//valable après un remplacement ou un compactage (elle garde alors son
+//ancien bloc en mémoire).
+public class TextArena {
+
+    //Taille d'un bloc ; un document plus grand a son propre bloc
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final List<char[]> chunks = new ArrayList<>();
+    //Bloc partagé en cours de remplissage
+    private char[] current = null;
+    private int currentIndex = -1;
+    private int currentUsed = 0;
+
+    //Documents : nom, bloc, début et longueur du texte, débuts des lignes (null : retiré)
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] chunk = new int[64];
+    private int[] start = new int[64];
+    private int[] length = new int[64];
+    private final List<int[]> lineStarts = new ArrayList<>();
+
+    private long usedChars = 0;
+    private long garbageChars = 0;
+
+    //Ajoute ou remplace un document ; retourne son numéro, inchangé lors d'un remplacement
+    public synchronized int put(String name, CharSequence text) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+            lineStarts.add(null);
+            if (id == chunk.length) {
+                chunk = Arrays.copyOf(chunk, id * 2);
+                start = Arrays.copyOf(start, id * 2);
+                length = Arrays.copyOf(length, id * 2);
+            }
+        } else if (lineStarts.get(id) != null) {
+            garbageChars += length[id];
+        }
+        store(id, text);
+        lineStarts.set(id, lineStarts(text));
+        return id;
+    }
+
+    public synchronized void remove(String name) {
+        Integer id = ids.get(name);
+        if (id == null || lineStarts.get(id) == null)
+            return;
+        garbageChars += length[id];
+        lineStarts.set(id, null);
+    }
+
+    //Numéro du document, -1 s'il est absent
+    public synchronized int id(String name) {
+        Integer id = ids.get(name);
+        return id == null || lineStarts.get(id) == null ? -1 : id;
+    }
+
+    public synchronized String name(int id) {
+        return names.get(id);
+    }
+
+    public synchronized TextView text(int id) {
+        check(id);
+        return new TextView(chunks.get(chunk[id]), start[id], length[id]);
+    }
+
+    public synchronized TextView text(String name) {
+        int id = id(name);
+        return id == -1 ? null : text(id);
+    }
+
+    //Nombre de lignes, comme String.lines() : une fin de ligne finale n'ouvre pas de ligne vide
+    public synchronized int lineCount(int id) {
+        check(id);
+        return lineStarts.get(id).length;
+    }
+
+    //Ligne sans son retour à la ligne (\n, \r ou \r\n)
+    public synchronized TextView line(int id, int line) {
+        check(id);
+        int[] starts = lineStarts.get(id);
+        char[] chars = chunks.get(chunk[id]);
+        int from = start[id] + starts[line];
+        int end = line + 1 < starts.length ? start[id] + starts[line + 1] : start[id] + length[id];
+        //retire le retour à la ligne
+        if (end > from && chars[end - 1] == '\n')
+            end--;
+        if (end > from && chars[end - 1] == '\r')
+            end--;
+        return new TextView(chars, from, end - from);
+    }
+
+    public synchronized int documentCount() {
+        int count = 0;
+        for (int[] starts : lineStarts) {
+            if (starts != null)
+                count++;
+        }
+        return count;
+    }
+
+    //Caractères occupés par les documents présents, et par ceux remplacés ou retirés
+    public synchronized long usedChars() {
+        return usedChars - garbageChars;
+    }
+
+    public synchronized long garbageChars() {
+        return garbageChars;
+    }
+
+    //Recopie les documents présents dans de nouveaux blocs, et libère les places inoccupées
+    public synchronized void compact() {
+        List<char[]> old = new ArrayList<>(chunks);
+        int[] oldChunk = chunk.clone();
+        int[] oldStart = start.clone();
+        chunks.clear();
+        current = null;
+        usedChars = 0;
+        garbageChars = 0;
+        for (int id = 0; id < names.size(); id++) {
+            if (lineStarts.get(id) == null) {
+                ids.remove(names.get(id));
+                continue;
+            }
+            store(id, new TextView(old.get(oldChunk[id]), oldStart[id], length[id]));
+        }
+    }
+
+    //Copie le texte à la fin du bloc partagé, ou dans un nouveau bloc
+    private void store(int id, CharSequence text) {
+        int size = text.length();
+        if (size > CHUNK_SIZE) {
+            chunks.add(new char[size]);
+            chunk[id] = chunks.size() - 1;
+            start[id] = 0;
+        } else {
+            if (current == null || currentUsed + size > CHUNK_SIZE) {
+                current = new char[CHUNK_SIZE];
+                chunks.add(current);
+                currentIndex = chunks.size() - 1;
+                currentUsed = 0;
+            }
+            chunk[id] = currentIndex;
+            start[id] = currentUsed;
+            currentUsed += size;
+        }
+        copy(text, chunks.get(chunk[id]), start[id]);
+        length[id] = size;
+        usedChars += size;
+    }
+
+    private static void copy(CharSequence text, char[] target, int at) {
+        if (text instanceof String)
+            ((String) text).getChars(0, text.length(), target, at);
+        else if (text instanceof TextView)
+            ((TextView) text).getChars(target, at);
+        else {
+            for (int i = 0; i < text.length(); i++)
+                target[at + i] = text.charAt(i);
+        }
+    }
+
+    //Débuts des lignes, relatifs au début du document
+    private static int[] lineStarts(CharSequence text) {
+        int[] starts = new int[16];
+        int count = 0;
+        int size = text.length();
+        for (int i = 0; i < size; ) {
+            if (count == starts.length)
+                starts = Arrays.copyOf(starts, count * 2);
+            starts[count++] = i;
+            while (i < size && text.charAt(i) != '\n' && text.charAt(i) != '\r')
+                i++;
+            if (i + 1 < size && text.charAt(i) == '\r' && text.charAt(i + 1) == '\n')
+                i += 2;
+            else
+                i++;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    private void check(int id) {
+        if (id < 0 || id >= names.size() || lineStarts.get(id) == null)
+            throw new IllegalArgumentException("document absent : " + id);
+    }
+}
@@ -1,9 +1,13 @@
 package fr.bloomenetwork.fatestaynight.packager;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.CancellationException;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,6 +50,38 @@ class ErrorDetectPattern {
 
 public class TextProcess {
 
+    //Lignes de texte déjà vérifiées (fsn.lint.lineCache : nombre d'entrées, 0 pour désactiver).
+    //Créé à la première utilisation et non avec la classe : l'exécutable natif
+    //initialise TextProcess à la compilation, et y figerait la propriété.
+    private static volatile LineCache lineCache = null;
+
+    public static LineCache lineCache() {
+        LineCache cache = lineCache;
+        if (cache == null) {
+            synchronized (TextProcess.class) {
+                if (lineCache == null)
+                    lineCache = new LineCache(Integer.getInteger("fsn.lint.lineCache", 65536));
+                cache = lineCache;
+            }
+        }
+        return cache;
+    }
+
+    public static void setLineCache(LineCache cache) {
+        lineCache = cache;
+    }
+
+    //Résultats par page des vérifications précédentes, null pour tout revérifier
+    private static volatile PageCache pageCache = null;
+
+    public static PageCache pageCache() {
+        return pageCache;
+    }
+
+    public static void setPageCache(PageCache cache) {
+        pageCache = cache;
+    }
+
     static private final Pattern talkerRegex = Pattern.compile("[a-z\\d]+_[a-z\\d]+(_[0-9a-z]+)+");
     static private final Pattern leftBracketRegex = Pattern.compile("(?<!\\\\)\\[");
     static private final Pattern rightBracketRegex = Pattern.compile("(?<!\\\\)\\]");
@@ -123,11 +159,12 @@ public class TextProcess {
         }
     });
 
-    private static String fixNbsp(String line) {
+    //Les correcteurs de ligne sont visibles dans le paquet pour les benchmarks (src/jmh)
+    static String fixNbsp(String line) {
         return missingNbspRegex.matcher(line).replaceAll("\u00A0");
     }
 
-    private static String fixSuspensionPoints(String line, BiFunction<String, Integer, Void> report) {
+    static String fixSuspensionPoints(String line, BiFunction<String, Integer, Void> report) {
         // remplace "..." par "…"
         int index = 0;
         while (index < line.length() && (index = line.indexOf("..", index)) != -1) {
@@ -145,7 +182,7 @@ public class TextProcess {
         return line;
     }
 
-    private static String fixApostrophes(String line, BiFunction<String, Integer, Void> report) {
+    static String fixApostrophes(String line, BiFunction<String, Integer, Void> report) {
         Matcher straightApostropheMatcher = apostropheRegex.matcher(line);
         while (straightApostropheMatcher.find()) {
             report.apply("apostrophe droite (corrigé auto.)", straightApostropheMatcher.start());
@@ -155,7 +192,7 @@ public class TextProcess {
         return line;
     }
 
-    private static String fixAlinea(String line, int neededAlinea, BiFunction<String, Integer, Void> report) {
+    static String fixAlinea(String line, int neededAlinea, BiFunction<String, Integer, Void> report) {
         int alinea = 0;
 
         while(Character.isWhitespace(line.charAt(alinea)))
@@ -211,7 +248,7 @@ public class TextProcess {
         return inBlock;
     }
 
-    private static String fixQuotes(String line, boolean inQuote, BiFunction<String, Integer, Void> report) {
+    static String fixQuotes(String line, boolean inQuote, BiFunction<String, Integer, Void> report) {
         int straightQuoteIndex = line.indexOf('"');
         while(straightQuoteIndex >= 0) {
             boolean inBrackets = isInBlock(line, straightQuoteIndex, "[", "]");
@@ -267,7 +304,7 @@ public class TextProcess {
         return line;
     }
 
-    private static void reportErrors(String line, BiFunction<String, Integer, Void> report) {
+    static void reportErrors(String line, BiFunction<String, Integer, Void> report) {
         for(ErrorDetectPattern edp : errorPatterns) {
             Matcher matcher = edp.matcher(line);
             while (matcher.find()) {
@@ -276,6 +313,22 @@ public class TextProcess {
         }
     }
 
+    //Une vérification peut être annulée en interrompant son thread
+    //(LintServer, quand une version plus récente du fichier arrive)
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted())
+            throw new CancellationException("vérification annulée");
+    }
+
+    //Affiche le diagnostic dans le journal, au niveau SYNTAX
+    public static void printDiagnostic(Diagnostic diagnostic) {
+        Utils.print(diagnostic.getText(), Utils.SYNTAX);
+    }
+
+    public static String fixScenarioFile(String fileName, String text) throws Exception {
+        return fixScenarioFile(fileName, text, TextProcess::printDiagnostic);
+    }
+
     /**
      * Fixes syntax issues in the document.
      * rules taken into account : <ul>
@@ -284,52 +337,17 @@ public class TextProcess {
      *  <li> « » for quotations, and curved '' for quotations inside quotations </li>
      * </ul>
      * @param content - the input string to fix
+     * @param diagnostics - receives each error found
      * @return the fixed string
      * @throws Exception
      */
-    public static String fixScenarioFile(String fileName, String text) throws Exception {
-        StringBuilder builder = new StringBuilder();
-
-        boolean talking = false;
-        boolean talkingBeforeIf = false;
-        boolean talkingEndofIf = false;
-        boolean inQuote = false;
-        boolean inQuoteBeforeIf = false;
-        boolean inQuoteEndofIf = false;
-        boolean needAlinea = true;
-        boolean alineaBeforeIf = true;
-        boolean alineaEndofIf = true;
-        int branchState = 0; // 1 : if, 2: else
-        String waitTextReport = null;
-
-        final Iterator<String> lineIterator = text.lines().iterator();
-        final FinalContainer<String> _line = new FinalContainer<>("");
-        final FinalContainer<Integer> lineNumber = new FinalContainer<>(0);
-        final FinalContainer<Integer> pageNumber = new FinalContainer<>(0);
-        //Utils.print("Processing " + fileName, Utils.DEBUG);
-        final BiFunction<String, Integer, Void> report = (msg, column) -> {
-            String extract;
-            if (_line.get().length() <= 70)
-                extract = _line.get();
-            else {
-                int idxStart = Math.max(0, column-35);
-                int idxEnd = Math.min(_line.get().length(), idxStart + 70);
-                idxStart = idxEnd - 70;
-                extract = _line.get().substring(idxStart, idxEnd);
-                column = column-idxStart;
-            }
-            String message = String.format("%20s : #%4d @ page %3d : %s\n%s\n",
-                                            fileName, lineNumber.get()-1,
-                                            pageNumber.get(), msg, extract);
-            if (column >= 0)
-                message += " ".repeat(column)+"*";
-
-            Utils.print(message, Utils.SYNTAX);
-            return null;
-        };
+    public static String fixScenarioFile(String fileName, CharSequence content, Consumer<Diagnostic> diagnostics) throws Exception {
+        //pages et lignes sont des vues sur le texte (String ou TextArena), sans copie
+        TextView text = TextView.of(content);
+        StringBuilder builder = new StringBuilder(text.length() + 16);
 
         //verifie le BOM UTF-8, ajoute si nécessaire
-        int firstCharCode = text.codePointAt(0);
+        int firstCharCode = Character.codePointAt(text, 0);
         if (32 <= firstCharCode && firstCharCode < 128) // caractère imprimable
             builder.append("\ufeff"); // ajoute le BOM manquant
         else if (firstCharCode != 0xfeff) // erreur
@@ -338,9 +356,96 @@ public class TextProcess {
                                       fileName, firstCharCode));
         }
 
-        //traite chaque ligne
-        while(lineIterator.hasNext()) {
-            String line = lineIterator.next();
+        //pages de la vérification précédente, réutilisées si leur texte et l'état en entrée n'ont pas changé
+        final PageCache cache = pageCache;
+        Map<Long, PageCache.Page> previous = new HashMap<>();
+        List<PageCache.Page> previousPages = cache != null ? cache.get(fileName) : null;
+        if (previousPages != null) {
+            for (PageCache.Page page : previousPages)
+                previous.put(page.hash, page);
+        }
+
+        //traite chaque page, le texte avant la première page en formant une
+        List<PageCache.Page> pages = new ArrayList<>();
+        LintState state = new LintState();
+        int lineNumber = 0;
+        int pageNumber = 0;
+        String lastLine = "";
+        for (int start = 0, end; start < text.length(); start = end) {
+            end = nextPage(text, start);
+            long hash = PageCache.hash(text, start, end);
+            PageCache.Page page = previous.get(hash);
+            if (page != null && page.length == end - start && page.entry.equals(state)) {
+                for (PageCache.Report report : page.reports) {
+                    diagnostics.accept(diagnostic(fileName, lineNumber + report.line, page.pageNumber,
+                                                  report.column, report.message, report.extract));
+                }
+                cache.pageReused();
+            } else {
+                page = fixPage(fileName, text.subSequence(start, end), hash, lineNumber, state, diagnostics);
+                if (cache != null)
+                    cache.pageRelinted();
+            }
+            builder.append(page.fixed);
+            pages.add(page);
+            state = page.exit;
+            lineNumber += page.lineCount;
+            pageNumber = page.pageNumber;
+            lastLine = page.lastLine;
+        }
+        if (cache != null)
+            cache.put(fileName, pages);
+
+        if (state.talking) {
+            diagnostics.accept(diagnostic(fileName, lineNumber-1, pageNumber, lastLine,
+                                          "dialogue non terminé à la fin du fichier", -1));
+        }
+        if (state.inQuote) {
+            diagnostics.accept(diagnostic(fileName, lineNumber-1, pageNumber, lastLine,
+                                          "citation non terminée à la fin du fichier", -1));
+        }
+		return builder.toString();
+    }
+
+    //Début de la page suivante (ligne commençant par *page), ou fin du texte
+    private static int nextPage(TextView text, int start) {
+        int index = start;
+        while ((index = text.indexOf("*page", index+1)) != -1) {
+            char previous = text.charAt(index-1);
+            if (previous == '\n' || previous == '\r')
+                return index;
+        }
+        return text.length();
+    }
+
+    //Vérifie une page à partir de l'état en entrée ; les numéros de ligne
+    //des diagnostics sont relatifs au début de la page dans le résultat
+    private static PageCache.Page fixPage(String fileName, TextView text, long hash, int firstLine,
+                                          LintState entry, Consumer<Diagnostic> diagnostics) {
+        StringBuilder builder = new StringBuilder(text.length() + 16);
+        LintState state = entry.copy();
+        List<PageCache.Report> reports = new ArrayList<>();
+
+        //ligne courante : une vue, copiée seulement pour l'extrait d'un diagnostic
+        final FinalContainer<CharSequence> _line = new FinalContainer<>("");
+        final FinalContainer<Integer> lineNumber = new FinalContainer<>(0);
+        final FinalContainer<Integer> pageNumber = new FinalContainer<>(0);
+        //Utils.print("Processing " + fileName, Utils.DEBUG);
+        final BiFunction<String, Integer, Void> report = (msg, column) -> {
+            Diagnostic diagnostic = diagnostic(fileName, firstLine + lineNumber.get()-1, pageNumber.get(),
+                                               _line.get().toString(), msg, column);
+            reports.add(new PageCache.Report(lineNumber.get()-1, diagnostic.column, msg, diagnostic.extract));
+            diagnostics.accept(diagnostic);
+            return null;
+        };
+
+        //traite chaque ligne, découpée comme par String.lines()
+        for (int lineStart = 0, lineEnd; lineStart < text.length(); lineStart = nextLine(text, lineEnd)) {
+            checkInterrupted();
+            lineEnd = lineStart;
+            while (lineEnd < text.length() && text.charAt(lineEnd) != '\n' && text.charAt(lineEnd) != '\r')
+                lineEnd++;
+            TextView line = text.subSequence(lineStart, lineEnd);
             _line.set(line);
             lineNumber.set(lineNumber.get()+1);
             if (line.startsWith(";")) {
@@ -357,159 +462,250 @@ public class TextProcess {
                 pageNumber.set(Integer.parseInt(line, "*page".length(), pipeIndex, 10)+1);
             }
             else if (line.startsWith("@")) {
-                if (Character.isWhitespace(line.charAt(line.length()-1))) {
-                    report.apply("espace en fin de @cmd", -1);
-                }
-                if (line.startsWith("@r") || line.startsWith("@lr")) {
-                    needAlinea = true;
-                } else if (line.startsWith("@pg")) {
-                    needAlinea = true;
-                    waitTextReport = null;
-                    if (talking)
-                        report.apply("dialogue non terminé à la fin de la page", -1);
-                    if (inQuote)
-                        report.apply("citation non terminée à la fin de la page", -1);
-                    needAlinea = true;
-                } else if (line.startsWith("@say")) {
-                    //@say storage=[^\\W_]+_([^\\W_]+)_\\d+");
-                    int fileIndex = line.indexOf("storage=")+"storage=".length();
-                    if (fileIndex == 0)
-                        report.apply("@say sans \"storage=\"", -1);
-                    else {
-                        int fileEndIdx = line.indexOf(' ', fileIndex);
-                        if (fileEndIdx == -1)
-                            fileEndIdx = line.length();
-                        String file = line.substring(fileIndex, fileEndIdx);
-                        if (!talkerRegex.matcher(file).matches()) {
-                            report.apply("identifiant de @say non conforme", -1);
-                        }
-                    }
-                }
-                else if (line.startsWith("@if")) {
-                    talkingBeforeIf = talking;
-                    inQuoteBeforeIf = inQuote;
-                    alineaBeforeIf = needAlinea;
-                    branchState = 1;
-                } else if (line.startsWith("@else")) {
-                    talkingEndofIf = talking;
-                    inQuoteEndofIf = inQuote;
-                    alineaEndofIf = needAlinea;
-                    talking = talkingBeforeIf;
-                    inQuote = inQuoteBeforeIf;
-                    needAlinea = alineaBeforeIf;
-                    branchState = 2;
-                } else if (line.startsWith("@endif")) {
-                    if (branchState == 2) { // 'if', 'else'
-                        if (talking != talkingEndofIf)
-                            report.apply("problème de dialogue au niveau du if/else", -1);
-                        if (inQuote != inQuoteEndofIf)
-                            report.apply("problème de citation au niveau du if/else", -1);
-                        if (needAlinea != alineaEndofIf)
-                            waitTextReport = "problème de paragraphe au niveau du if/else précédent";
-                    } else if (branchState == 1) { // 'if' only
-                        if (talking != talkingBeforeIf)
-                            report.apply("problème de dialogue au niveau du if", -1);
-                        if (inQuote != inQuoteBeforeIf)
-                            report.apply("problème de citation au niveau du if", -1);
-                        if (needAlinea != alineaBeforeIf)
-                            waitTextReport = "problème de paragraphe au niveau du if précédent";
-                    }
-                }
-                // TODO peut-être rajouter des commandes à interpréter manuellement ?
+                fixCommandLine(line, state, report);
             } else if (!line.isBlank()) {
-                if (waitTextReport != null) {
-                    report.apply(waitTextReport, -1);
-                    waitTextReport = null;
-                }
-                // remplace les espaces par des espaces insécables au niveau des ponctuations et des « »
-                line = fixNbsp(line);
-                // remplace les apostrophes droites par des apostrophes courbes sauf si précédées ou suivies d'un espace
-                line = fixApostrophes(line, report);
-                // remplace "..." par "…"
-                line = fixSuspensionPoints(line, report);
+                builder.append(fixTextLineCached(line, state, _line, report)).append("\n");
+                continue;
+            }
+            line.appendTo(builder).append("\n");
+        }
+        return new PageCache.Page(hash, text.length(), entry, state, lineNumber.get(), pageNumber.get(),
+                                  _line.get().toString(), builder.toString(), reports);
+    }
 
-                _line.set(line);
+    //Début de la ligne suivante, après le retour à la ligne (\n, \r ou \r\n) en lineEnd
+    private static int nextLine(TextView text, int lineEnd) {
+        if (lineEnd + 1 < text.length() && text.charAt(lineEnd) == '\r' && text.charAt(lineEnd + 1) == '\n')
+            return lineEnd + 2;
+        return lineEnd + 1;
+    }
 
-                //corrige les alineas 2/3 -> 3/2, report tous les alineas anormaux
-                line = fixAlinea(line, needAlinea ? (talking || inQuote) ? 3 : 2 : 0, report);
+    //Diagnostic sur une ligne, avec un extrait d'au plus 70 caractères autour de la colonne
+    //Aussi utilisé par SymbolIndex pour les références entre scripts
+    static Diagnostic diagnostic(String fileName, int line, int page, String lineText, String msg, int column) {
+        String extract;
+        if (lineText.length() <= 70)
+            extract = lineText;
+        else {
+            int idxStart = Math.max(0, column-35);
+            int idxEnd = Math.min(lineText.length(), idxStart + 70);
+            idxStart = idxEnd - 70;
+            extract = lineText.substring(idxStart, idxEnd);
+            column = column-idxStart;
+        }
+        return diagnostic(fileName, line, page, column, msg, extract);
+    }
 
-                _line.set(line);
+    private static Diagnostic diagnostic(String fileName, int line, int page, int column, String msg, String extract) {
+        //équivaut à String.format("%20s : #%4d @ page %3d : %s\n%s\n", ...), en bien plus rapide
+        //(les diagnostics des pages inchangées sont reformatés à chaque vérification)
+        StringBuilder message = new StringBuilder(fileName.length() + msg.length() + extract.length() + 48);
+        pad(message, fileName, 20).append(" : #");
+        pad(message, Integer.toString(line), 4).append(" @ page ");
+        pad(message, Integer.toString(page), 3).append(" : ").append(msg).append('\n')
+                .append(extract).append('\n');
+        if (column >= 0)
+            message.append(" ".repeat(column)).append('*');
+        return new Diagnostic(fileName, line, page, column, msg, extract, message.toString());
+    }
 
-                line = fixQuotes(line, inQuote, report);
+    private static StringBuilder pad(StringBuilder sb, String value, int width) {
+        for (int i = value.length(); i < width; i++)
+            sb.append(' ');
+        return sb.append(value);
+    }
 
-                int startDialogIndex = line.indexOf('“');
-                int endDialogIndex = line.lastIndexOf('”');
-                if (startDialogIndex >= 0) {
-                    if (!line.substring(0, startDialogIndex).isBlank()) {
-                        report.apply("mauvais guillemets", startDialogIndex);
-                    }
-                    if (talking) {
-                        report.apply("dialogue précédent non terminé", startDialogIndex);
-                        if (endDialogIndex >= 0)
-                            talking = false;
-                    }
-                    else {
-                        if (endDialogIndex < startDialogIndex)
-                            talking = true;
-                        if (inQuote) {
-                            report.apply("dialogue dans une citation", startDialogIndex);
-                            inQuote = false;
-                        }
-                    }
-                } else if (endDialogIndex >= 0) {
-                    if (!talking)
-                        report.apply("\naucun dialogue à terminer", endDialogIndex);
-                    else {
-                        talking = false;
-                    }
+    //Traite une commande (@...) : seules @pg, @if, @else et @endif modifient l'état
+    private static void fixCommandLine(TextView line, LintState state, BiFunction<String, Integer, Void> report) {
+        if (Character.isWhitespace(line.charAt(line.length()-1))) {
+            report.apply("espace en fin de @cmd", -1);
+        }
+        if (line.startsWith("@r") || line.startsWith("@lr")) {
+            state.needAlinea = true;
+        } else if (line.startsWith("@pg")) {
+            state.needAlinea = true;
+            state.waitTextReport = null;
+            if (state.talking)
+                report.apply("dialogue non terminé à la fin de la page", -1);
+            if (state.inQuote)
+                report.apply("citation non terminée à la fin de la page", -1);
+            state.needAlinea = true;
+        } else if (line.startsWith("@say")) {
+            //@say storage=[^\\W_]+_([^\\W_]+)_\\d+");
+            int fileIndex = line.indexOf("storage=")+"storage=".length();
+            if (fileIndex == 0)
+                report.apply("@say sans \"storage=\"", -1);
+            else {
+                int fileEndIdx = line.indexOf(' ', fileIndex);
+                if (fileEndIdx == -1)
+                    fileEndIdx = line.length();
+                CharSequence file = line.subSequence(fileIndex, fileEndIdx);
+                if (!talkerRegex.matcher(file).matches()) {
+                    report.apply("identifiant de @say non conforme", -1);
                 }
+            }
+        }
+        else if (line.startsWith("@if")) {
+            state.talkingBeforeIf = state.talking;
+            state.inQuoteBeforeIf = state.inQuote;
+            state.alineaBeforeIf = state.needAlinea;
+            state.branchState = 1;
+        } else if (line.startsWith("@else")) {
+            state.talkingEndofIf = state.talking;
+            state.inQuoteEndofIf = state.inQuote;
+            state.alineaEndofIf = state.needAlinea;
+            state.talking = state.talkingBeforeIf;
+            state.inQuote = state.inQuoteBeforeIf;
+            state.needAlinea = state.alineaBeforeIf;
+            state.branchState = 2;
+        } else if (line.startsWith("@endif")) {
+            if (state.branchState == 2) { // 'if', 'else'
+                if (state.talking != state.talkingEndofIf)
+                    report.apply("problème de dialogue au niveau du if/else", -1);
+                if (state.inQuote != state.inQuoteEndofIf)
+                    report.apply("problème de citation au niveau du if/else", -1);
+                if (state.needAlinea != state.alineaEndofIf)
+                    state.waitTextReport = "problème de paragraphe au niveau du if/else précédent";
+            } else if (state.branchState == 1) { // 'if' only
+                if (state.talking != state.talkingBeforeIf)
+                    report.apply("problème de dialogue au niveau du if", -1);
+                if (state.inQuote != state.inQuoteBeforeIf)
+                    report.apply("problème de citation au niveau du if", -1);
+                if (state.needAlinea != state.alineaBeforeIf)
+                    state.waitTextReport = "problème de paragraphe au niveau du if précédent";
+            }
+        }
+        // TODO peut-être rajouter des commandes à interpréter manuellement ?
+    }
 
-                int leftQuotesCount = (int) leftFrenchQuoteRegex.matcher(line).results().count();
-                int rightQuotesCount = (int) rightFrenchQuoteRegex.matcher(line).results().count();
-                if (leftQuotesCount != rightQuotesCount) {
-                    if (Math.abs(leftQuotesCount - rightQuotesCount) > 1) {
-                        report.apply("guillemets « » non équilibrés", -1);
-                    } else if (leftQuotesCount == 0 && !inQuote)
-                        report.apply("aucune citation (« ») à terminer", -1);
-                    else if (rightQuotesCount == 0 && inQuote)
-                        report.apply("citation (« ») déjà en cours", -1);
-                    else {
-                        //other errors are easily spotted by reading.
-                        inQuote = !inQuote;
-                    }
-                }
-                else {
-                    int leftQuoteIndex = -1;
-                    int rightQuoteIndex = -1;
-                    do {
-                        leftQuoteIndex = line.indexOf('«', leftQuoteIndex+1);
-                        rightQuoteIndex = line.indexOf('»', rightQuoteIndex+1);
-
-                    } while(leftQuoteIndex >= 0 && rightQuoteIndex >= 0 && (inQuote == (rightQuoteIndex < leftQuoteIndex)));
-                    if (leftQuoteIndex >= 0 || rightQuoteIndex >= 0) {
-                        report.apply(String.format("guillemets « » dans le mauvais ordre. Début de la ligne %s citation", inQuote ? "dans une" : "hors"), -1);
-                    }
-                }
+    //fixTextLine, avec mise en cache : une ligne déjà vue dans le même état
+    //n'est pas retraitée, ses diagnostics sont rejoués à la position courante
+    //La ligne n'est copiée en String qu'en l'absence du cache ou en cas d'échec
+    private static String fixTextLineCached(TextView line, LintState state, FinalContainer<CharSequence> _line,
+                                            BiFunction<String, Integer, Void> report) {
+        final LineCache cache = lineCache();
+        if (!cache.isEnabled())
+            return fixTextLine(line.toString(), state, _line, report);
+
+        int entryBits = state.textLineBits();
+        String waitTextReport = state.waitTextReport;
+        LineCache.Entry entry = cache.get(new LineCache.Key(line, entryBits, waitTextReport));
+        if (entry != null) {
+            for (LineCache.Report cached : entry.reports) {
+                _line.set(cached.line);
+                report.apply(cached.message, cached.column);
+            }
+            //ligne citée par les diagnostics de fin de page et de fichier
+            _line.set(entry.lastLine);
+            state.talking = (entry.exitState & 1) != 0;
+            state.inQuote = (entry.exitState & 2) != 0;
+            state.needAlinea = (entry.exitState & 4) != 0;
+            state.waitTextReport = null;
+            return entry.fixedLine;
+        }
+
+        String text = line.toString();
+        List<LineCache.Report> reports = new ArrayList<>();
+        String fixed = fixTextLine(text, state, _line, (msg, column) -> {
+            reports.add(new LineCache.Report(_line.get().toString(), msg, column));
+            return report.apply(msg, column);
+        });
+        cache.put(new LineCache.Key(text, entryBits, waitTextReport),
+                  new LineCache.Entry(fixed, _line.get().toString(), state.textLineBits(), reports));
+        return fixed;
+    }
+
+    //Traite une ligne de texte : corrections automatiques et suivi des dialogues et citations
+    private static String fixTextLine(String line, LintState state, FinalContainer<CharSequence> _line,
+                                      BiFunction<String, Integer, Void> report) {
+        if (state.waitTextReport != null) {
+            report.apply(state.waitTextReport, -1);
+            state.waitTextReport = null;
+        }
+        // remplace les espaces par des espaces insécables au niveau des ponctuations et des « »
+        line = fixNbsp(line);
+        // remplace les apostrophes droites par des apostrophes courbes sauf si précédées ou suivies d'un espace
+        line = fixApostrophes(line, report);
+        // remplace "..." par "…"
+        line = fixSuspensionPoints(line, report);
+
+        _line.set(line);
+
+        //corrige les alineas 2/3 -> 3/2, report tous les alineas anormaux
+        line = fixAlinea(line, state.needAlinea ? (state.talking || state.inQuote) ? 3 : 2 : 0, report);
+
+        _line.set(line);
 
-                reportErrors(line, report);
+        line = fixQuotes(line, state.inQuote, report);
 
-                if (line.endsWith("r]"))
-                    needAlinea = true;
-                else
-                    needAlinea = false;
+        int startDialogIndex = line.indexOf('“');
+        int endDialogIndex = line.lastIndexOf('”');
+        if (startDialogIndex >= 0) {
+            if (!line.substring(0, startDialogIndex).isBlank()) {
+                report.apply("mauvais guillemets", startDialogIndex);
+            }
+            if (state.talking) {
+                report.apply("dialogue précédent non terminé", startDialogIndex);
+                if (endDialogIndex >= 0)
+                    state.talking = false;
+            }
+            else {
+                if (endDialogIndex < startDialogIndex)
+                    state.talking = true;
+                if (state.inQuote) {
+                    report.apply("dialogue dans une citation", startDialogIndex);
+                    state.inQuote = false;
+                }
+            }
+        } else if (endDialogIndex >= 0) {
+            if (!state.talking)
+                report.apply("\naucun dialogue à terminer", endDialogIndex);
+            else {
+                state.talking = false;
             }
-            builder.append(line).append("\n");
         }
-        if (talking) {
-            report.apply("dialogue non terminé à la fin du fichier", -1);
+
+        int leftQuotesCount = (int) leftFrenchQuoteRegex.matcher(line).results().count();
+        int rightQuotesCount = (int) rightFrenchQuoteRegex.matcher(line).results().count();
+        if (leftQuotesCount != rightQuotesCount) {
+            if (Math.abs(leftQuotesCount - rightQuotesCount) > 1) {
+                report.apply("guillemets « » non équilibrés", -1);
+            } else if (leftQuotesCount == 0 && !state.inQuote)
+                report.apply("aucune citation (« ») à terminer", -1);
+            else if (rightQuotesCount == 0 && state.inQuote)
+                report.apply("citation (« ») déjà en cours", -1);
+            else {
+                //other errors are easily spotted by reading.
+                state.inQuote = !state.inQuote;
+            }
         }
-        if (inQuote) {
-            report.apply("citation non terminée à la fin du fichier", -1);
+        else {
+            int leftQuoteIndex = -1;
+            int rightQuoteIndex = -1;
+            do {
+                leftQuoteIndex = line.indexOf('«', leftQuoteIndex+1);
+                rightQuoteIndex = line.indexOf('»', rightQuoteIndex+1);
+
+            } while(leftQuoteIndex >= 0 && rightQuoteIndex >= 0 && (state.inQuote == (rightQuoteIndex < leftQuoteIndex)));
+            if (leftQuoteIndex >= 0 || rightQuoteIndex >= 0) {
+                report.apply(String.format("guillemets « » dans le mauvais ordre. Début de la ligne %s citation", state.inQuote ? "dans une" : "hors"), -1);
+            }
         }
-		return builder.toString();
+
+        reportErrors(line, report);
+
+        if (line.endsWith("r]"))
+            state.needAlinea = true;
+        else
+            state.needAlinea = false;
+        return line;
     }
 
     public static String fixTranslationFile(String fileName, String text) {
+        return fixTranslationFile(fileName, text, TextProcess::printDiagnostic);
+    }
+
+    public static String fixTranslationFile(String fileName, String text, Consumer<Diagnostic> diagnostics) {
 
         StringBuilder builder = new StringBuilder();
         String location = null;
@@ -539,11 +735,13 @@ public class TextProcess {
             if (column >= 0)
                 message += " ".repeat(column)+"*";
 
-            Utils.print(message, Utils.SYNTAX);
+            diagnostics.accept(new Diagnostic(fileName, lineNumber.get(), -1,
+                                              column, msg, extract, message));
             return null;
         };
         int msgstrLineNumber = -1;
         while (lineIterator.hasNext()) {
+            checkInterrupted();
             String line = lineIterator.next();
             _line.set(line);
             lineNumber.set(lineNumber.get()+1);
@@ -0,0 +1,192 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.nio.CharBuffer;
+
+//Portion de texte sans copie : une ligne ou une page d'un document, vue dans
+//le String d'origine, dans un bloc de TextArena ou dans un CorpusSnapshot
+//projeté en mémoire. Le texte vu ne doit pas
+//changer ; toString() ne copie les caractères que lorsqu'un String est
+//vraiment nécessaire (ligne à corriger, extrait d'un diagnostic).
+//Comme pour tout CharSequence, equals et hashCode ne comparent pas le
+//contenu : utiliser contentEquals et contentHash.
+public final class TextView implements CharSequence {
+
+    //Un seul des trois est renseigné
+    private final String string;
+    private final char[] chars;
+    private final CharBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    private TextView(String string, char[] chars, CharBuffer buffer, int offset, int length) {
+        this.string = string;
+        this.chars = chars;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    TextView(String string, int offset, int length) {
+        this(string, null, null, offset, length);
+    }
+
+    TextView(char[] chars, int offset, int length) {
+        this(null, chars, null, offset, length);
+    }
+
+    //buffer est lu par position absolue : sa position doit rester à 0
+    TextView(CharBuffer buffer, int offset, int length) {
+        this(null, null, buffer, offset, length);
+    }
+
+    //Vue sur tout le texte, sans copie pour un String ou une autre vue
+    public static TextView of(CharSequence text) {
+        if (text instanceof TextView)
+            return (TextView) text;
+        String string = text.toString();
+        return new TextView(string, 0, string.length());
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new StringIndexOutOfBoundsException(index);
+        return at(index);
+    }
+
+    private char at(int index) {
+        if (chars != null)
+            return chars[offset + index];
+        return string != null ? string.charAt(offset + index) : buffer.get(offset + index);
+    }
+
+    @Override
+    public TextView subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end)
+            throw new StringIndexOutOfBoundsException("début " + start + ", fin " + end + ", longueur " + length);
+        return new TextView(string, chars, buffer, offset + start, end - start);
+    }
+
+    public TextView subSequence(int start) {
+        return subSequence(start, length);
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public boolean isBlank() {
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    public boolean startsWith(String prefix) {
+        return startsWith(prefix, 0);
+    }
+
+    public boolean startsWith(String prefix, int from) {
+        if (from < 0 || from + prefix.length() > length)
+            return false;
+        if (string != null)
+            return string.startsWith(prefix, offset + from);
+        for (int i = 0; i < prefix.length(); i++) {
+            if (at(from + i) != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    public boolean endsWith(String suffix) {
+        return startsWith(suffix, length - suffix.length());
+    }
+
+    public int indexOf(char c) {
+        return indexOf(c, 0);
+    }
+
+    //Recherches bornées à la vue (String.indexOf irait jusqu'au bout du document)
+    public int indexOf(char c, int from) {
+        for (int i = Math.max(from, 0); i < length; i++) {
+            if (at(i) == c)
+                return i;
+        }
+        return -1;
+    }
+
+    public int indexOf(String s) {
+        return indexOf(s, 0);
+    }
+
+    public int indexOf(String s, int from) {
+        if (s.isEmpty())
+            return Math.min(Math.max(from, 0), length);
+        char first = s.charAt(0);
+        for (int i = Math.max(from, 0); i + s.length() <= length; i++) {
+            if (at(i) == first && startsWith(s, i))
+                return i;
+        }
+        return -1;
+    }
+
+    public int lastIndexOf(char c) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (charAt(i) == c)
+                return i;
+        }
+        return -1;
+    }
+
+    //Ajoute le texte vu, sans String intermédiaire
+    public StringBuilder appendTo(StringBuilder sb) {
+        if (chars != null)
+            return sb.append(chars, offset, length);
+        return sb.append(string != null ? string : buffer, offset, offset + length);
+    }
+
+    //Copie le texte vu dans target à partir de at
+    public void getChars(char[] target, int at) {
+        if (chars != null)
+            System.arraycopy(chars, offset, target, at, length);
+        else if (string != null)
+            string.getChars(offset, offset + length, target, at);
+        else
+            buffer.duplicate().position(offset).get(target, at, length);
+    }
+
+    public boolean contentEquals(CharSequence other) {
+        if (other.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (charAt(i) != other.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    //Même valeur que String.hashCode() pour le même texte
+    public int contentHash() {
+        int h = 0;
+        for (int i = 0; i < length; i++)
+            h = 31 * h + charAt(i);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        if (string != null)
+            return string.substring(offset, offset + length);
+        if (chars != null)
+            return new String(chars, offset, length);
+        char[] copy = new char[length];
+        getChars(copy, 0);
+        return new String(copy);
+    }
+}
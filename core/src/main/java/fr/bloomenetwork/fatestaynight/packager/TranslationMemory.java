@@ -0,0 +1,339 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+//Mémoire de traduction des fichiers .po : un même msgid (et msgctxt)
+//traduit de deux façons dans des fichiers différents ne se voit pas
+//fichier par fichier.
+//
+//Pour tenir des centaines de milliers d'entrées en mémoire bornée, aucun
+//texte n'est gardé : chaque entrée est réduite à l'empreinte 64 bits de
+//msgctxt + msgid, celle de msgstr, le document et la ligne, dans des
+//tableaux de primitifs (24 octets par entrée). check() trie les entrées une
+//fois et les parcourt en un passage ; les extraits des diagnostics et le
+//compendium sont relus dans les fichiers .po, un fichier à la fois.
+//Une collision d'empreintes (probabilité de l'ordre de 10^-8 pour un
+//million d'entrées) ferait au pire signaler une fausse incohérence.
+public class TranslationMemory {
+
+    //Entrée d'un fichier .po : lignes [first, last], ligne du msgstr
+    private interface EntryConsumer {
+        void accept(int first, int last, int msgstrLine, String msgctxt, String msgid, String msgstr);
+    }
+
+    //Documents : nom affiché et fichier .po (null s'il n'est pas sur disque)
+    private final List<String> documents = new ArrayList<>();
+    private final List<Path> sources = new ArrayList<>();
+    private final Set<Path> sourceSet = new HashSet<>();
+
+    //Entrées : empreintes de la clé et de la traduction, document, ligne du msgstr
+    private int count = 0;
+    private long[] keys = new long[4096];
+    private long[] variants = new long[4096];
+    private int[] document = new int[4096];
+    private int[] line = new int[4096];
+
+    //Résultats du dernier check()
+    private int distinct = 0;
+    private int inconsistent = 0;
+    //Première occurrence de chaque clé : (document + 1) << 32 | ligne
+    private LongHashSet canonical = null;
+
+    //Ajoute les entrées traduites d'un fichier .po ; source est le fichier
+    //sur disque, relu pour les extraits et le compendium (null si absent)
+    public void addTranslation(String docName, Path source, String text) {
+        List<long[]> entries = new ArrayList<>();
+        parse(text, (first, last, msgstrLine, msgctxt, msgid, msgstr) -> {
+            //l'en-tête (msgid vide) et les entrées non traduites ne comptent pas
+            if (msgid.isEmpty() || msgstr.isEmpty())
+                return;
+            entries.add(new long[] {hash(msgctxt == null ? msgid : msgctxt + '\u0004' + msgid), hash(msgstr), msgstrLine});
+        });
+        synchronized (this) {
+            int doc = documents.size();
+            documents.add(docName);
+            Path normalized = source == null ? null : source.toAbsolutePath().normalize();
+            sources.add(normalized);
+            if (normalized != null)
+                sourceSet.add(normalized);
+            for (long[] entry : entries) {
+                if (count == keys.length)
+                    grow();
+                keys[count] = entry[0];
+                variants[count] = entry[1];
+                document[count] = doc;
+                line[count] = (int) entry[2];
+                count++;
+            }
+            canonical = null;
+        }
+    }
+
+    //Ajoute les fichiers .po du dossier qui ne l'ont pas encore été (par
+    //exemple ceux qui n'ont pas été retéléchargés lors d'une reprise)
+    public int addFolder(Path folder) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) walk::iterator) {
+                if (path.getFileName().toString().endsWith(".po"))
+                    files.add(path.toAbsolutePath().normalize());
+            }
+        }
+        files.sort(null);
+        int added = 0;
+        for (Path file : files) {
+            synchronized (this) {
+                if (sourceSet.contains(file))
+                    continue;
+            }
+            addTranslation(file.getFileName().toString(), file,
+                    new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            added++;
+        }
+        return added;
+    }
+
+    public synchronized int entryCount() {
+        return count;
+    }
+
+    //Nombre de msgid différents, et de ceux traduits de plusieurs façons (après check())
+    public synchronized int distinctCount() {
+        return distinct;
+    }
+
+    public synchronized int inconsistentCount() {
+        return inconsistent;
+    }
+
+    //Signale chaque traduction différente de la première rencontrée (par nom
+    //de document puis par ligne) pour le même msgid. Retourne le nombre de
+    //diagnostics, donnés triés par document puis par ligne.
+    public int check(Consumer<Diagnostic> diagnostics) throws IOException {
+        //occurrence signalée : document, ligne, et ceux de la première occurrence
+        List<int[]> reports = new ArrayList<>();
+        List<String> names;
+        List<Path> files;
+        synchronized (this) {
+            Integer[] order = sortedOrder();
+            canonical = new LongHashSet();
+            distinct = 0;
+            inconsistent = 0;
+            int first = -1;
+            boolean counted = false;
+            for (int k = 0; k < count; k++) {
+                int i = order[k];
+                if (first == -1 || keys[i] != keys[first]) {
+                    first = i;
+                    counted = false;
+                    distinct++;
+                    canonical.add(location(i));
+                } else if (variants[i] != variants[first]) {
+                    if (!counted)
+                        inconsistent++;
+                    counted = true;
+                    reports.add(new int[] {document[i], line[i], document[first], line[first]});
+                }
+            }
+            names = new ArrayList<>(documents);
+            files = new ArrayList<>(sources);
+        }
+
+        //extraits : lignes des msgstr signalés, un fichier relu à la fois
+        Map<Integer, List<int[]>> byDocument = new HashMap<>();
+        for (int[] report : reports)
+            byDocument.computeIfAbsent(report[0], d -> new ArrayList<>()).add(report);
+        List<Diagnostic> results = new ArrayList<>();
+        for (Map.Entry<Integer, List<int[]>> entry : byDocument.entrySet()) {
+            String[] lines = readLines(files.get(entry.getKey()));
+            for (int[] report : entry.getValue()) {
+                String fileName = names.get(report[0]);
+                String lineText = report[1] - 1 < lines.length ? lines[report[1] - 1] : "";
+                String message = "traduction différente de celle de " + names.get(report[2]) + ":" + report[3];
+                results.add(new Diagnostic(fileName, report[1], -1, -1, message, lineText,
+                        String.format("%s:%d: %s\n%s\n", fileName, report[1], message, lineText)));
+            }
+        }
+        results.sort(Comparator.comparing((Diagnostic d) -> d.fileName).thenComparingInt(d -> d.line));
+        results.forEach(diagnostics);
+        return results.size();
+    }
+
+    //Écrit un compendium dédoublonné : chaque msgid une seule fois, avec sa
+    //première traduction, les entrées étant recopiées telles quelles depuis
+    //les fichiers .po (ceux qui ne sont pas sur disque sont omis).
+    //Retourne le nombre d'entrées écrites.
+    public int writeCompendium(Path output) throws IOException {
+        List<String> names;
+        List<Path> files;
+        synchronized (this) {
+            if (canonical == null)
+                check(d -> {});
+            names = new ArrayList<>(documents);
+            files = new ArrayList<>(sources);
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int doc = 0; doc < names.size(); doc++)
+            order.add(doc);
+        order.sort(Comparator.comparing((Integer doc) -> names.get(doc)).thenComparingInt(doc -> doc));
+
+        Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+        if (output.getParent() != null)
+            Files.createDirectories(output.getParent());
+        int written = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmp), StandardCharsets.UTF_8))) {
+            writer.write("msgid \"\"\nmsgstr \"\"\n\"Content-Type: text/plain; charset=UTF-8\\n\"\n");
+            for (int doc : order) {
+                if (files.get(doc) == null)
+                    continue;
+                String text = new String(Files.readAllBytes(files.get(doc)), StandardCharsets.UTF_8);
+                String[] lines = text.split("\r?\n", -1);
+                final int current = doc;
+                final int[] entries = {0};
+                parse(text, (first, last, msgstrLine, msgctxt, msgid, msgstr) -> {
+                    if (msgid.isEmpty() || msgstr.isEmpty() || !isCanonical(current, msgstrLine))
+                        return;
+                    try {
+                        writer.write("\n# " + names.get(current) + "\n");
+                        for (int l = first; l <= last; l++)
+                            writer.write(lines[l - 1] + "\n");
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    entries[0]++;
+                });
+                written += entries[0];
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    private synchronized boolean isCanonical(int doc, int msgstrLine) {
+        return canonical.contains(((long) (doc + 1) << 32) | msgstrLine);
+    }
+
+    private long location(int i) {
+        return ((long) (document[i] + 1) << 32) | line[i];
+    }
+
+    //Ordre des entrées par clé, puis nom de document et ligne
+    private Integer[] sortedOrder() {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> keys[i])
+                .thenComparing(i -> documents.get(document[i]))
+                .thenComparingInt(i -> document[i])
+                .thenComparingInt(i -> line[i]));
+        return order;
+    }
+
+    private static String[] readLines(Path source) throws IOException {
+        if (source == null || !Files.exists(source))
+            return new String[0];
+        return new String(Files.readAllBytes(source), StandardCharsets.UTF_8).split("\r?\n", -1);
+    }
+
+    //Découpe un fichier .po en entrées : commentaires (#), msgctxt, msgid,
+    //msgstr et lignes de texte qui les prolongent. Les lignes sont numérotées
+    //à partir de 1, comme dans les diagnostics de fixTranslationFile.
+    private static void parse(String text, EntryConsumer consumer) {
+        int lineNumber = 0;
+        int first = -1;
+        int last = -1;
+        int msgstrLine = -1;
+        //0 : aucun, 1 : msgctxt, 2 : msgid, 3 : msgstr, 4 : pluriel (ignoré)
+        int field = 0;
+        StringBuilder[] values = new StringBuilder[3];
+        for (int start = 0; start < text.length(); ) {
+            int end = text.indexOf('\n', start);
+            if (end == -1)
+                end = text.length();
+            String current = text.substring(start, end > start && text.charAt(end - 1) == '\r' ? end - 1 : end);
+            lineNumber++;
+            start = end + 1;
+
+            boolean blank = current.trim().isEmpty();
+            boolean comment = current.startsWith("#");
+            //une entrée se termine par une ligne vide, ou au commentaire,
+            //msgctxt ou msgid qui suit son msgid
+            if (blank && field == 3
+                    || field >= 2 && (comment || current.startsWith("msgctxt") || current.startsWith("msgid "))) {
+                if (field == 3)
+                    emit(consumer, first, last, msgstrLine, values);
+                first = -1;
+                field = 0;
+                values = new StringBuilder[3];
+            }
+            if (blank)
+                continue;
+            if (first == -1)
+                first = lineNumber;
+            last = lineNumber;
+            if (comment)
+                continue;
+
+            if (current.startsWith("msgctxt"))
+                field = 1;
+            else if (current.startsWith("msgid_plural") || current.startsWith("msgstr[")) {
+                //pluriels non gérés, comme dans fixTranslationFile
+                field = 4;
+                continue;
+            } else if (current.startsWith("msgid"))
+                field = 2;
+            else if (current.startsWith("msgstr")) {
+                field = 3;
+                msgstrLine = lineNumber;
+            } else if (!current.trim().startsWith("\"") || field == 0 || field == 4)
+                continue;
+            int open = current.indexOf('"');
+            int close = current.lastIndexOf('"');
+            if (open != -1 && close > open) {
+                if (values[field - 1] == null)
+                    values[field - 1] = new StringBuilder();
+                values[field - 1].append(current, open + 1, close);
+            }
+        }
+        if (field == 3)
+            emit(consumer, first, last, msgstrLine, values);
+    }
+
+    private static void emit(EntryConsumer consumer, int first, int last, int msgstrLine, StringBuilder[] values) {
+        consumer.accept(first, last, msgstrLine, values[0] == null ? null : values[0].toString(),
+                values[1] == null ? "" : values[1].toString(), values[2] == null ? "" : values[2].toString());
+    }
+
+    //Empreinte FNV-1a sur 64 bits
+    private static long hash(String text) {
+        return PageCache.hash(text, 0, text.length());
+    }
+
+    private void grow() {
+        int length = keys.length * 2;
+        keys = Arrays.copyOf(keys, length);
+        variants = Arrays.copyOf(variants, length);
+        document = Arrays.copyOf(document, length);
+        line = Arrays.copyOf(line, length);
+    }
+}
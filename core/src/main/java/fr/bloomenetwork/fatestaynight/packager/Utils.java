@@ -7,8 +7,11 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -21,6 +24,7 @@ public class Utils {
 	public static final int DEBUG = 1;
 	public static final int ERROR = 2;
 	public static final int SYNTAX = 3;
+	public static final String[] LEVEL_NAMES = {"INFO", "DEBUG", "ERROR", "SYNTAX"};
 
 	private static boolean[] level_printed = new boolean[]{true, true, true, false};
 	private static boolean[] level_logged = new boolean[]{false, false, true, true};
@@ -54,7 +58,9 @@ public class Utils {
 		}
 
 	}
-	public static void print(String message, int level) {
+	//Appelé en même temps par les threads du scheduler, les requêtes Drive et
+	//le ProgressBus : un message à la fois, dans le journal comme à l'écran
+	public static synchronized void print(String message, int level) {
 		if(level_logged[level] || level_printed[level]) {
 			String output;
 			switch(level) {
@@ -100,7 +106,7 @@ public class Utils {
 		return level_logged[level];
 	}
 
-	public static void saveLog(String filename) {
+	public static synchronized void saveLog(String filename) {
 		try {
 			java.nio.file.Files.write(Paths.get(filename), log.toString().getBytes(StandardCharsets.UTF_8));
 		} catch (IOException e) {
@@ -109,20 +115,55 @@ public class Utils {
 	}
 
 	public static void processKs(String fileName, String docName, String content) throws IOException {
+		writeFile(fileName, lintContent(fileName, docName, content));
+	}
+
+	public static String lintContent(String fileName, String docName, String content) {
+		return lintContent(fileName, docName, content, TextProcess::printDiagnostic);
+	}
+
+	//Applique les corrections adaptées au type de fichier (.ks ou .po) ;
+	//un script est vérifié sans copie (texte d'un CorpusSnapshot par exemple)
+	public static String lintContent(String fileName, String docName, CharSequence content,
+			Consumer<Diagnostic> diagnostics) {
 		try {
 			if (fileName.endsWith(".ks"))
-				content = TextProcess.fixScenarioFile(docName, content);
+				return TextProcess.fixScenarioFile(docName, content, diagnostics);
 			else if (fileName.endsWith(".po"))
-				content = TextProcess.fixTranslationFile(docName, content);
+				return TextProcess.fixTranslationFile(docName, content.toString(), diagnostics);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		return content.toString();
+	}
+
+	//Écrit le fichier en UTF-8 et retourne le nombre d'octets écrits
+	public static long writeFile(String fileName, String content) throws IOException {
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		writeFile(fileName, bytes);
+		return bytes.length;
+	}
+
+	public static void writeFile(String fileName, byte[] bytes) throws IOException {
 		java.nio.file.Path path = Paths.get(fileName);
 		java.nio.file.Files.createDirectories(path.getParent());
-		java.nio.file.Files.writeString(path, content, StandardCharsets.UTF_8,
+		java.nio.file.Files.write(path, bytes,
 				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
 				StandardOpenOption.TRUNCATE_EXISTING);
 	}
+
+	//Empreinte SHA-256, en hexadécimal
+	public static String sha256(byte[] bytes) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest)
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // SHA-256 est toujours disponible
+		}
+	}
 	
 
     /**
@@ -143,6 +184,11 @@ public class Utils {
     }
 
 	public static String docxToTxt(InputStream is) throws IOException {
+		return docxToTxt(extractDocumentXml(is));
+	}
+
+	//Extrait le contenu XML (word/document.xml) d'un fichier docx
+	public static String extractDocumentXml(InputStream is) throws IOException {
 		ZipInputStream zis = new ZipInputStream(is);
 		ByteArrayOutputStream fos = new ByteArrayOutputStream();
 		ZipEntry ze = null;
@@ -161,6 +207,6 @@ public class Utils {
 		}
 		fos.close();
 
-		return docxToTxt(xmlContent);
+		return xmlContent;
 	}
 }
@@ -0,0 +1,190 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+//Index des voix (@say storage=…) de tout le corpus : une voix utilisée dans
+//deux scènes, un trou dans la numérotation ou une voix absente de l'archive
+//ne se voient pas fichier par fichier.
+//
+//"sab_01_02_015" se décompose en un préfixe ("sab_01_02", personnage et
+//scène, numéroté une fois pour toutes avec la largeur du numéro) et un
+//numéro (15) : chaque voix tient dans un long, l'archive dans un LongHashSet
+//et les occurrences dans des tableaux d'int. Les voix sont ajoutées par
+//SymbolIndex en même temps que les références, et check() les vérifie
+//toutes en un passage, après un tri par préfixe et par numéro.
+public class VoiceIndex {
+
+    //Préfixes ("sab_01_02" et largeur du numéro), et documents
+    private final Map<String, Integer> prefixIds = new HashMap<>();
+    private final List<String> prefixes = new ArrayList<>();
+    private final List<Integer> widths = new ArrayList<>();
+    private final Map<String, Integer> documentIds = new HashMap<>();
+    private final List<String> documents = new ArrayList<>();
+
+    //Occurrences : préfixe, numéro (-1 si l'identifiant ne finit pas par un
+    //nombre, le préfixe étant alors l'identifiant entier), document, ligne, page
+    private int count = 0;
+    private int[] prefix = new int[1024];
+    private int[] number = new int[1024];
+    private int[] document = new int[1024];
+    private int[] line = new int[1024];
+    private int[] page = new int[1024];
+    private String[] text = new String[1024];
+
+    //Voix de l'archive, null si elle n'est pas vérifiée
+    private LongHashSet archive = null;
+    private int archiveSize = 0;
+
+    //Ajoute une voix lue dans un script (ligne et page comme dans les diagnostics)
+    public synchronized void add(String docName, String voiceId, int lineNumber, int pageNumber, String lineText) {
+        long key = key(voiceId);
+        if (count == prefix.length)
+            grow();
+        prefix[count] = (int) (key >>> 32) - 1;
+        number[count] = (int) key;
+        document[count] = documentId(docName);
+        line[count] = lineNumber;
+        page[count] = pageNumber;
+        text[count] = lineText;
+        count++;
+    }
+
+    public synchronized int voiceCount() {
+        return count;
+    }
+
+    //Liste des voix existantes : dossier de l'archive (noms des fichiers, sans
+    //extension, dans tous les sous-dossiers) ou fichier texte (un nom par ligne)
+    public void loadArchive(Path path) throws IOException {
+        List<String> names = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.filter(Files::isRegularFile).forEach(file -> names.add(file.getFileName().toString()));
+            }
+        } else {
+            for (String name : new String(Files.readAllBytes(path), StandardCharsets.UTF_8).split("\\r?\\n"))
+                names.add(name.trim());
+        }
+        synchronized (this) {
+            archive = new LongHashSet();
+            archiveSize = 0;
+            for (String name : names) {
+                int dot = name.lastIndexOf('.');
+                String id = (dot > 0 ? name.substring(0, dot) : name).toLowerCase();
+                if (!id.isEmpty() && archive.add(key(id)))
+                    archiveSize++;
+            }
+        }
+    }
+
+    public synchronized int archiveSize() {
+        return archiveSize;
+    }
+
+    //Vérifie toutes les voix et retourne le nombre de diagnostics, donnés
+    //triés par document puis par ligne
+    public int check(Consumer<Diagnostic> diagnostics) {
+        List<Diagnostic> results = new ArrayList<>();
+        synchronized (this) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++)
+                order[i] = i;
+            //à numéro égal, la première occurrence est celle du premier document dans l'ordre alphabétique
+            Arrays.sort(order, Comparator.comparingInt((Integer i) -> prefix[i])
+                    .thenComparingInt(i -> number[i])
+                    .thenComparing(i -> documents.get(document[i]))
+                    .thenComparingInt(i -> line[i]));
+            int first = -1;
+            for (int k = 0; k < count; k++) {
+                int i = order[k];
+                int previous = k > 0 ? order[k - 1] : -1;
+                boolean samePrefix = previous != -1 && prefix[previous] == prefix[i];
+                if (samePrefix && number[previous] == number[i]) {
+                    results.add(diagnostic(i, "voix déjà utilisée : " + voiceId(i) + " ("
+                            + documents.get(document[first]) + ", ligne " + line[first] + ")"));
+                    continue;
+                }
+                first = i;
+                if (samePrefix && number[previous] >= 0 && number[i] > number[previous] + 1) {
+                    String missing = voiceId(prefix[i], number[previous] + 1);
+                    if (number[i] > number[previous] + 2)
+                        missing += " à " + voiceId(prefix[i], number[i] - 1);
+                    results.add(diagnostic(i, "numérotation des voix : " + missing + " manquante(s)"));
+                }
+                if (archive != null && !archive.contains(((long) (prefix[i] + 1) << 32) | (number[i] & 0xFFFFFFFFL)))
+                    results.add(diagnostic(i, "voix absente de l'archive : " + voiceId(i)));
+            }
+        }
+        results.sort(Comparator.comparing((Diagnostic d) -> d.fileName).thenComparingInt(d -> d.line));
+        results.forEach(diagnostics);
+        return results.size();
+    }
+
+    private Diagnostic diagnostic(int i, String message) {
+        return TextProcess.diagnostic(documents.get(document[i]), line[i], page[i], text[i], message, -1);
+    }
+
+    private String voiceId(int i) {
+        return number[i] < 0 ? prefixes.get(prefix[i]) : voiceId(prefix[i], number[i]);
+    }
+
+    private String voiceId(int prefixId, int value) {
+        String digits = Integer.toString(value);
+        StringBuilder sb = new StringBuilder(prefixes.get(prefixId)).append('_');
+        for (int i = digits.length(); i < widths.get(prefixId); i++)
+            sb.append('0');
+        return sb.append(digits).toString();
+    }
+
+    //(préfixe + 1) << 32 | numéro ; le préfixe est créé au besoin
+    private synchronized long key(String voiceId) {
+        int underscore = voiceId.lastIndexOf('_');
+        String digits = voiceId.substring(underscore + 1);
+        boolean numbered = underscore > 0 && !digits.isEmpty() && digits.length() <= 9;
+        for (int i = 0; numbered && i < digits.length(); i++)
+            numbered = Character.isDigit(digits.charAt(i));
+        String name = numbered ? voiceId.substring(0, underscore) : voiceId;
+        int width = numbered ? digits.length() : 0;
+        String internKey = name + '#' + width;
+        Integer id = prefixIds.get(internKey);
+        if (id == null) {
+            id = prefixes.size();
+            prefixIds.put(internKey, id);
+            prefixes.add(name);
+            widths.add(width);
+        }
+        int value = numbered ? Integer.parseInt(digits) : -1;
+        return ((long) (id + 1) << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private int documentId(String docName) {
+        Integer id = documentIds.get(docName);
+        if (id == null) {
+            id = documents.size();
+            documentIds.put(docName, id);
+            documents.add(docName);
+        }
+        return id;
+    }
+
+    private void grow() {
+        int length = prefix.length * 2;
+        prefix = Arrays.copyOf(prefix, length);
+        number = Arrays.copyOf(number, length);
+        document = Arrays.copyOf(document, length);
+        line = Arrays.copyOf(line, length);
+        page = Arrays.copyOf(page, length);
+        text = Arrays.copyOf(text, length);
+    }
+}
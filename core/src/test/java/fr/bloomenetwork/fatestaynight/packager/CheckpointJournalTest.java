@@ -0,0 +1,52 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+
+class CheckpointJournalTest {
+
+	@Test
+	public void testResume() throws Exception {
+		Path output = Files.createTempDirectory("fsn-output");
+		Path path = output.resolveSibling(output.getFileName() + ".tsv");
+		byte[] content = "*page0|\n".getBytes(StandardCharsets.UTF_8);
+		Files.write(output.resolve("a.ks"), content);
+
+		try (CheckpointJournal journal = CheckpointJournal.open(path, output, "1.0")) {
+			journal.exported("a", "3", "Doc A", 1234);
+			journal.written("a", "3", "Doc A", "a.ks", content);
+			journal.exported("b", "7", "Doc B", 99);
+			journal.failed("b", "7", "Doc B", Stage.LINT);
+		}
+		//ligne tronquée par un arrêt brutal
+		Files.write(path, "c\t1\tEXP".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+		try (CheckpointJournal journal = CheckpointJournal.open(path, output, "1.0")) {
+			assertTrue(journal.isUpToDate("a", "3"));
+			assertFalse(journal.isUpToDate("a", "4"), "nouvelle version Drive");
+			assertTrue(journal.shouldProcess("b", "7", CheckpointJournal.Mode.RESUME));
+			assertTrue(journal.shouldProcess("b", "7", CheckpointJournal.Mode.RETRY_FAILURES));
+			assertFalse(journal.shouldProcess("a", "3", CheckpointJournal.Mode.RETRY_FAILURES));
+			assertTrue(journal.shouldProcess("c", "1", CheckpointJournal.Mode.RESUME));
+			assertEquals(Stage.LINT, journal.last("b").stage);
+			assertEquals(1234, journal.lastExportSize("a"));
+			assertEquals(-1, journal.lastExportSize("c"));
+		}
+
+		//fichier modifié à la main ou version du programme différente
+		Files.write(output.resolve("a.ks"), "autre".getBytes(StandardCharsets.UTF_8));
+		try (CheckpointJournal journal = CheckpointJournal.open(path, output, "1.0")) {
+			assertFalse(journal.isUpToDate("a", "3"));
+		}
+		Files.write(output.resolve("a.ks"), content);
+		try (CheckpointJournal journal = CheckpointJournal.open(path, output, "1.1")) {
+			assertFalse(journal.isUpToDate("a", "3"));
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CorpusGeneratorTest {
+
+	private static List<String> lint(String text) throws Exception {
+		List<String> diagnostics = new ArrayList<>();
+		TextProcess.fixScenarioFile("test.ks", text, d -> diagnostics.add(d.getText()));
+		return diagnostics;
+	}
+
+	@Test
+	public void testDeterministic() {
+		CorpusGenerator generator = new CorpusGenerator(42);
+		String scenario = generator.scenario(7);
+		assertEquals(scenario, new CorpusGenerator(42).scenario(7));
+		assertEquals(generator.translation(3), new CorpusGenerator(42).translation(3));
+		assertFalse(scenario.equals(new CorpusGenerator(43).scenario(7)));
+		assertFalse(scenario.equals(generator.scenario(8)));
+		assertTrue(scenario.startsWith("*page0|\n@resetvoice route="));
+	}
+
+	@Test
+	public void testDocxRoundTrip() throws Exception {
+		String scenario = new CorpusGenerator(1).scenario(0);
+		assertEquals(scenario, Utils.docxToTxt(new ByteArrayInputStream(CorpusGenerator.docx(scenario))));
+	}
+
+	@Test
+	public void testErrorDensity() throws Exception {
+		CorpusGenerator generator = new CorpusGenerator(5);
+		generator.setErrorDensity(0);
+		for (int i = 0; i < 6; i++)
+			assertEquals(new ArrayList<>(), lint(generator.scenario(i)), "scénario " + i);
+
+		generator.setErrorDensity(0.2);
+		assertFalse(lint(generator.scenario(0)).isEmpty());
+	}
+}
@@ -0,0 +1,65 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CorpusSnapshotTest {
+
+	private static final String SCENARIO = "*page0|\n"
+			+ "  « Épée », dit Saber.[lr]\n"
+			+ "@jump storage=fin.ks\n";
+	private static final String TRANSLATION = "msgid \"Sword\"\nmsgstr \"Épée\"\n";
+
+	@Test
+	public void testWriteAndOpen() throws Exception {
+		Path folder = Files.createTempDirectory("snapshot");
+		Path file = folder.resolve("package.snapshot");
+		try {
+			Files.createDirectories(folder.resolve("ubw"));
+			Files.write(folder.resolve("ubw").resolve("a.ks"), SCENARIO.getBytes(StandardCharsets.UTF_8));
+			Files.write(folder.resolve("b.po"), TRANSLATION.getBytes(StandardCharsets.UTF_8));
+			Files.write(folder.resolve("notes.txt"), "ignoré".getBytes(StandardCharsets.UTF_8));
+
+			assertEquals(2, CorpusSnapshot.write(folder, file, Collections.singletonMap("ubw/a.ks", "42")));
+			CorpusSnapshot snapshot = CorpusSnapshot.open(file);
+			assertEquals(2, snapshot.size());
+			assertEquals(folder.toString().replace('\\', '/'), snapshot.folder());
+			assertEquals("b.po", snapshot.name(0));
+			assertEquals("ubw/a.ks", snapshot.name(1));
+			assertEquals(-1, snapshot.revision(0));
+			assertEquals(42, snapshot.revision(1));
+			assertEquals(TRANSLATION, snapshot.text(0).toString());
+
+			TextView text = snapshot.text(snapshot.indexOf("ubw/a.ks"));
+			assertEquals(SCENARIO, text.toString());
+			assertTrue(text.subSequence(8).startsWith("  « Épée »"));
+			assertEquals(PageCache.hash(SCENARIO, 0, SCENARIO.length()), snapshot.hash(1));
+			assertEquals(-1, snapshot.indexOf("c.ks"));
+
+			//même vérification que sur le String d'origine
+			assertEquals(TextProcess.fixScenarioFile("a.ks", SCENARIO, d -> {}),
+					TextProcess.fixScenarioFile("a.ks", text, d -> {}));
+
+			//l'index de recherche ne relit que les documents modifiés
+			SearchIndex index = new SearchIndex();
+			assertEquals(2, index.updateSnapshot(snapshot));
+			assertEquals(0, index.updateSnapshot(snapshot));
+			List<SearchIndex.Hit> hits = index.search("epee");
+			assertEquals(2, hits.size());
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(folder.resolve("ubw").resolve("a.ks"));
+			Files.deleteIfExists(folder.resolve("ubw"));
+			Files.deleteIfExists(folder.resolve("b.po"));
+			Files.deleteIfExists(folder.resolve("notes.txt"));
+			Files.deleteIfExists(folder);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000; i++)
+			histogram.record(i * 1000);
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1_000_000, histogram.getMaxNanos());
+		assertEquals(500_500, histogram.getMeanNanos(), 0.001);
+		//erreur relative bornée par la largeur des buckets
+		assertEquals(500_000, histogram.percentileNanos(50), 500_000 / 16.0);
+		assertEquals(990_000, histogram.percentileNanos(99), 990_000 / 16.0);
+		assertEquals(1_000_000, histogram.percentileNanos(100));
+	}
+
+	@Test
+	public void testBucketBounds() {
+		for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE / 2}) {
+			int index = LatencyHistogram.bucketIndex(value);
+			assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+			assertTrue(index == 0 || LatencyHistogram.bucketUpperBound(index - 1) < value);
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.percentileNanos(95));
+		assertEquals(0, histogram.getMeanNanos(), 0);
+	}
+}
@@ -0,0 +1,51 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LineCacheTest {
+
+	//lignes répétées, corrigées (alinéa, "...", apostrophes), et citation
+	//restée ouverte à la fin du fichier sur une ligne corrigée
+	private static final String SCENARIO = "*page0|\n"
+			+ "  « Bonjour », dit Saber...[lr]\n"
+			+ "   C'est l'heure.[lr]\n"
+			+ "@pg\n"
+			+ "*page1|\n"
+			+ "  « Bonjour », dit Saber...[lr]\n"
+			+ "   C'est l'heure.[lr]\n"
+			+ "@pg\n"
+			+ "*page2|\n"
+			+ "  « Il fait beau... dit-elle.[lr]\n";
+
+	@Test
+	public void testSameDiagnostics() throws Exception {
+		LineCache previous = TextProcess.lineCache();
+		try {
+			TextProcess.setLineCache(new LineCache(0));
+			List<String> expected = new ArrayList<>();
+			String fixed = TextProcess.fixScenarioFile("a.ks", SCENARIO, d -> expected.add(fields(d)));
+			assertTrue(expected.stream().anyMatch(d -> d.contains("citation non terminée")));
+
+			LineCache cache = new LineCache(1024);
+			TextProcess.setLineCache(cache);
+			for (int run = 0; run < 2; run++) {
+				List<String> diagnostics = new ArrayList<>();
+				assertEquals(fixed, TextProcess.fixScenarioFile("a.ks", SCENARIO, d -> diagnostics.add(fields(d))));
+				assertEquals(expected, diagnostics);
+			}
+			assertTrue(cache.getHits() > cache.getMisses());
+		} finally {
+			TextProcess.setLineCache(previous);
+		}
+	}
+
+	private static String fields(Diagnostic d) {
+		return String.join("|", d.fileName, Integer.toString(d.line), Integer.toString(d.page),
+				Integer.toString(d.column), d.message, d.extract, d.getText());
+	}
+}
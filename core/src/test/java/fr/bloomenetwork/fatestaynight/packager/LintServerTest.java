@@ -0,0 +1,169 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LintServerTest {
+
+	//Session en mémoire : les requêtes sont écrites dans un tube lu par
+	//serve(), les réponses rangées une par ligne dans une file
+	private static class Client {
+
+		final LintServer server = new LintServer(1);
+		final PipedWriter requests = new PipedWriter();
+		final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+		final Thread session;
+
+		Client() throws IOException {
+			BufferedReader in = new BufferedReader(new PipedReader(requests, 1 << 20));
+			Writer out = new Writer() {
+				private final StringBuilder line = new StringBuilder();
+
+				@Override
+				public void write(char[] buffer, int offset, int length) {
+					for (int i = offset; i < offset + length; i++) {
+						if (buffer[i] == '\n') {
+							responses.add(line.toString());
+							line.setLength(0);
+						} else
+							line.append(buffer[i]);
+					}
+				}
+
+				@Override
+				public void flush() {
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+			session = new Thread(() -> {
+				try {
+					server.serve(in, out);
+				} catch (IOException e) {
+					// tube fermé
+				}
+			});
+			session.start();
+		}
+
+		void send(String message) throws IOException {
+			requests.write(message + "\n");
+			requests.flush();
+		}
+
+		void lint(Object id, String uri, String text, boolean fix) throws IOException {
+			JsonWriter json = new JsonWriter(false);
+			json.beginObject();
+			json.name("jsonrpc").value("2.0");
+			if (id != null)
+				json.name("id").value(((Number) id).longValue());
+			json.name("method").value("lint");
+			json.name("params").beginObject();
+			json.name("uri").value(uri);
+			json.name("text").value(text);
+			json.name("fix").value(fix);
+			json.endObject();
+			json.endObject();
+			send(json.toString());
+		}
+
+		Map<?, ?> next() throws InterruptedException {
+			String response = responses.poll(10, TimeUnit.SECONDS);
+			assertNotNull(response);
+			return (Map<?, ?>) JsonReader.parse(response);
+		}
+
+		void close() throws Exception {
+			requests.close();
+			session.join(10_000);
+			server.close();
+		}
+	}
+
+	private static Object code(Map<?, ?> response) {
+		return ((Map<?, ?>) response.get("error")).get("code");
+	}
+
+	//Script assez long pour occuper le seul thread de vérification
+	private static String longScript() {
+		StringBuilder sb = new StringBuilder("*page0|\n");
+		for (int i = 0; i < 20000; i++)
+			sb.append("  Ligne ").append(i).append(", « Bonjour » dit Saber...[lr]\n");
+		return sb.toString();
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		Client client = new Client();
+		try {
+			client.send("{\"jsonrpc\":\"2.0\",\"id\":1,");
+			Map<?, ?> response = client.next();
+			assertNull(response.get("id"));
+			assertEquals((long) LintServer.PARSE_ERROR, code(response));
+
+			//imbrication trop profonde : erreur de lecture, la session continue
+			client.send("[".repeat(100_000) + "]".repeat(100_000));
+			assertEquals((long) LintServer.PARSE_ERROR, code(client.next()));
+
+			client.send("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"format\"}");
+			response = client.next();
+			assertEquals(2L, response.get("id"));
+			assertEquals((long) LintServer.METHOD_NOT_FOUND, code(response));
+
+			//notifications : aucune réponse, même en erreur ou annulées
+			client.send("{\"jsonrpc\":\"2.0\",\"method\":\"format\"}");
+			client.lint(null, "n.ks", longScript(), false);
+			client.lint(null, "n.ks", "*page0|\n  Texte.[lr]\n", false);
+			client.send("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"format\"}");
+			assertEquals(3L, client.next().get("id"));
+			assertNull(client.responses.poll(200, TimeUnit.MILLISECONDS));
+		} finally {
+			client.close();
+		}
+	}
+
+	@Test
+	public void testLint() throws Exception {
+		Client client = new Client();
+		try {
+			client.lint(1, "a.ks", "*page0|\n  « Bonjour », dit Saber...[lr]\n", true);
+			Map<?, ?> result = (Map<?, ?>) client.next().get("result");
+			assertEquals("a.ks", result.get("uri"));
+			assertTrue(((String) result.get("text")).contains("Saber…"));
+			assertFalse(((List<?>) result.get("diagnostics")).isEmpty());
+
+			//2 attend derrière 1 et est annulée par 3 (même uri) ; 4 par $/cancelRequest
+			client.lint(1, "long.ks", longScript(), false);
+			client.lint(2, "b.ks", "*page0|\n  Texte.[lr]\n", false);
+			client.lint(3, "b.ks", "*page0|\n  Texte modifié.[lr]\n", false);
+			client.lint(4, "c.ks", "*page0|\n  Texte.[lr]\n", false);
+			client.send("{\"jsonrpc\":\"2.0\",\"method\":\"$/cancelRequest\",\"params\":{\"id\":4}}");
+			Map<Object, Map<?, ?>> responses = new HashMap<>();
+			for (int i = 0; i < 4; i++) {
+				Map<?, ?> response = client.next();
+				responses.put(response.get("id"), response);
+			}
+			assertEquals((long) LintServer.REQUEST_CANCELLED, code(responses.get(2L)));
+			assertEquals((long) LintServer.REQUEST_CANCELLED, code(responses.get(4L)));
+			assertNotNull(responses.get(1L).get("result"));
+			assertNull(((Map<?, ?>) responses.get(3L).get("result")).get("text"));
+		} finally {
+			client.close();
+		}
+	}
+}
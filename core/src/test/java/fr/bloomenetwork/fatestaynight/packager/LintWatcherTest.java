@@ -0,0 +1,72 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LintWatcherTest {
+
+	private static final String CORRECT = "*page0|\n  « Bonjour », dit Saber.[lr]\n";
+	private static final String WRONG = "*page0|\n  « Bonjour », dit Saber...[lr]\n";
+
+	@Test
+	public void testWatch() throws Exception {
+		Path folder = Files.createTempDirectory("watch");
+		Path script = folder.resolve("a.ks");
+		Path other = folder.resolve("b.ks");
+		BlockingQueue<Map<Path, List<Diagnostic>>> checks = new LinkedBlockingQueue<>();
+		Thread thread = null;
+		try (LintWatcher watcher = new LintWatcher(folder)) {
+			Files.write(script, CORRECT.getBytes(StandardCharsets.UTF_8));
+			Files.write(other, CORRECT.getBytes(StandardCharsets.UTF_8));
+			watcher.setListener((changed, nanos) -> checks.add(changed));
+			watcher.start();
+			Map<Path, List<Diagnostic>> changed = checks.poll(10, TimeUnit.SECONDS);
+			assertEquals(2, changed.size());
+			assertTrue(changed.get(script).isEmpty());
+
+			thread = new Thread(() -> {
+				try {
+					watcher.run();
+				} catch (Exception e) {
+					// dossier supprimé
+				}
+			});
+			thread.start();
+
+			//fichier modifié : seul lui est revérifié
+			Files.write(script, WRONG.getBytes(StandardCharsets.UTF_8));
+			changed = checks.poll(10, TimeUnit.SECONDS);
+			assertEquals(1, changed.size());
+			assertEquals(1, changed.get(script).size());
+			assertEquals(1, watcher.totalDiagnostics());
+
+			//réenregistré sans modification : même empreinte, pas de vérification
+			Files.write(script, WRONG.getBytes(StandardCharsets.UTF_8));
+			assertNull(checks.poll(2, TimeUnit.SECONDS));
+
+			//fichier supprimé : ses diagnostics sont oubliés
+			Files.delete(script);
+			changed = checks.poll(10, TimeUnit.SECONDS);
+			assertEquals(1, changed.size());
+			assertTrue(changed.get(script).isEmpty());
+			assertEquals(1, watcher.fileCount());
+			assertEquals(0, watcher.totalDiagnostics());
+		} finally {
+			if (thread != null)
+				thread.join(10_000);
+			Files.deleteIfExists(script);
+			Files.deleteIfExists(other);
+			Files.deleteIfExists(folder);
+		}
+	}
+}
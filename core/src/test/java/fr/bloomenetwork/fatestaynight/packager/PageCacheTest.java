@@ -0,0 +1,77 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+class PageCacheTest {
+
+	private static final String SCRIPT = "﻿*page0|\n"
+			+ "  Texte d'introduction...[r]\n"
+			+ "@pg\n"
+			+ "*page1|\n"
+			+ "“Un dialogue qui continue\n"
+			+ "@pg\n"
+			+ "*page2|\n"
+			+ "   sur la page suivante.”\n"
+			+ "@pg\n";
+
+	//Texte corrigé suivi des diagnostics
+	private static String lint(String text) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append(TextProcess.fixScenarioFile("test.ks", text, d -> sb.append(d.getText()).append('\n')));
+		return sb.toString();
+	}
+
+	@Test
+	public void testSameResults() throws Exception {
+		String edited = SCRIPT.replace("Un dialogue", "Un autre dialogue");
+		String reopened = SCRIPT.replace("continue\n", "continue”\n");
+		String expected = lint(SCRIPT);
+		String expectedEdited = lint(edited);
+		String expectedReopened = lint(reopened);
+
+		PageCache cache = new PageCache();
+		TextProcess.setPageCache(cache);
+		try {
+			assertEquals(expected, lint(SCRIPT));
+			assertEquals(0, cache.getReused());
+			assertEquals(expected, lint(SCRIPT));
+			assertEquals(3, cache.getReused());
+
+			//seule la page modifiée est revérifiée
+			assertEquals(expectedEdited, lint(edited));
+			assertEquals(3 + 2, cache.getReused());
+			assertEquals(3 + 1, cache.getRelinted());
+
+			//le dialogue se termine sur la page 1 : la page 2 est revérifiée aussi
+			assertEquals(expectedReopened, lint(reopened));
+			assertEquals(5 + 1, cache.getReused());
+			assertEquals(4 + 2, cache.getRelinted());
+		} finally {
+			TextProcess.setPageCache(null);
+		}
+	}
+
+	@Test
+	public void testPersisted() throws Exception {
+		Path directory = Files.createTempDirectory("fsn-pages");
+		String expected = lint(SCRIPT);
+
+		TextProcess.setPageCache(new PageCache(directory));
+		try {
+			assertEquals(expected, lint(SCRIPT));
+
+			PageCache reopened = new PageCache(directory);
+			TextProcess.setPageCache(reopened);
+			assertEquals(expected, lint(SCRIPT));
+			assertEquals(3, reopened.getReused());
+			assertEquals(0, reopened.getRelinted());
+		} finally {
+			TextProcess.setPageCache(null);
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+	@Test
+	public void testCancelledWait() throws Exception {
+		//un jeton toutes les 500 ms, sans rafale
+		RateLimiter limiter = new RateLimiter(2, 1);
+		limiter.acquire();
+
+		//déjà annulé : aucun jeton réservé
+		assertFalse(limiter.acquire(() -> true));
+
+		//annulé pendant l'attente : abandonnée sans attendre le créneau
+		AtomicInteger checks = new AtomicInteger();
+		long start = System.nanoTime();
+		assertFalse(limiter.acquire(() -> checks.incrementAndGet() > 1));
+		assertTrue(System.nanoTime() - start < 400_000_000L);
+
+		//créneau rendu : le suivant n'attend que le premier intervalle
+		limiter.acquire();
+		assertTrue(System.nanoTime() - start < 800_000_000L);
+		assertTrue(limiter.acquire(() -> false));
+		assertTrue(System.nanoTime() - start >= 900_000_000L);
+	}
+}
@@ -0,0 +1,65 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ReportMergerTest {
+
+	private static Diagnostic diagnostic(String file, int line, int column) {
+		return new Diagnostic(file, line, 0, column, "", "", file + ":" + line + ":" + column);
+	}
+
+	@Test
+	public void testOrder() {
+		List<String> output = new ArrayList<>();
+		ReportMerger merger = new ReportMerger((message, level) -> output.add(message));
+		merger.expectRoute("ubw");
+		merger.expectRoute("fate");
+
+		merger.routeListed("ubw", Arrays.asList("u1"));
+		ReportMerger.Document u1 = merger.open("ubw", "u1");
+		u1.diagnostic(diagnostic("u1", 3, 0));
+		u1.close();
+		//la route fate, qui passe avant, n'est pas encore listée
+		assertTrue(output.isEmpty());
+
+		merger.routeListed("fate", Arrays.asList("f1", "f2", "f3"));
+		ReportMerger.Document f2 = merger.open("fate", "f2");
+		ReportMerger.Document f1 = merger.open("fate", "f1");
+		f2.diagnostic(diagnostic("f2", 9, 4));
+		f2.print("f2 invalide", Utils.ERROR);
+		f2.diagnostic(diagnostic("f2", 1, 7));
+		f2.diagnostic(diagnostic("f2", 1, 2));
+		f1.diagnostic(diagnostic("f1", 5, -1));
+		f2.close();
+		assertTrue(output.isEmpty());
+		f1.close();
+		//à ligne égale, ordre d'émission (colonnes relatives à l'extrait)
+		assertEquals(Arrays.asList("f1:5:-1", "f2:1:7", "f2:1:2", "f2:9:4", "f2 invalide"), output);
+
+		//f3 n'est jamais traité (arrêt) : la fin de la route débloque ubw
+		merger.routeDone("fate");
+		assertEquals("u1:3:0", output.get(output.size() - 1));
+		assertEquals(6, output.size());
+	}
+
+	@Test
+	public void testSameLine() {
+		List<String> output = new ArrayList<>();
+		ReportMerger merger = new ReportMerger((message, level) -> output.add(message));
+		merger.routeListed("fate", Arrays.asList("f1"));
+		ReportMerger.Document f1 = merger.open("fate", "f1");
+		//colonne dans un extrait de la ligne, puis toute la ligne (-1)
+		f1.diagnostic(diagnostic("f1", 4, 35));
+		f1.diagnostic(diagnostic("f1", 4, -1));
+		f1.diagnostic(diagnostic("f1", 2, 10));
+		f1.diagnostic(diagnostic("f1", 4, 0));
+		f1.close();
+		assertEquals(Arrays.asList("f1:2:10", "f1:4:35", "f1:4:-1", "f1:4:0"), output);
+	}
+}
@@ -0,0 +1,68 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SearchIndexTest {
+
+	private static final String SCENARIO = "*page0|\n"
+			+ "@say storage=sab_01_001\n"
+			+ "  «Excalibur, la lame du Noble Phantasm.»[lr]\n"
+			+ "; Noble Phantasm en commentaire\n"
+			+ "  Son épée [ruby text=\"noble\"]brille.[lr]\n";
+	private static final String TRANSLATION = "#: Noble\n"
+			+ "msgid \"Noble Phantasm\"\n"
+			+ "msgstr \"Noble \\\"Phantasm\\\"\"\n";
+
+	@Test
+	public void testSearch() throws Exception {
+		SearchIndex index = new SearchIndex();
+		assertTrue(index.update("a.ks", SCENARIO));
+		assertTrue(index.update("b.po", TRANSLATION));
+		assertFalse(index.update("a.ks", SCENARIO));
+
+		List<SearchIndex.Hit> hits = index.search("noble phantasm");
+		assertEquals(3, hits.size());
+		assertEquals("a.ks:3:26", hits.get(0).toString());
+		assertEquals("b.po", hits.get(1).document);
+		assertEquals(1, hits.get(1).line);
+		assertEquals(1, index.search("EPEE").size());
+		assertEquals(0, index.search("ruby").size());
+		assertEquals(0, index.search("sab").size());
+		assertEquals(0, index.search("lame noble").size());
+
+		//nouvelle version : l'ancienne n'est plus trouvée
+		assertTrue(index.update("a.ks", "*page0|\n  Plus de lame.[lr]\n"));
+		assertEquals(2, index.search("noble phantasm").size());
+		assertEquals(1, index.search("lame").size());
+	}
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		Path file = Files.createTempFile("search", ".idx");
+		try {
+			SearchIndex index = new SearchIndex();
+			index.update("a.ks", SCENARIO);
+			index.update("b.po", TRANSLATION);
+			index.update("a.ks", SCENARIO + "  Noble phantasm.[lr]\n");
+			index.save(file);
+
+			List<SearchIndex.Hit> hits = SearchIndex.search(file, "Noble Phantasm");
+			assertEquals(index.search("Noble Phantasm").toString(), hits.toString());
+			assertEquals(4, hits.size());
+			assertEquals(0, SearchIndex.search(file, "absent").size());
+
+			SearchIndex loaded = SearchIndex.load(file);
+			assertEquals(2, loaded.documentCount());
+			assertFalse(loaded.update("b.po", TRANSLATION));
+			assertEquals(hits.toString(), loaded.search("noble phantasm").toString());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
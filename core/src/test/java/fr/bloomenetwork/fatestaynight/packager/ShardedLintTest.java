@@ -0,0 +1,79 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class ShardedLintTest {
+
+	@Test
+	public void testSameOutput() throws Exception {
+		Path folder = Files.createTempDirectory("shards");
+		try {
+			List<String> args = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				Path route = folder.resolve(i % 2 == 0 ? "fate" : "ubw");
+				Files.createDirectories(route);
+				Path script = route.resolve("scene-0" + i + ".ks");
+				Files.write(script, ("*page0|\n  « Bonjour » , dit Saber...[lr]\n@jump storage=scene-0" + (i + 1)
+						+ ".ks target=*page0\n").getBytes(StandardCharsets.UTF_8));
+				Path translation = route.resolve("scene-0" + i + ".po");
+				Files.write(translation, ("msgid \"Sword\"\nmsgstr \"Épée " + (i % 3) + "\"\n")
+						.getBytes(StandardCharsets.UTF_8));
+				args.add(script.toString());
+				args.add(translation.toString());
+			}
+			Path dir = folder.resolve("results");
+
+			String expected = run(args);
+			assertTrue(expected.contains("scene-06.ks"));
+
+			//parts vérifiées séparément (comme sur d'autres machines), puis fusionnées
+			List<Lint.Document> documents = new ArrayList<>();
+			for (String file : args)
+				documents.add(new Lint.Document(Paths.get(file)));
+			for (boolean byRoute : new boolean[] {false, true}) {
+				for (int shard = 1; shard <= 3; shard++)
+					assertEquals(Lint.EXIT_OK, ShardedLint.work(documents, shard, 3, byRoute, dir, null));
+				List<String> merge = new ArrayList<>(args);
+				merge.addAll(List.of("--shards", "3", "--merge", "--shard-dir", dir.toString()));
+				if (byRoute)
+					merge.add("--by-route");
+				assertEquals(expected, run(merge));
+				assertEquals(args.size(), Files.readAllLines(dir.resolve("manifest.tsv")).size());
+			}
+
+			//résultats d'une autre liste de fichiers
+			List<String> other = new ArrayList<>(args.subList(1, args.size()));
+			other.addAll(List.of("--shards", "3", "--merge", "--by-route", "--shard-dir", dir.toString()));
+			assertEquals(Lint.EXIT_ERROR, Lint.run(other.toArray(new String[0])));
+		} finally {
+			try (Stream<Path> walk = Files.walk(folder)) {
+				walk.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	//Sortie standard de Lint
+	private static String run(List<String> args) {
+		PrintStream out = System.out;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(bytes, true));
+		try {
+			assertEquals(Lint.EXIT_DIAGNOSTICS, Lint.run(args.toArray(new String[0])));
+		} finally {
+			System.setOut(out);
+		}
+		return bytes.toString();
+	}
+}
@@ -0,0 +1,73 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SymbolIndexTest {
+
+	private static final String FIRST = "﻿*page0|\n"
+			+ "  Texte.[lr]\n"
+			+ "@jump target=*page1\n"
+			+ "*page1|Suite\n"
+			+ "@call storage=\"b.ks\" target=*page2\n"
+			+ "  Retour. [link storage=b.ks target=*page9]Choix[endlink][lr]\n"
+			+ "@jump storage=c.ks\n"
+			+ "@jump storage=a target=*fin\n";
+	private static final String SECOND = "*page0|\n"
+			+ "*page2|\n"
+			+ "@return\n";
+
+	private static List<Diagnostic> resolve(SymbolIndex index) {
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		index.resolve(diagnostics::add);
+		return diagnostics;
+	}
+
+	@Test
+	public void testResolve() {
+		SymbolIndex index = new SymbolIndex();
+		index.addScenario("h/a.ks", "Document A", FIRST);
+		index.addScenario("b.ks", "Document B", SECOND);
+		assertEquals(2, index.fileCount());
+		assertEquals(5, index.referenceCount());
+
+		List<Diagnostic> diagnostics = resolve(index);
+		assertEquals(3, diagnostics.size());
+		assertEquals(5, diagnostics.get(0).line);
+		assertEquals(2, diagnostics.get(0).page);
+		assertEquals("Document A", diagnostics.get(0).fileName);
+		assertEquals("étiquette inexistante : *page9 dans b.ks", diagnostics.get(0).message);
+		assertEquals("fichier inexistant : c.ks", diagnostics.get(1).message);
+		assertEquals("étiquette inexistante : *fin", diagnostics.get(2).message);
+	}
+
+	@Test
+	public void testAddFolder() throws Exception {
+		Path folder = Files.createTempDirectory("symbols");
+		try {
+			Files.createDirectories(folder.resolve("h"));
+			Files.write(folder.resolve("h/c.ks"), "*page0|\n@jump storage=d.ks target=*page0\n".getBytes("UTF-8"));
+			Files.write(folder.resolve("d.ks"), "*page0|\n".getBytes("UTF-8"));
+
+			SymbolIndex index = new SymbolIndex();
+			index.addScenario("a.ks", "a.ks", "*page0|\n@jump storage=c.ks target=*page0\n@jump storage=e.ks\n");
+			assertEquals(2, index.addFolder(folder));
+			assertEquals(0, index.addFolder(folder));
+			List<Diagnostic> diagnostics = resolve(index);
+			assertEquals(1, diagnostics.size());
+			assertEquals("fichier inexistant : e.ks", diagnostics.get(0).message);
+			assertEquals(3, index.fileCount());
+		} finally {
+			Files.deleteIfExists(folder.resolve("h/c.ks"));
+			Files.deleteIfExists(folder.resolve("h"));
+			Files.deleteIfExists(folder.resolve("d.ks"));
+			Files.deleteIfExists(folder);
+		}
+	}
+}
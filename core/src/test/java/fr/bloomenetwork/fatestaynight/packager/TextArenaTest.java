@@ -0,0 +1,59 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TextArenaTest {
+
+	private static final String SCRIPT = "﻿*page0|\r\n"
+			+ "  Il dit: \"Bonjour...\"[lr]\r\n"
+			+ "@say storage=sab_01_001\n"
+			+ "\n"
+			+ "  Fin.[lr]\n";
+
+	@Test
+	public void testLines() {
+		TextArena arena = new TextArena();
+		int id = arena.put("a.ks", SCRIPT);
+		arena.put("b.ks", "une\rdeux");
+		assertEquals(SCRIPT, arena.text(id).toString());
+		assertEquals(SCRIPT.lines().count(), arena.lineCount(id));
+		for (int i = 0; i < arena.lineCount(id); i++)
+			assertEquals(SCRIPT.lines().skip(i).findFirst().get(), arena.line(id, i).toString());
+		assertEquals("deux", arena.line(arena.id("b.ks"), 1).toString());
+
+		TextView line = arena.line(id, 1);
+		assertTrue(line.startsWith("  Il"));
+		assertEquals(9, line.indexOf(':') + 1);
+		assertEquals(-1, line.indexOf("Fin"));
+		assertEquals("Il dit", line.subSequence(2, 8).toString());
+		assertEquals(line.toString().hashCode(), line.contentHash());
+
+		//remplacement et compactage : les vues déjà rendues restent valables
+		arena.put("a.ks", "*page0|\n");
+		arena.remove("b.ks");
+		assertEquals(SCRIPT.length() + "une\rdeux".length(), arena.garbageChars());
+		arena.compact();
+		assertEquals(0, arena.garbageChars());
+		assertEquals(1, arena.documentCount());
+		assertEquals(-1, arena.id("b.ks"));
+		assertEquals("*page0|", arena.line(id, 0).toString());
+		assertEquals("  Il dit: \"Bonjour...\"[lr]", line.toString());
+	}
+
+	@Test
+	public void testFixScenarioFile() throws Exception {
+		TextArena arena = new TextArena();
+		arena.put("a.ks", SCRIPT);
+		List<String> expected = new ArrayList<>();
+		List<String> actual = new ArrayList<>();
+		String fixed = TextProcess.fixScenarioFile("a.ks", SCRIPT, d -> expected.add(d.getText()));
+		assertEquals(fixed, TextProcess.fixScenarioFile("a.ks", arena.text("a.ks"), d -> actual.add(d.getText())));
+		assertEquals(expected, actual);
+		assertFalse(actual.isEmpty());
+	}
+}
@@ -0,0 +1,79 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TranslationMemoryTest {
+
+	private static final String FIRST = "msgid \"\"\n"
+			+ "msgstr \"\"\n"
+			+ "\"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+			+ "\n"
+			+ "#: menu.ks:3\n"
+			+ "msgid \"Start\"\n"
+			+ "msgstr \"Commencer\"\n"
+			+ "\n"
+			+ "#: menu.ks:4\n"
+			+ "msgctxt \"title\"\n"
+			+ "msgid \"Load\"\n"
+			+ "msgstr \"\"\n"
+			+ "\"Charger\"\n"
+			+ "\n"
+			+ "#: menu.ks:5\n"
+			+ "msgid \"Quit\"\n"
+			+ "msgstr \"\"\n";
+	private static final String SECOND = "#: config.ks:1\n"
+			+ "msgid \"Start\"\n"
+			+ "msgstr \"Démarrer\"\n"
+			+ "#: config.ks:2\n"
+			+ "msgctxt \"title\"\n"
+			+ "msgid \"Load\"\n"
+			+ "msgstr \"Charger\"\n"
+			+ "#: config.ks:3\n"
+			+ "msgid \"Load\"\n"
+			+ "msgstr \"Ouvrir\"\n";
+
+	@Test
+	public void testCheckAndCompendium() throws Exception {
+		Path folder = Files.createTempDirectory("translations");
+		Path compendium = folder.resolve("compendium.po");
+		try {
+			Files.write(folder.resolve("a.po"), FIRST.getBytes("UTF-8"));
+			Files.write(folder.resolve("b.po"), SECOND.getBytes("UTF-8"));
+
+			TranslationMemory memory = new TranslationMemory();
+			memory.addTranslation("a.po", folder.resolve("a.po"), FIRST);
+			assertEquals(1, memory.addFolder(folder));
+			assertEquals(0, memory.addFolder(folder));
+			//l'en-tête et "Quit", non traduit, ne comptent pas
+			assertEquals(5, memory.entryCount());
+
+			List<Diagnostic> diagnostics = new ArrayList<>();
+			assertEquals(1, memory.check(diagnostics::add));
+			assertEquals(3, memory.distinctCount());
+			assertEquals(1, memory.inconsistentCount());
+			assertEquals("b.po", diagnostics.get(0).fileName);
+			assertEquals(3, diagnostics.get(0).line);
+			assertEquals("traduction différente de celle de a.po:7", diagnostics.get(0).message);
+			assertEquals("msgstr \"Démarrer\"", diagnostics.get(0).extract);
+
+			assertEquals(3, memory.writeCompendium(compendium));
+			String text = new String(Files.readAllBytes(compendium), "UTF-8");
+			assertTrue(text.contains("msgstr \"Commencer\""));
+			assertFalse(text.contains("Démarrer"));
+			assertTrue(text.contains("msgctxt \"title\"\nmsgid \"Load\"\nmsgstr \"\"\n\"Charger\"\n"));
+			assertTrue(text.contains("msgid \"Load\"\nmsgstr \"Ouvrir\"\n"));
+		} finally {
+			Files.deleteIfExists(compendium);
+			Files.deleteIfExists(folder.resolve("a.po"));
+			Files.deleteIfExists(folder.resolve("b.po"));
+			Files.deleteIfExists(folder);
+		}
+	}
+}
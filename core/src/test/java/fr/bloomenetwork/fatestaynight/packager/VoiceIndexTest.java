@@ -0,0 +1,68 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class VoiceIndexTest {
+
+	private static final String FIRST = "*page0|\n"
+			+ "@say storage=sab_01_01_001\n"
+			+ "  “Shirō.”[lr]\n"
+			+ "@say storage=sab_01_01_002\n"
+			+ "  “Oui.”[lr]\n"
+			+ "*page1|\n"
+			+ "@say storage=sab_01_01_005\n"
+			+ "  “Non.”[lr]\n";
+	private static final String SECOND = "*page0|\n"
+			+ "@say storage=sab_01_01_002 time=100\n"
+			+ "  “Encore.”[lr]\n"
+			+ "@say storage=rin_01_01_01\n"
+			+ "  “Archer.”[lr]\n";
+
+	private static List<Diagnostic> check(SymbolIndex index) {
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		index.voices().check(diagnostics::add);
+		return diagnostics;
+	}
+
+	@Test
+	public void testCheck() {
+		SymbolIndex index = new SymbolIndex();
+		index.addScenario("b.ks", "B", SECOND);
+		index.addScenario("a.ks", "A", FIRST);
+		assertEquals(5, index.voices().voiceCount());
+
+		List<Diagnostic> diagnostics = check(index);
+		assertEquals(2, diagnostics.size());
+		assertEquals("A", diagnostics.get(0).fileName);
+		assertEquals(6, diagnostics.get(0).line);
+		assertEquals(2, diagnostics.get(0).page);
+		assertEquals("numérotation des voix : sab_01_01_003 à sab_01_01_004 manquante(s)", diagnostics.get(0).message);
+		assertEquals("B", diagnostics.get(1).fileName);
+		assertEquals("voix déjà utilisée : sab_01_01_002 (A, ligne 3)", diagnostics.get(1).message);
+	}
+
+	@Test
+	public void testArchive() throws Exception {
+		Path list = Files.createTempFile("voices", ".txt");
+		try {
+			Files.write(list, "sab_01_01_001.ogg\nsab_01_01_002.ogg\nsab_01_01_005.ogg\nrin_01_01_1.ogg\n".getBytes("UTF-8"));
+			SymbolIndex index = new SymbolIndex();
+			index.addScenario("b.ks", "B", SECOND);
+			index.voices().loadArchive(list);
+			assertEquals(4, index.voices().archiveSize());
+
+			List<Diagnostic> diagnostics = check(index);
+			assertEquals(1, diagnostics.size());
+			assertEquals("voix absente de l'archive : rin_01_01_01", diagnostics.get(0).message);
+		} finally {
+			Files.deleteIfExists(list);
+		}
+	}
+}
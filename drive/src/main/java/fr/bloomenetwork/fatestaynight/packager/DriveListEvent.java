@@ -0,0 +1,29 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+//Événement Java Flight Recorder couvrant un listage de dossier Google Drive
+@Name("fr.bloomenetwork.fatestaynight.DriveList")
+@Label("Drive List")
+@Category({"FSN Packager", "Google Drive"})
+@Description("Listage du contenu d'un dossier Google Drive")
+@StackTrace(false)
+public class DriveListEvent extends Event {
+
+    @Label("Route")
+    public String route;
+
+    @Label("Folder Id")
+    public String folderId;
+
+    @Label("Query")
+    public String query;
+
+    @Label("Files")
+    public int files;
+}
@@ -0,0 +1,525 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+//Serveur HTTP local imitant la partie de l'API Google Drive v3 utilisée par
+//GoogleAPI : files.list (q, pageSize, pageToken) et files.export (docx ou
+//texte). Il sert un corpus généré (CorpusGenerator) ou un dossier de .docx,
+//sous un dossier racine « Fate Stay Night », et peut ajouter de la latence,
+//des refus pour dépassement de quota (403), des erreurs serveur (5xx) et des
+//exports tronqués, pour régler la concurrence et les reprises sans consommer
+//le quota Drive.
+//
+//GoogleAPI l'utilise quand -Dfsn.drive.rootUrl vaut l'adresse affichée au
+//démarrage (aucune authentification n'est alors demandée).
+public class FakeDriveServer implements AutoCloseable {
+
+    public static final String ROOT_FOLDER = "Fate Stay Night";
+    public static final String FOLDER = "application/vnd.google-apps.folder";
+    public static final String DOCUMENT = "application/vnd.google-apps.document";
+    public static final String DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+    //Tailles de page de files.list : par défaut et maximale, comme Drive
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String MODIFIED_TIME = "2020-01-01T00:00:00.000Z";
+    private static final Pattern EXPORT_PATH = Pattern.compile("/drive/v3/files/([^/]+)/export");
+    //Valeur entre apostrophes, \' et \\ étant échappés
+    private static final String QUOTED = "'((?:[^'\\\\]|\\\\.)*)'";
+    private static final Pattern PARENT_CLAUSE = Pattern.compile(QUOTED + "\\s+in\\s+parents");
+    private static final Pattern MIME_CLAUSE = Pattern.compile("mimeType\\s*=\\s*" + QUOTED);
+    private static final Pattern NAME_CLAUSE = Pattern.compile("name\\s*=\\s*" + QUOTED);
+
+    private static final String USAGE = String.join("\n",
+            "Usage : java -cp drive.jar fr.bloomenetwork.fatestaynight.packager.FakeDriveServer [options]",
+            "  --port N                  port d'écoute (0 : port libre, par défaut)",
+            "  --corpus DOSSIER          sert les .docx du dossier (sous-dossiers = dossiers Drive)",
+            "  --scale N, --seed N       sinon, corpus généré par CorpusGenerator (échelle 1, graine 1)",
+            "  --errors D                proportion de lignes avec une erreur dans le corpus généré",
+            "  --latency MÉDIANE:SIGMA   latence en ms, loi log-normale (0:0)",
+            "  --rate-limit P            proportion de réponses 403 userRateLimitExceeded",
+            "  --server-errors P         proportion de réponses 500/503",
+            "  --truncate P              proportion d'exports interrompus avant la fin",
+            "  --fault-seed N            graine des pannes (1)");
+
+    //Fichier ou dossier
+    private static class Node {
+        final String id;
+        final String name;
+        final String mimeType;
+        final String parent;
+        //export docx, produit à la demande ; null pour un dossier
+        final Supplier<byte[]> docx;
+        final AtomicLong version = new AtomicLong(1);
+
+        Node(String id, String name, String mimeType, String parent, Supplier<byte[]> docx) {
+            this.id = id;
+            this.name = name;
+            this.mimeType = mimeType;
+            this.parent = parent;
+            this.docx = docx;
+        }
+    }
+
+    //Réponse d'erreur au format de Drive
+    private static class DriveError extends Exception {
+        final int code;
+        final String domain;
+        final String reason;
+
+        DriveError(int code, String domain, String reason, String message) {
+            super(message);
+            this.code = code;
+            this.domain = domain;
+            this.reason = reason;
+        }
+    }
+
+    //Fichiers dans l'ordre d'ajout, comme les réponses de Drive pour un même dossier
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<String, Node> byId = new ConcurrentHashMap<>();
+    private final Map<String, String> folderPaths = new HashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final String rootId;
+
+    //Pannes
+    private final Random random;
+    private volatile double latencyMedianMs = 0;
+    private volatile double latencySigma = 0;
+    private volatile double rateLimitRate = 0;
+    private volatile double serverErrorRate = 0;
+    private volatile double truncateRate = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong serverErrors = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+
+    private HttpServer server = null;
+    private ExecutorService executor = null;
+
+    //faultSeed : graine du tirage des pannes et de la latence
+    public FakeDriveServer(long faultSeed) {
+        this.random = new Random(faultSeed);
+        this.rootId = add(ROOT_FOLDER, FOLDER, "fsnroot", null).id;
+        folderPaths.put("", rootId);
+    }
+
+    public String getRootFolderId() {
+        return rootId;
+    }
+
+    //Latence de chaque requête, en ms : loi log-normale de médiane medianMs
+    //(sigma 0 : latence constante)
+    public void setLatency(double medianMs, double sigma) {
+        this.latencyMedianMs = medianMs;
+        this.latencySigma = sigma;
+    }
+
+    //Proportion des requêtes refusées par un 403 userRateLimitExceeded
+    public void setRateLimitRate(double rate) {
+        this.rateLimitRate = rate;
+    }
+
+    //Proportion des requêtes en échec (500 ou 503)
+    public void setServerErrorRate(double rate) {
+        this.serverErrorRate = rate;
+    }
+
+    //Proportion des exports dont la réponse s'arrête à mi-chemin
+    public void setTruncateRate(double rate) {
+        this.truncateRate = rate;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getServerErrors() {
+        return serverErrors.get();
+    }
+
+    public long getTruncated() {
+        return truncated.get();
+    }
+
+    //Dossier à partir de son chemin sous la racine ("Fate/Jour 01"), créé au besoin
+    public synchronized String folder(String path) {
+        String id = folderPaths.get(path);
+        if (id == null) {
+            int slash = path.lastIndexOf('/');
+            String parent = folder(slash == -1 ? "" : path.substring(0, slash));
+            id = add(path.substring(slash + 1), FOLDER, null, parent).id;
+            folderPaths.put(path, id);
+        }
+        return id;
+    }
+
+    //Ajoute un Google Doc, dont l'export docx est produit à la demande
+    public synchronized String addDocument(String folderPath, String name, Supplier<byte[]> docx) {
+        return add(name, DOCUMENT, null, folder(folderPath), docx).id;
+    }
+
+    //Corpus généré : scripts dans <route>/<jour>, traductions dans les scripts supplémentaires
+    public void addCorpus(CorpusGenerator generator, int scripts, int translations) {
+        for (int i = 0; i < scripts; i++) {
+            final int index = i;
+            addDocument(CorpusGenerator.routeFolder(i) + "/" + CorpusGenerator.dayFolder(i),
+                    CorpusGenerator.scenarioName(i), () -> docx(generator.scenario(index)));
+        }
+        for (int i = 0; i < translations; i++) {
+            final int index = i;
+            addDocument(PackagingRun.ROUTES[PackagingRun.ROUTES.length - 1], CorpusGenerator.translationName(i),
+                    () -> docx(generator.translation(index)));
+        }
+    }
+
+    //Fichiers .docx d'un dossier (par exemple docx/ de CorpusGenerator),
+    //ses sous-dossiers devenant des dossiers Drive
+    public void addDirectory(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(path -> path.getFileName().toString().endsWith(".docx")).sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            Path parent = directory.relativize(file).getParent();
+            String name = file.getFileName().toString();
+            addDocument(parent == null ? "" : parent.toString().replace('\\', '/'),
+                    name.substring(0, name.length() - ".docx".length()), () -> {
+                        try {
+                            return Files.readAllBytes(file);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        }
+    }
+
+    //Simule une modification du document : sa version change
+    public void touch(String id) {
+        byId.get(id).version.incrementAndGet();
+    }
+
+    private Node add(String name, String mimeType, String id, String parent) {
+        return add(name, mimeType, id, parent, null);
+    }
+
+    private synchronized Node add(String name, String mimeType, String id, String parent, Supplier<byte[]> docx) {
+        Node node = new Node(id != null ? id : String.format("fake%06d", nextId.incrementAndGet()),
+                name, mimeType, parent, docx);
+        nodes.add(node);
+        byId.put(node.id, node);
+        return node;
+    }
+
+    private static byte[] docx(String text) {
+        try {
+            return CorpusGenerator.docx(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Démarre le serveur sur 127.0.0.1 et retourne l'adresse à donner à GoogleAPI
+    public String start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        AtomicInteger threadNumber = new AtomicInteger();
+        //un thread par requête en cours : la latence simulée ne doit pas limiter la concurrence
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "fake-drive-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return getRootUrl();
+    }
+
+    public String getRootUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            delay();
+            injectFault();
+            Matcher matcher;
+            if (!"GET".equals(exchange.getRequestMethod()))
+                throw new DriveError(405, "global", "methodNotAllowed", "Method not allowed");
+            else if (path.equals("/drive/v3/files"))
+                list(exchange, params);
+            else if ((matcher = EXPORT_PATH.matcher(path)).matches())
+                export(exchange, matcher.group(1), params);
+            else
+                throw new DriveError(404, "global", "notFound", "Not Found");
+        } catch (DriveError e) {
+            sendError(exchange, e);
+        } catch (RuntimeException e) {
+            sendError(exchange, new DriveError(500, "global", "backendError", e.toString()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        double median = latencyMedianMs;
+        if (median <= 0)
+            return;
+        double gaussian;
+        synchronized (random) {
+            gaussian = random.nextGaussian();
+        }
+        Thread.sleep((long) (median * Math.exp(latencySigma * gaussian)));
+    }
+
+    private double draw() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private void injectFault() throws DriveError {
+        double draw = draw();
+        if (draw < rateLimitRate) {
+            rateLimited.incrementAndGet();
+            throw new DriveError(403, "usageLimits", "userRateLimitExceeded", "User Rate Limit Exceeded");
+        }
+        if (draw < rateLimitRate + serverErrorRate) {
+            serverErrors.incrementAndGet();
+            if (draw() < 0.5)
+                throw new DriveError(500, "global", "backendError", "Backend Error");
+            throw new DriveError(503, "global", "backendError", "Service Unavailable");
+        }
+    }
+
+    //files.list : seules les clauses « 'id' in parents », « mimeType = '…' »
+    //et « name = '…' » de q sont prises en compte, toujours combinées par and
+    private void list(HttpExchange exchange, Map<String, String> params) throws IOException, DriveError {
+        String q = params.getOrDefault("q", "");
+        String parent = clause(PARENT_CLAUSE, q);
+        String mimeType = clause(MIME_CLAUSE, q);
+        String name = clause(NAME_CLAUSE, q);
+        int pageSize = PAGE_SIZE;
+        int offset = 0;
+        try {
+            if (params.containsKey("pageSize"))
+                pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(params.get("pageSize"))));
+            if (params.containsKey("pageToken"))
+                offset = Integer.parseInt(params.get("pageToken"));
+        } catch (NumberFormatException e) {
+            throw new DriveError(400, "global", "invalid", "Invalid Value");
+        }
+
+        List<Node> matches = new ArrayList<>();
+        synchronized (this) {
+            for (Node node : nodes) {
+                if ((parent == null || parent.equals(node.parent))
+                        && (mimeType == null || mimeType.equals(node.mimeType))
+                        && (name == null || name.equals(node.name)))
+                    matches.add(node);
+            }
+        }
+
+        JsonWriter json = new JsonWriter(false).beginObject();
+        int end = Math.min(matches.size(), offset + pageSize);
+        if (end < matches.size())
+            json.name("nextPageToken").value(Integer.toString(end));
+        json.name("files").beginArray();
+        for (Node node : matches.subList(Math.min(offset, end), end)) {
+            json.beginObject()
+                .name("id").value(node.id)
+                .name("name").value(node.name)
+                .name("mimeType").value(node.mimeType)
+                //les entiers 64 bits sont des chaînes dans l'API Drive
+                .name("version").value(Long.toString(node.version.get()))
+                .name("quotaBytesUsed").value("0")
+                .name("modifiedTime").value(MODIFIED_TIME)
+                .endObject();
+        }
+        json.endArray().endObject();
+        send(exchange, 200, "application/json; charset=UTF-8", json.toString().getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    //files.export : docx, ou texte brut précédé d'un BOM comme le renvoie Drive
+    private void export(HttpExchange exchange, String id, Map<String, String> params) throws IOException, DriveError {
+        Node node = byId.get(id);
+        if (node == null)
+            throw new DriveError(404, "global", "notFound", "File not found: " + id + ".");
+        if (node.docx == null)
+            throw new DriveError(403, "global", "fileNotExportable", "Export only supports Docs Editors files.");
+        String mimeType = params.get("mimeType");
+        byte[] body;
+        if (DOCX.equals(mimeType)) {
+            body = node.docx.get();
+        } else if ("text/plain".equals(mimeType)) {
+            String text = Utils.docxToTxt(new ByteArrayInputStream(node.docx.get()));
+            body = ("\uFEFF" + text).getBytes(StandardCharsets.UTF_8);
+        } else {
+            throw new DriveError(400, "global", "badRequest", "The requested conversion is not supported.");
+        }
+        boolean truncate = draw() < truncateRate;
+        if (truncate)
+            truncated.incrementAndGet();
+        send(exchange, 200, mimeType, body, truncate);
+    }
+
+    private static String clause(Pattern pattern, String q) {
+        Matcher matcher = pattern.matcher(q);
+        return matcher.find() ? matcher.group(1).replaceAll("\\\\(.)", "$1") : null;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null)
+            return params;
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            try {
+                if (equals == -1)
+                    params.put(URLDecoder.decode(pair, "UTF-8"), "");
+                else
+                    params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            } catch (java.io.UnsupportedEncodingException e) {
+                throw new IllegalStateException(e); // UTF-8 est toujours disponible
+            }
+        }
+        return params;
+    }
+
+    private void sendError(HttpExchange exchange, DriveError error) throws IOException {
+        String json = new JsonWriter(false).beginObject()
+                .name("error").beginObject()
+                    .name("errors").beginArray().beginObject()
+                        .name("domain").value(error.domain)
+                        .name("reason").value(error.reason)
+                        .name("message").value(error.getMessage())
+                    .endObject().endArray()
+                    .name("code").value(error.code)
+                    .name("message").value(error.getMessage())
+                .endObject()
+                .endObject().toString();
+        send(exchange, error.code, "application/json; charset=UTF-8", json.getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    //Avec truncate, la longueur annoncée est complète mais seule la moitié du
+    //contenu est envoyée : le client reçoit une fin de flux prématurée
+    private static void send(HttpExchange exchange, int code, String contentType, byte[] body, boolean truncate)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, 0, truncate ? body.length / 2 : body.length);
+            out.flush();
+        }
+    }
+
+    public static void main(String[] args) {
+        int port = 0;
+        Path corpus = null;
+        double scale = 1;
+        long seed = 1;
+        double errors = 0.02;
+        long faultSeed = 1;
+        double[] latency = {0, 0};
+        double rateLimit = 0;
+        double serverErrors = 0;
+        double truncate = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port": port = Integer.parseInt(args[++i]); break;
+                    case "--corpus": corpus = Paths.get(args[++i]); break;
+                    case "--scale": scale = Double.parseDouble(args[++i]); break;
+                    case "--seed": seed = Long.parseLong(args[++i]); break;
+                    case "--errors": errors = Double.parseDouble(args[++i]); break;
+                    case "--latency": {
+                        String[] values = args[++i].split(":");
+                        latency[0] = Double.parseDouble(values[0]);
+                        latency[1] = values.length > 1 ? Double.parseDouble(values[1]) : 0;
+                        break;
+                    }
+                    case "--rate-limit": rateLimit = Double.parseDouble(args[++i]); break;
+                    case "--server-errors": serverErrors = Double.parseDouble(args[++i]); break;
+                    case "--truncate": truncate = Double.parseDouble(args[++i]); break;
+                    case "--fault-seed": faultSeed = Long.parseLong(args[++i]); break;
+                    default: throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        FakeDriveServer server = new FakeDriveServer(faultSeed);
+        server.setLatency(latency[0], latency[1]);
+        server.setRateLimitRate(rateLimit);
+        server.setServerErrorRate(serverErrors);
+        server.setTruncateRate(truncate);
+        try {
+            if (corpus != null) {
+                server.addDirectory(corpus);
+            } else {
+                CorpusGenerator generator = new CorpusGenerator(seed);
+                generator.setErrorDensity(errors);
+                server.addCorpus(generator, (int) Math.round(CorpusGenerator.BASE_SCRIPTS * scale),
+                        (int) Math.round(CorpusGenerator.BASE_TRANSLATIONS * scale));
+            }
+            String url = server.start(port);
+            System.out.println("Serveur Drive local : " + url);
+            System.out.println("Lancer le packager avec -Dfsn.drive.rootUrl=" + url);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(2);
+        }
+    }
+}
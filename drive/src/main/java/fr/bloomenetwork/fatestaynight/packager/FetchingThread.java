@@ -0,0 +1,502 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.api.services.drive.model.File;
+
+public class FetchingThread implements Runnable {
+
+	private GoogleAPI googleAPI;
+	private static final String FILTER_GDRIVE_FOLDER = " and mimeType = 'application/vnd.google-apps.folder'";
+	private static final String FILTER_GDRIVE_DOCUMENT = " and mimeType = 'application/vnd.google-apps.document'";
+	private static final String FILTER_GDRIVE_NAME = " and name = '%s'";
+	private static Pattern fcfPattern = Pattern.compile(".+\\.fcf");
+	private static Pattern dicPattern = Pattern.compile(".+\\.dic");
+	private static Pattern poPattern = Pattern.compile("msgid \"");
+	private static Pattern routePattern = Pattern.compile("@resetvoice route=(\\w+)( day=(\\d+))?( scene=(\\d+))?");
+	private static Pattern epiloguePattern = Pattern.compile("(\\w+)ep(\\d?)");
+	private static Pattern demoPattern = Pattern.compile("D[eé]mo\\s?-\\s?(\\w+)");
+
+    //Listes du nom des routes pour le nom des fichiers
+	private static final Map<String, String> routes = new HashMap<String, String>() {
+		{
+			put("saber" , "セイバー");
+			put("rin"   , "凛");
+			put("sakura", "桜");
+			put(null    , ""); // juste au cas où
+		}
+	};
+
+    private String outputFolder;
+    private ProgressBus progressBus;
+    private PipelineMetrics metrics;
+	private String folderToDownload;
+	//Vrai si la liste des documents de la route a pu être établie
+	private boolean listed = false;
+	//Journal de reprise, null si les documents ne sont pas journalisés
+	private CheckpointJournal journal = null;
+	private CheckpointJournal.Mode resumeMode = CheckpointJournal.Mode.FULL;
+	//Diagnostics et erreurs des documents, remis dans l'ordre du listage
+	private ReportMerger reports = new ReportMerger();
+	//Étiquettes et références des scripts écrits, null si elles ne sont pas vérifiées
+	private SymbolIndex symbols = null;
+	private TranslationMemory translations = null;
+	private SearchIndex search = null;
+
+	public FetchingThread(GoogleAPI googleAPI, ProgressBus progressBus, PipelineMetrics metrics, String folderToDownload) {
+		this.googleAPI = googleAPI;
+		this.outputFolder = "package";
+		this.progressBus = progressBus;
+		this.metrics = metrics;
+		this.folderToDownload = folderToDownload;
+		progressBus.registerRoute(folderToDownload);
+		reports.expectRoute(folderToDownload);
+	}
+
+	//Permet de définir le répertoire de sortie
+	public void setOutputFolder(String outputFolder) {
+		this.outputFolder = outputFolder;
+	}
+
+	public String getRoute() {
+		return folderToDownload;
+	}
+
+	public boolean isListed() {
+		return listed;
+	}
+
+	//Journalise les documents traités ; selon le mode, ceux déjà à jour
+	//(ou tous sauf les échecs) ne sont pas retéléchargés
+	public void setJournal(CheckpointJournal journal, CheckpointJournal.Mode resumeMode) {
+		this.journal = journal;
+		this.resumeMode = resumeMode;
+	}
+
+	//Rapport partagé entre les routes téléchargées ensemble, pour un journal
+	//trié par route puis par document
+	public void setReportMerger(ReportMerger reports) {
+		this.reports = reports;
+		reports.expectRoute(folderToDownload);
+	}
+
+	//Index partagé entre les routes, pour vérifier les @jump/@call entre scripts
+	public void setSymbolIndex(SymbolIndex symbols) {
+		this.symbols = symbols;
+	}
+
+	//Mémoire de traduction partagée entre les routes, pour comparer les .po entre eux
+	public void setTranslationMemory(TranslationMemory translations) {
+		this.translations = translations;
+	}
+
+	//Index plein texte partagé entre les routes, tenu à jour avec les fichiers écrits
+	public void setSearchIndex(SearchIndex search) {
+		this.search = search;
+	}
+
+	//Implémentation de l'interface Runnable
+	//Télécharge les scripts de la route les uns après les autres.
+	//Le PackagingScheduler utilise plutôt listDocuments() et processFile()
+	//pour répartir les documents de toutes les routes entre ses threads.
+	public void run() {
+		try {
+			for(File file : listDocuments())
+				processFile(file);
+		} finally {
+			finish(true);
+		}
+	}
+
+	//Signale la fin de la route, une fois tous ses documents traités
+	//ou le téléchargement interrompu (complete à false)
+	public void finish(boolean complete) {
+		reports.routeDone(folderToDownload);
+		progressBus.routeFinished(folderToDownload);
+		if (listed && complete)
+			Utils.print(folderToDownload + " entièrement téléchargé !");
+		else if (listed)
+			Utils.print(folderToDownload + " : téléchargement interrompu.");
+	}
+
+	//Document dont l'export Google Drive a été lancé à l'avance
+	public class Prefetch {
+
+		final File file;
+		final PipelineMetrics.DocumentTimer timer;
+		//null pour les fichiers ignorés, qui ne sont pas téléchargés
+		final CompletableFuture<byte[]> docx;
+
+		Prefetch(File file) {
+			this.file = file;
+			this.timer = metrics.startDocument(folderToDownload, file.getId(), file.getName());
+			if (isIgnored(file))
+				this.docx = CompletableFuture.completedFuture(null);
+			else
+				this.docx = googleAPI.getDocxBytesAsync(file.getId()).thenApply(bytes -> {
+					stageDone(timer, Stage.EXPORT, bytes.length);
+					if (journal != null)
+						journal.exported(file.getId(), versionOf(file), file.getName(), bytes.length);
+					return bytes;
+				});
+		}
+
+		public CompletableFuture<byte[]> getDocx() {
+			return docx;
+		}
+	}
+
+	//Lance l'export du document sur l'exécuteur d'entrées/sorties de GoogleAPI,
+	//le traitement se faisant ensuite avec processFile(Prefetch)
+	public Prefetch prefetch(File file) {
+		return new Prefetch(file);
+	}
+
+	//Abandonne les exports lancés par prefetch() qui n'ont pas encore commencé
+	public void cancelPrefetches() {
+		googleAPI.cancelPendingRequests();
+	}
+
+	//Télécharge un document et met à jour l'avancement
+	public void processFile(File file) {
+		PipelineMetrics.DocumentTimer timer = metrics.startDocument(folderToDownload, file.getId(), file.getName());
+		processFile(file, timer, null);
+	}
+
+	//Traite un document dont l'export a été lancé par prefetch()
+	public void processFile(Prefetch prefetch) {
+		processFile(prefetch.file, prefetch.timer, prefetch.docx);
+	}
+
+	private void processFile(File file, PipelineMetrics.DocumentTimer timer, CompletableFuture<byte[]> docx) {
+		boolean processed;
+		ReportMerger.Document report = reports.open(folderToDownload, file.getId());
+		try {
+			processed = processDocument(file, timer, docx, report);
+		} finally {
+			timer.finish();
+			report.close();
+		}
+		if (processed)
+			progressBus.documentDone(folderToDownload);
+		else
+			progressBus.documentFailed(folderToDownload);
+	}
+
+	//Liste les Google Docs de la route, triés par nom.
+	//Retourne une liste vide si le dossier de la route n'a pas été trouvé.
+	public List<File> listDocuments() {
+		List<File> files = listRouteDocuments();
+		List<String> keys = new ArrayList<>();
+		for (File file : files)
+			keys.add(file.getId());
+		reports.routeListed(folderToDownload, keys);
+		return files;
+	}
+
+	private List<File> listRouteDocuments() {
+
+		//Récupération du dossier racine grâce à son nom
+		String rootFolder = null;
+		try {
+			rootFolder = googleAPI.getFolderIdByName("Fate Stay Night");
+		} catch (Exception e1) {
+			Utils.print(e1.toString(), Utils.ERROR);
+			return new ArrayList<>();
+		}
+		if (rootFolder == null) {
+			Utils.print("Le répertoire de base n'a pas été trouvé.", Utils.ERROR);
+			return new ArrayList<>();
+		}
+
+		//On récupère les sous-dossiers, qui correspondent aux différentes routes
+		List<File> routeFolders = null;
+		try {
+			routeFolders = listSubFiles(rootFolder, FILTER_GDRIVE_FOLDER + String.format(FILTER_GDRIVE_NAME, folderToDownload));
+		} catch (IOException e1) {
+			Utils.print(e1.toString(), Utils.ERROR);
+			return new ArrayList<>();
+		}
+
+		//On récupère ensuite tous les Google Docs qui se trouvent dans les sous-dossiers,
+		//ceux correspondants aux jours, des dossiers des routes.
+		ArrayList<File> listGdocs = new ArrayList<>();
+
+		for(File routeFolder : routeFolders) {
+			try {
+				List<File> dayFolders = listSubFiles(routeFolder.getId(), FILTER_GDRIVE_FOLDER);
+				listGdocs.addAll(listSubFiles(routeFolder.getId(), FILTER_GDRIVE_DOCUMENT));
+				//Les dossiers des jours sont listés en parallèle
+				List<CompletableFuture<List<File>>> dayListings = new ArrayList<>();
+				for(File dayFolder : dayFolders) {
+					dayListings.add(listSubFilesAsync(dayFolder.getId(), FILTER_GDRIVE_DOCUMENT));
+				}
+				for(CompletableFuture<List<File>> dayListing : dayListings) {
+					listGdocs.addAll(await(dayListing));
+				}
+			} catch (Exception e1) {
+				Utils.print(e1.toString(), Utils.ERROR);
+			}
+		}
+		listGdocs.sort(new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				int byName = o1.getName().compareTo(o2.getName());
+				//documents homonymes : l'ordre ne doit pas dépendre de la réponse de Google Drive
+				return byName != 0 ? byName : o1.getId().compareTo(o2.getId());
+			}
+		});
+
+		if (journal != null && resumeMode != CheckpointJournal.Mode.FULL) {
+			int found = listGdocs.size();
+			listGdocs.removeIf(file -> !journal.shouldProcess(file.getId(), versionOf(file), resumeMode));
+			Utils.print(folderToDownload + " : " + (found - listGdocs.size()) + " fichiers ignorés ("
+					+ resumeMode + ").");
+		}
+
+		progressBus.documentsFound(folderToDownload, listGdocs.size());
+		Utils.print(folderToDownload + " : " + listGdocs.size() + " fichiers à télécharger.");
+		listed = true;
+		return listGdocs;
+	}
+
+	//Taille estimée du document pour l'ordonnancement : celle annoncée par
+	//Google Drive, à défaut celle du docx lors du précédent téléchargement
+	public long estimatedSize(File file) {
+		long size = PackagingScheduler.sizeOf(file);
+		if (size == 0 && journal != null)
+			size = Math.max(0, journal.lastExportSize(file.getId()));
+		return size;
+	}
+
+	//Version Drive du document, qui change à chaque modification
+	private static String versionOf(File file) {
+		if (file.getVersion() != null)
+			return file.getVersion().toString();
+		if (file.getModifiedTime() != null)
+			return file.getModifiedTime().toStringRfc3339();
+		return "";
+	}
+
+	//Listage d'un dossier Google Drive, chronométré
+	private List<File> listSubFiles(String id, String filter) throws IOException {
+		DriveListEvent event = new DriveListEvent();
+		event.begin();
+		long start = System.nanoTime();
+		return listingDone(event, start, id, filter, googleAPI.getSubFiles(id, filter));
+	}
+
+	private CompletableFuture<List<File>> listSubFilesAsync(String id, String filter) {
+		DriveListEvent event = new DriveListEvent();
+		event.begin();
+		long start = System.nanoTime();
+		return googleAPI.getSubFilesAsync(id, filter)
+				.thenApply(files -> listingDone(event, start, id, filter, files));
+	}
+
+	private List<File> listingDone(DriveListEvent event, long start, String id, String filter, List<File> files) {
+		metrics.record(Stage.LIST, System.nanoTime() - start, 0);
+		event.end();
+		if (event.shouldCommit()) {
+			event.route = folderToDownload;
+			event.folderId = id;
+			event.query = filter;
+			event.files = files.size();
+			event.commit();
+		}
+		progressBus.stageCompleted(folderToDownload, Stage.LIST, 0);
+		return files;
+	}
+
+	//Signale la fin d'une étape au chronomètre du document et au suivi de l'avancement
+	private void stageDone(PipelineMetrics.DocumentTimer timer, Stage stage, long bytes) {
+		stageDone(timer, stage, bytes, 0);
+	}
+
+	private void stageDone(PipelineMetrics.DocumentTimer timer, Stage stage, long bytes, int diagnostics) {
+		timer.stage(stage, bytes, diagnostics);
+		progressBus.stageCompleted(folderToDownload, stage, bytes);
+	}
+
+	private static boolean isIgnored(File file) {
+		return fcfPattern.matcher(file.getName()).find() || dicPattern.matcher(file.getName()).find();
+	}
+
+	//Attend le résultat d'une requête asynchrone, en relançant son exception d'origine
+	private static <T> T await(CompletableFuture<T> future) throws Exception {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	//Télécharge (si l'export n'a pas été lancé à l'avance), vérifie et écrit un Google Doc.
+	//Retourne false si le document n'a pas pu être traité.
+	private boolean processDocument(File file, PipelineMetrics.DocumentTimer timer, CompletableFuture<byte[]> prefetched,
+			ReportMerger.Document report) {
+		String content, filename = "";
+		Matcher matcher;
+
+		//On vérifie si c'est un fichier .fcf
+		matcher = fcfPattern.matcher(file.getName());
+		if (matcher.find()){
+			Utils.print("fichier FCF ignoré : " + file.getName());
+			written(file, "", null);
+			return true;
+		}
+		//On vérifie si c'est un fichier .dic
+		matcher = dicPattern.matcher(file.getName());
+		if (matcher.find()){
+			Utils.print("fichier DIC ignoré : " + file.getName());
+			written(file, "", null);
+			return true;
+		}
+		//Étape en cours, enregistrée dans le journal en cas d'échec
+		Stage stage = Stage.EXPORT;
+		try {
+			byte[] docx;
+			if (prefetched == null) {
+				docx = googleAPI.getDocxBytes(file.getId());
+				stageDone(timer, Stage.EXPORT, docx.length);
+				if (journal != null)
+					journal.exported(file.getId(), versionOf(file), file.getName(), docx.length);
+			} else {
+				docx = await(prefetched);
+				timer.mark();
+			}
+			stage = Stage.EXTRACT;
+			String xml = Utils.extractDocumentXml(new ByteArrayInputStream(docx));
+			stageDone(timer, Stage.EXTRACT, xml.length());
+			stage = Stage.CONVERT;
+			content = Utils.docxToTxt(xml);
+			stageDone(timer, Stage.CONVERT, content.length());
+			if (content.contains("*page0|")) {
+				// fichiers de scénario de la démo
+				if ((matcher = demoPattern.matcher(file.getName())).find(0)) {
+					String demo_num = matcher.group(1);
+					switch(demo_num)
+					{
+					case "1" : case "2" : case "3" :
+						filename = String.format("体験版プロローグ%s日目.ks", demo_num);
+						break;
+					case "Video" :
+						filename = "体験版ダイジェスト仮組04.ks";
+						break;
+					default :
+						report.print("Fichier " + file.getName() + " non supporté.", Utils.ERROR);
+					}						
+				}
+				//autres fichiers scenario
+				else if ((matcher = routePattern.matcher(content)).find()) {
+					String route, day, scene;
+					route = matcher.group(1);
+					day   = matcher.group(3);
+					scene = matcher.group(5);
+
+					matcher = epiloguePattern.matcher(route);
+					boolean epilogue = matcher.find();
+					if (epilogue) {
+						route = matcher.group(1);
+						scene = matcher.group(2);
+					}
+					boolean h = file.getName().contains("(H)");
+
+					if (epilogue) {
+						filename = String.format("%sエピローグ%s.ks", routes.get(route), scene);
+					} else {
+						switch(route) {
+						case "saber" : case "rin" : case "sakura" :
+							String japDay = Utils.numberToJapaneseString(Integer.parseInt(day));
+							String japRoute = routes.get(route);
+							filename = String.format("%s%sルート%s日目-%02d.ks", 
+								h ? "h/" : "", japRoute, japDay,
+								(h ? 100 : 0) + Integer.parseInt(scene));
+							break;
+						case "prologue" :
+							filename = String.format("プロローグ%s日目.ks", day);
+							break;
+						case "tigersp" :
+							filename = "タイガー道場すぺしゃる.ks";
+							break;
+						default :
+							report.print("Fichier scénario " + file.getName() + " non supporté.", Utils.ERROR);
+							filename = "";
+						}
+					}
+				}
+				else {
+					report.print("Fichier scénario " + file.getName() + " non supporté.", Utils.ERROR);
+				}
+			} else if ((matcher = poPattern.matcher(content)).find()) {
+				filename = file.getName() + ".po";
+			}
+			else {
+				report.print("Fichier " + file.getName() + " non supporté.", Utils.ERROR);
+			}
+
+			if (!filename.equals("")) {
+				//On écrit le docx
+				//Utils.print("\tTéléchargement du fichier docx et conversion.");
+				String path = outputFolder + "/" + filename;
+				timer.mark();
+				stage = Stage.LINT;
+				final FinalContainer<Integer> diagnostics = new FinalContainer<>(0);
+				content = Utils.lintContent(path, file.getName(), content, diagnostic -> {
+					diagnostics.set(diagnostics.get() + 1);
+					report.diagnostic(diagnostic);
+				});
+				stageDone(timer, Stage.LINT, content.length(), diagnostics.get());
+				stage = Stage.WRITE;
+				byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+				Utils.writeFile(path, bytes);
+				stageDone(timer, Stage.WRITE, bytes.length);
+				if (symbols != null && filename.endsWith(".ks"))
+					symbols.addScenario(filename, file.getName(), content);
+				if (translations != null && filename.endsWith(".po"))
+					translations.addTranslation(filename, Paths.get(path), content);
+				if (search != null)
+					search.update(path, content);
+				Utils.print("Fichier " + filename +" écrit  \t(" + file.getName() + ").");
+				written(file, filename, bytes);
+			} else {
+				written(file, "", null);
+			}
+		} catch (IOException e1) {
+			report.print("Erreur lors de l'écriture de " + filename + "(" + file.getName() + ").", Utils.ERROR);
+			failed(file, stage);
+			return false;
+		} catch (Exception e1) {
+			report.print("Fichier " + file.getName() + " invalide.", Utils.ERROR);
+			failed(file, stage);
+			return false;
+		}
+		return true;
+	}
+
+	//Enregistre dans le journal un document traité (output vide s'il a été ignoré)
+	private void written(File file, String output, byte[] content) {
+		if (journal != null)
+			journal.written(file.getId(), versionOf(file), file.getName(), output, content);
+	}
+
+	private void failed(File file, Stage stage) {
+		if (journal != null)
+			journal.failed(file.getId(), versionOf(file), file.getName(), stage);
+	}
+
+}
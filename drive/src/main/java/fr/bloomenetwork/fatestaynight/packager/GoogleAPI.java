@@ -0,0 +1,316 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.io.IOUtils;
+
+import com.google.api.client.auth.oauth2.AuthorizationCodeRequestUrl;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
+import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.store.FileDataStoreFactory;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.DriveScopes;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+
+public class GoogleAPI {
+	
+	private static final String APPLICATION_NAME = "Fate Stay Night Packager";
+    private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+    private static final String TOKENS_DIRECTORY_PATH = "tokens";
+    
+    private static final List<String> SCOPES = Collections.singletonList(DriveScopes.DRIVE);
+    private static final String CREDENTIALS_FILE_PATH = "/credentials.json";
+
+    //Requêtes par seconde autorisées vers Google Drive, et taille de rafale
+    private static final double REQUESTS_PER_SECOND = Double.parseDouble(System.getProperty("fsn.drive.requestsPerSecond", "10"));
+    private static final int REQUESTS_BURST = 10;
+    //Taille du pool d'entrées/sorties si les threads virtuels sont indisponibles
+    private static final int IO_THREADS = 8;
+    //Adresse de l'API à la place de celle de Google, par exemple celle d'un
+    //FakeDriveServer pour les tests de charge ; aucune authentification n'est alors demandée
+    private static final String ROOT_URL = System.getProperty("fsn.drive.rootUrl");
+    //Transport HTTPS partagé : sa création (chargement des certificats) est
+    //lancée en tâche de fond par warmUp() dès le démarrage
+    private static CompletableFuture<NetHttpTransport> trustedTransport = null;
+    
+    private Drive service;
+    //Les appels asynchrones s'exécutent chacun sur un thread virtuel (ou sur
+    //un pool borné), le nombre de requêtes simultanées étant limité par le
+    //débit autorisé et non par le nombre de threads
+    private final ExecutorService ioExecutor = IoExecutors.newIoExecutor(IO_THREADS);
+    private final RateLimiter rateLimiter = new RateLimiter(REQUESTS_PER_SECOND, REQUESTS_BURST);
+    //Incrémenté par cancelPendingRequests() pour abandonner les exports en attente
+    private final AtomicLong generation = new AtomicLong();
+    
+    public GoogleAPI() throws GeneralSecurityException, IOException {
+    	this(ROOT_URL);
+    }
+
+    //rootUrl : adresse de l'API ("http://127.0.0.1:8765/"), null pour Google Drive
+    public GoogleAPI(String rootUrl) throws GeneralSecurityException, IOException {
+    	initGoogleService(rootUrl);
+    	if (rootUrl != null)
+    		Utils.print("API Google Drive remplacée par " + rootUrl, Utils.DEBUG);
+    	Utils.print("Requêtes Google Drive sur " + (IoExecutors.isVirtual(ioExecutor) ? "threads virtuels" : IO_THREADS + " threads")
+    			+ ", " + REQUESTS_PER_SECOND + " requêtes/s au maximum.", Utils.DEBUG);
+    }
+	
+    //Prépare le transport HTTPS en tâche de fond, sans attendre la connexion
+    public static synchronized CompletableFuture<NetHttpTransport> warmUp() {
+    	//après un échec, une nouvelle tentative est faite à la connexion suivante
+    	if (trustedTransport == null || trustedTransport.isCompletedExceptionally()) {
+    		trustedTransport = new CompletableFuture<>();
+    		CompletableFuture<NetHttpTransport> future = trustedTransport;
+    		Thread thread = new Thread(() -> {
+    			try {
+    				future.complete(GoogleNetHttpTransport.newTrustedTransport());
+    			} catch (Throwable e) {
+    				future.completeExceptionally(e);
+    			}
+    		}, "drive-transport");
+    		thread.setDaemon(true);
+    		thread.start();
+    	}
+    	return trustedTransport;
+    }
+
+    //Connexion en tâche de fond : l'autorisation OAuth peut attendre
+    //l'utilisateur dans son navigateur pendant plusieurs minutes, elle ne doit
+    //pas bloquer l'interface. Le résultat n'est donné qu'une fois le client
+    //Google Drive prêt, ou en échec.
+    public static CompletableFuture<GoogleAPI> connect() {
+    	CompletableFuture<GoogleAPI> result = new CompletableFuture<>();
+    	Thread thread = new Thread(() -> {
+    		try {
+    			result.complete(new GoogleAPI());
+    		} catch (Throwable e) {
+    			result.completeExceptionally(e);
+    		}
+    	}, "drive-connect");
+    	thread.setDaemon(true);
+    	thread.start();
+    	return result;
+    }
+
+    private static NetHttpTransport trustedTransport() throws GeneralSecurityException, IOException {
+    	try {
+    		return warmUp().join();
+    	} catch (CompletionException e) {
+    		if (e.getCause() instanceof GeneralSecurityException)
+    			throw (GeneralSecurityException) e.getCause();
+    		if (e.getCause() instanceof IOException)
+    			throw (IOException) e.getCause();
+    		throw e;
+    	}
+    }
+
+    //Fonction donnée par la documentation de l'API
+	private static Credential getCredentials(final NetHttpTransport HTTP_TRANSPORT) throws IOException {
+        // Load client secrets.
+        InputStream in = GoogleAPI.class.getResourceAsStream(CREDENTIALS_FILE_PATH);
+        if (in == null) {
+            throw new FileNotFoundException("Resource not found: " + CREDENTIALS_FILE_PATH);
+        }
+        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, new InputStreamReader(in));
+
+        // Build flow and trigger user authorization request.
+        GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
+                HTTP_TRANSPORT, JSON_FACTORY, clientSecrets, SCOPES)
+                .setDataStoreFactory(new FileDataStoreFactory(new java.io.File(TOKENS_DIRECTORY_PATH)))
+                .setAccessType("offline")
+                .build();
+        LocalServerReceiver receiver = new LocalServerReceiver.Builder().setPort(8888).build();
+        if (!Boolean.getBoolean("java.awt.headless"))
+        	return new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
+        //Sans écran (Cli) : l'adresse est seulement affichée, sans passer par
+        //java.awt.Desktop pour ouvrir un navigateur
+        return new AuthorizationCodeInstalledApp(flow, receiver) {
+        	@Override
+        	protected void onAuthorization(AuthorizationCodeRequestUrl authorizationUrl) {
+        		Utils.print("Ouvrir cette adresse dans un navigateur pour autoriser l'accès à Google Drive :\n"
+        				+ authorizationUrl.build() + "\n");
+        	}
+        }.authorize("user");
+    }
+    
+	//Initialisation du service
+    private void initGoogleService(String rootUrl) throws GeneralSecurityException, IOException {
+    	if (rootUrl != null) {
+    		service = new Drive.Builder(new NetHttpTransport(), JSON_FACTORY, null)
+    				.setRootUrl(rootUrl)
+    				.setApplicationName(APPLICATION_NAME)
+    				.build();
+    		return;
+    	}
+    	// Build a new authorized API client service.
+    	final NetHttpTransport httpTransport = trustedTransport();
+        service = new Drive.Builder(httpTransport, JSON_FACTORY, getCredentials(httpTransport))
+                .setApplicationName(APPLICATION_NAME)
+                .build();
+    }
+    
+    //Donne la liste des sous-dossiers du dossier passé en paramètres
+    //L'option filter peut être utilisé pour passer d'autres paramètres
+    //La taille (size) sert à traiter les plus gros documents en premier,
+    //la version à savoir si un document a changé depuis le dernier téléchargement
+    public List<File> getSubFiles(String id, String filter) throws IOException {
+    	List<File> files = new ArrayList<>();
+    	String pageToken = null;
+    	do {
+    		acquire();
+    		FileList list = service.files().list()
+    				.setFields("nextPageToken, files(id, name, size, quotaBytesUsed, version, modifiedTime)")
+    				.setQ("'" + id + "' in parents " + filter)
+    				.setPageToken(pageToken)
+    				.execute();
+    		files.addAll(list.getFiles());
+    		pageToken = list.getNextPageToken();
+    	} while (pageToken != null);
+    	return files;
+    }
+
+    public CompletableFuture<List<File>> getSubFilesAsync(String id, String filter) {
+    	return async(() -> getSubFiles(id, filter));
+    }
+    
+    //Permet d'obtenir l'id d'un dossier à partir de son nom
+    //Le nom doit être unique, sinon on peut avoir un autre dossier
+    public String getFolderIdByName(String name) throws Exception {
+    	if(service == null) throw new Exception();
+    	String pageToken = null;
+    	do {
+		  acquire();
+		  FileList result = service.files().list()
+		      .setQ("name = '" + name + "'")
+		      .setSpaces("drive")
+		      .setFields("nextPageToken, files(id, name)")
+		      .setPageToken(pageToken)
+		      .execute();
+		  for (File file : result.getFiles()) {
+		    Utils.print("Répertoire " + name + " trouvé.\n");
+		    return file.getId();
+		  }
+		  pageToken = result.getNextPageToken();
+		} while (pageToken != null);
+    	
+    	return null;
+    }
+    
+    //Retourne le contenu d'un Google Doc sous la forme d'un String
+    //Utilisation de l'InputStream peut être un peu astucieuse
+    //Il vaut peut être mieux utiliser l'API Google Docs
+    public String getGdoc(String id) throws Exception {
+        if(service == null) throw new Exception();
+        acquire();
+        InputStream inputStream = service.files().export(id, "text/plain")
+            .executeMediaAsInputStream();
+
+        for (int i = 0; i < 3; i++) inputStream.read();
+
+        return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+    }
+    
+    public void downloadDocx(String id, String filename) throws Exception {
+    	if(service == null) throw new Exception();
+    	acquire();
+    	InputStream inputStream = service.files().export(id, "application/vnd.openxmlformats-officedocument.wordprocessingml.document")
+                .executeMediaAsInputStream();
+    	Utils.writeInputStreamToFile(inputStream, new java.io.File(filename+".docx"));
+    }
+    
+    public InputStream getDocx(String id) throws Exception {
+    	if(service == null) throw new Exception();
+    	acquire();
+    	return exportDocx(id);
+    }
+
+    //Télécharge entièrement le docx exporté
+    public byte[] getDocxBytes(String id) throws Exception {
+    	try (InputStream docxStream = getDocx(id)) {
+    		return IOUtils.toByteArray(docxStream);
+    	}
+    }
+
+    //Export asynchrone. S'il n'a pas encore commencé (en file ou en attente du
+    //limiteur de débit) lors d'un appel à cancelPendingRequests(), il échoue
+    //avec une CancellationException et son créneau est rendu au limiteur.
+    public CompletableFuture<byte[]> getDocxBytesAsync(String id) {
+    	final long submitted = generation.get();
+    	return async(() -> {
+    		if(service == null) throw new Exception();
+    		//CompletableFuture.cancel n'interrompt pas le thread : l'attente surveille la génération
+    		if (!acquire(() -> generation.get() != submitted) || generation.get() != submitted)
+    			throw new CancellationException("Export de " + id + " annulé");
+    		try (InputStream docxStream = exportDocx(id)) {
+    			return IOUtils.toByteArray(docxStream);
+    		}
+    	});
+    }
+
+    //Abandonne les exports asynchrones qui n'ont pas encore commencé
+    public void cancelPendingRequests() {
+    	generation.incrementAndGet();
+    }
+
+    private InputStream exportDocx(String id) throws IOException {
+    	return service.files().export(id, "application/vnd.openxmlformats-officedocument.wordprocessingml.document")
+                .executeMediaAsInputStream();
+    }
+
+    //Exécute la requête sur l'exécuteur d'entrées/sorties
+    private <T> CompletableFuture<T> async(Callable<T> request) {
+    	return CompletableFuture.supplyAsync(() -> {
+    		try {
+    			return request.call();
+    		} catch (Exception e) {
+    			throw new CompletionException(e);
+    		}
+    	}, ioExecutor);
+    }
+
+    //Attend que le limiteur de débit autorise une nouvelle requête
+    private void acquire() throws IOException {
+    	try {
+    		rateLimiter.acquire();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new InterruptedIOException("Requête Google Drive interrompue");
+    	}
+    }
+
+    //Comme acquire(), mais abandonne l'attente (false) dès que cancelled devient vrai
+    private boolean acquire(BooleanSupplier cancelled) throws IOException {
+    	try {
+    		return rateLimiter.acquire(cancelled);
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new InterruptedIOException("Requête Google Drive interrompue");
+    	}
+    }
+
+}
@@ -0,0 +1,271 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+//Un téléchargement complet : listage des routes, export, vérification et
+//écriture des documents, journal de reprise. Partagé entre l'interface
+//graphique (Main) et la ligne de commande (Cli), sans dépendance à Swing.
+public class PackagingRun {
+
+    //Dossiers Google Drive des routes à télécharger
+    public static final String[] ROUTES = {
+        "Fate",
+        "Unlimited Blade Works",
+        "Heavens Feel",
+        //"Statuts",
+        "Scripts supplémentaires"
+    };
+
+    //Archive des voix (dossier ou liste de noms de fichiers) pour vérifier les @say, null sinon
+    private static final String VOICES = System.getProperty("fsn.lint.voices");
+    //Compendium dédoublonné des traductions à écrire à la fin, null sinon
+    private static final String COMPENDIUM = System.getProperty("fsn.lint.compendium");
+
+    private final GoogleAPI googleAPI;
+    private final ProgressBus progressBus;
+    private final PipelineMetrics metrics;
+
+    //Paramètres
+    private String outputFolder = "package";
+    private int threads = PackagingScheduler.DEFAULT_THREADS;
+    private CheckpointJournal.Mode resumeMode = CheckpointJournal.Mode.RESUME;
+
+    private final List<FetchingThread> routes = new ArrayList<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private PackagingScheduler scheduler = null;
+    private CheckpointJournal journal = null;
+    //Étiquettes et références des scripts, vérifiées une fois tous les documents écrits
+    private final SymbolIndex symbols = new SymbolIndex();
+    //Traductions des .po, comparées entre elles une fois tous les documents écrits
+    private final TranslationMemory translations = new TranslationMemory();
+    //Index plein texte du paquet, relu au début et enregistré à la fin avec le journal
+    private SearchIndex search = null;
+    //Instantané du paquet écrit à la fin, relu par Lint, LintServer et SearchIndex
+    private CorpusSnapshot snapshot = null;
+    private Runnable onFinished = () -> {};
+
+    public PackagingRun(GoogleAPI googleAPI, ProgressBus progressBus, PipelineMetrics metrics) {
+        this.googleAPI = googleAPI;
+        this.progressBus = progressBus;
+        this.metrics = metrics;
+    }
+
+    public void setOutputFolder(String outputFolder) {
+        this.outputFolder = outputFolder;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setResumeMode(CheckpointJournal.Mode resumeMode) {
+        this.resumeMode = resumeMode;
+    }
+
+    //Action exécutée une fois toutes les routes terminées ou annulées
+    public void setOnFinished(Runnable onFinished) {
+        this.onFinished = onFinished;
+    }
+
+    //Lance le téléchargement des routes données (noms des dossiers Google Drive)
+    public void start(List<String> routeNames) throws IOException {
+        Path output = Paths.get(outputFolder);
+        if (!Files.isDirectory(output)) {
+            Utils.print("Répertoire \"" + outputFolder + "\" inexistant donc créé\n");
+            Files.createDirectories(output);
+        }
+        openJournal();
+        openSearchIndex();
+        //Résultats par page des vérifications précédentes, rangés avec le journal :
+        //un document modifié n'est revérifié que sur ses pages modifiées
+        if (TextProcess.pageCache() == null)
+            TextProcess.setPageCache(new PageCache(Paths.get("journal", "pages")));
+
+        // Tous les documents de toutes les routes sont répartis entre les threads du scheduler
+        scheduler = new PackagingScheduler(threads);
+        scheduler.setOnFinished(() -> {
+            checkCorpus();
+            writeSnapshot();
+            saveSearchIndex();
+            closeJournal();
+            finished.countDown();
+            onFinished.run();
+        });
+        //Les diagnostics de toutes les routes sont journalisés dans le même ordre à chaque exécution
+        ReportMerger reports = new ReportMerger();
+        for (String route : routeNames) {
+            FetchingThread fetchingThread = new FetchingThread(googleAPI, progressBus, metrics, route);
+            fetchingThread.setOutputFolder(outputFolder);
+            fetchingThread.setReportMerger(reports);
+            fetchingThread.setSymbolIndex(symbols);
+            fetchingThread.setTranslationMemory(translations);
+            if (search != null)
+                fetchingThread.setSearchIndex(search);
+            if (journal != null)
+                fetchingThread.setJournal(journal, resumeMode);
+            routes.add(fetchingThread);
+        }
+        scheduler.submitRoutes(routes);
+        progressBus.start();
+    }
+
+    //Arrête le téléchargement après les documents en cours
+    public void stop() {
+        if (scheduler != null)
+            scheduler.stop();
+    }
+
+    public boolean isStopped() {
+        return scheduler != null && scheduler.isStopped();
+    }
+
+    public void await() throws InterruptedException {
+        finished.await();
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    //Routes dont la liste des documents n'a pas pu être établie
+    public List<String> unlistedRoutes() {
+        List<String> result = new ArrayList<>();
+        for (FetchingThread route : routes) {
+            if (!route.isListed())
+                result.add(route.getRoute());
+        }
+        return result;
+    }
+
+    public ProgressBus getProgressBus() {
+        return progressBus;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    //Références entre scripts (@jump, @call…), voix (@say) et traductions de
+    //tout le corpus : les fichiers non retéléchargés sont lus dans le dossier de sortie.
+    //Rien n'est vérifié si le téléchargement a été interrompu, la plupart des
+    //fichiers manquant alors.
+    private void checkCorpus() {
+        if (isStopped())
+            return;
+        long start = System.nanoTime();
+        try {
+            symbols.addFolder(Paths.get(outputFolder));
+            int broken = symbols.resolve(TextProcess::printDiagnostic);
+            Utils.print(String.format("Références entre scripts : %d vérifiée(s) dans %d fichier(s), %d cassée(s) (%d ms).",
+                    symbols.referenceCount(), symbols.fileCount(), broken,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            start = System.nanoTime();
+            VoiceIndex voices = symbols.voices();
+            if (VOICES != null)
+                voices.loadArchive(Paths.get(VOICES));
+            int problems = voices.check(TextProcess::printDiagnostic);
+            Utils.print(String.format("Voix : %d vérifiée(s)%s, %d problème(s) (%d ms).", voices.voiceCount(),
+                    VOICES != null ? " avec " + voices.archiveSize() + " fichier(s) de l'archive" : "", problems,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        } catch (IOException e) {
+            Utils.print("Impossible de vérifier les références entre scripts : " + e, Utils.ERROR);
+        }
+        start = System.nanoTime();
+        try {
+            translations.addFolder(Paths.get(outputFolder));
+            int problems = translations.check(TextProcess::printDiagnostic);
+            Utils.print(String.format("Traductions : %d entrée(s), %d msgid différent(s), %d traduit(s) de plusieurs façons, %d différence(s) (%d ms).",
+                    translations.entryCount(), translations.distinctCount(), translations.inconsistentCount(), problems,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            if (COMPENDIUM != null) {
+                int entries = translations.writeCompendium(Paths.get(COMPENDIUM));
+                Utils.print("Compendium " + COMPENDIUM + " écrit (" + entries + " entrée(s)).");
+            }
+        } catch (IOException e) {
+            Utils.print("Impossible de comparer les traductions : " + e, Utils.ERROR);
+        }
+    }
+
+    //Le journal de reprise est rangé dans ./journal/ pour qu'il ne se
+    //retrouve pas dans le paquet
+    private void openJournal() {
+        Path output = Paths.get(outputFolder).toAbsolutePath().normalize();
+        Path path = Paths.get("journal", output.getFileName() + ".tsv");
+        try {
+            journal = CheckpointJournal.open(path, output, RunReport.version());
+        } catch (IOException e) {
+            journal = null;
+            Utils.print("Impossible d'ouvrir le journal de reprise : " + e, Utils.ERROR);
+        }
+    }
+
+    //Seuls les documents réécrits sont réindexés ; à la fin, l'index est
+    //complété avec les fichiers du dossier de sortie qu'il ne connaît pas encore
+    private void openSearchIndex() {
+        try {
+            search = SearchIndex.load(searchIndexPath());
+        } catch (IOException e) {
+            search = new SearchIndex();
+            Utils.print("Impossible de relire l'index de recherche, il sera reconstruit : " + e, Utils.ERROR);
+        }
+    }
+
+    private void saveSearchIndex() {
+        if (search == null)
+            return;
+        long start = System.nanoTime();
+        try {
+            if (snapshot != null)
+                search.updateSnapshot(snapshot);
+            else if (!isStopped())
+                search.updateFolder(Paths.get(outputFolder));
+            search.save(searchIndexPath());
+            Utils.print(String.format("Index de recherche : %d document(s) (%d ms).", search.documentCount(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)), Utils.DEBUG);
+        } catch (IOException e) {
+            Utils.print("Impossible d'enregistrer l'index de recherche : " + e, Utils.ERROR);
+        }
+    }
+
+    //Un seul fichier, avec la version Drive de chaque document d'après le journal.
+    //Pas d'instantané d'un téléchargement interrompu.
+    private void writeSnapshot() {
+        if (isStopped())
+            return;
+        long start = System.nanoTime();
+        Path output = Paths.get(outputFolder).toAbsolutePath().normalize();
+        Path path = Paths.get("journal", output.getFileName() + ".snapshot");
+        try {
+            int files = CorpusSnapshot.write(Paths.get(outputFolder), path,
+                    journal != null ? journal.outputVersions() : Collections.emptyMap());
+            snapshot = CorpusSnapshot.open(path);
+            Utils.print(String.format("Instantané %s : %d fichier(s) (%d ms).", path, files,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)), Utils.DEBUG);
+        } catch (IOException e) {
+            Utils.print("Impossible d'écrire l'instantané du paquet : " + e, Utils.ERROR);
+        }
+    }
+
+    private Path searchIndexPath() {
+        Path output = Paths.get(outputFolder).toAbsolutePath().normalize();
+        return Paths.get("journal", output.getFileName() + ".search");
+    }
+
+    private void closeJournal() {
+        if (journal == null)
+            return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            Utils.print("Impossible de fermer le journal de reprise : " + e, Utils.ERROR);
+        }
+    }
+}
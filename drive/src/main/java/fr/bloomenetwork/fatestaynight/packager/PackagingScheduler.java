@@ -0,0 +1,200 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.api.services.drive.model.File;
+
+//Répartit les documents de toutes les routes entre un nombre fixe de threads.
+//Les threads puisent dans une file commune triée par taille décroissante
+//(plus gros documents d'abord), pour qu'aucune route ne retarde la fin du
+//téléchargement pendant que les autres threads attendent.
+//Les exports Google Drive sont lancés à l'avance sur l'exécuteur
+//d'entrées/sorties de GoogleAPI (threads virtuels si disponibles) : les
+//threads du scheduler ne font que l'extraction, la vérification et l'écriture.
+public class PackagingScheduler {
+
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    //Tâche de la file : listage d'une route ou traitement d'un document
+    private abstract class Task implements Runnable, Comparable<Task> {
+
+        final FetchingThread route;
+        final long size;
+        final long sequence = sequenceCounter.getAndIncrement();
+
+        Task(FetchingThread route, long size) {
+            this.route = route;
+            this.size = size;
+        }
+
+        //Appelé à la place de run() si la tâche est annulée avant d'avoir démarré
+        abstract void cancel();
+
+        @Override
+        public int compareTo(Task other) {
+            if (size != other.size)
+                return Long.compare(other.size, size);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private class ListingTask extends Task {
+
+        ListingTask(FetchingThread route) {
+            super(route, Long.MAX_VALUE); // les listages passent avant les documents
+        }
+
+        @Override
+        public void run() {
+            List<File> files = new ArrayList<>(route.listDocuments());
+            AtomicInteger remaining = new AtomicInteger(files.size());
+            if (files.isEmpty() || stopped) {
+                routeDone(route);
+                return;
+            }
+            //Les exports démarrent du plus gros au plus petit document
+            files.sort(Comparator.comparingLong(route::estimatedSize).reversed());
+            for (File file : files) {
+                if (stopped) {
+                    documentEnded(route, remaining);
+                    continue;
+                }
+                FetchingThread.Prefetch prefetch = route.prefetch(file);
+                prefetch.getDocx().whenComplete((docx, error) ->
+                        execute(new DocumentTask(route, file, prefetch, remaining)));
+            }
+        }
+
+        @Override
+        void cancel() {
+            routeDone(route);
+        }
+    }
+
+    private class DocumentTask extends Task {
+
+        final FetchingThread.Prefetch prefetch;
+        //Documents de la route restant à traiter
+        final AtomicInteger remaining;
+
+        DocumentTask(FetchingThread route, File file, FetchingThread.Prefetch prefetch, AtomicInteger remaining) {
+            super(route, route.estimatedSize(file));
+            this.prefetch = prefetch;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!stopped)
+                    route.processFile(prefetch);
+            } finally {
+                cancel();
+            }
+        }
+
+        @Override
+        void cancel() {
+            documentEnded(route, remaining);
+        }
+    }
+
+    private final AtomicLong sequenceCounter = new AtomicLong();
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger activeRoutes = new AtomicInteger();
+    private final List<FetchingThread> routes = new CopyOnWriteArrayList<>();
+    private volatile boolean stopped = false;
+    private Runnable onFinished = () -> {};
+
+    public PackagingScheduler(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, queue,
+                r -> new Thread(r, "packager-" + threadNumber.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    //Action exécutée une fois toutes les routes terminées ou annulées
+    public void setOnFinished(Runnable onFinished) {
+        this.onFinished = onFinished;
+    }
+
+    //Ajoute les routes : leurs documents seront mis en file dès qu'elles auront
+    //été listées. Toutes sont comptées avant le premier listage, plus un jeton
+    //rendu à la fin de l'ajout : une route vide ou dont le listage échoue ne
+    //peut pas terminer le téléchargement avant que les suivantes soient ajoutées.
+    public void submitRoutes(List<FetchingThread> newRoutes) {
+        activeRoutes.addAndGet(newRoutes.size() + 1);
+        routes.addAll(newRoutes);
+        for (FetchingThread route : newRoutes)
+            execute(new ListingTask(route));
+        routeEnded();
+    }
+
+    //Arrête proprement : les documents en attente sont abandonnés,
+    //ceux en cours de traitement sont terminés
+    public void stop() {
+        if (stopped)
+            return;
+        stopped = true;
+        for (FetchingThread route : routes)
+            route.cancelPrefetches();
+        List<Runnable> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        Utils.print("Arrêt demandé : " + pending.size() + " tâches annulées, fin des documents en cours.");
+        for (Runnable task : pending)
+            ((Task) task).cancel();
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private void execute(Task task) {
+        if (stopped)
+            task.cancel();
+        else
+            executor.execute(task);
+    }
+
+    private void documentEnded(FetchingThread route, AtomicInteger remaining) {
+        if (remaining.decrementAndGet() == 0)
+            routeDone(route);
+    }
+
+    private void routeDone(FetchingThread route) {
+        route.finish(!stopped);
+        routeEnded();
+    }
+
+    private void routeEnded() {
+        if (activeRoutes.decrementAndGet() == 0) {
+            executor.shutdown();
+            onFinished.run();
+        }
+    }
+
+    //Taille annoncée par Google Drive, à défaut l'espace occupé.
+    //Les Google Docs natifs n'ont souvent ni l'un ni l'autre : la route
+    //se rabat alors sur la taille relevée dans le journal de reprise
+    //(FetchingThread.estimatedSize), sinon ils passent en dernier.
+    static long sizeOf(File file) {
+        if (file.getSize() != null)
+            return file.getSize();
+        if (file.getQuotaBytesUsed() != null)
+            return file.getQuotaBytesUsed();
+        return 0;
+    }
+}
@@ -0,0 +1,110 @@
+package fr.bloomenetwork.fatestaynight.packager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class FakeDriveServerTest {
+
+	private static String get(String url, int expectedCode) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		assertEquals(expectedCode, connection.getResponseCode());
+		try (InputStream in = expectedCode < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+			return new String(readAll(in), StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int len;
+		while ((len = in.read(buffer)) != -1)
+			out.write(buffer, 0, len);
+		return out.toByteArray();
+	}
+
+	private static String list(String rootUrl, String q, String extra) throws IOException {
+		return get(rootUrl + "drive/v3/files?q=" + URLEncoder.encode(q, "UTF-8") + extra, 200);
+	}
+
+	@Test
+	public void testListAndExport() throws Exception {
+		CorpusGenerator generator = new CorpusGenerator(3);
+		try (FakeDriveServer server = new FakeDriveServer(1)) {
+			server.addCorpus(generator, 9, 2);
+			String url = server.start(0);
+
+			assertTrue(list(url, "name = 'Fate Stay Night'", "").contains("\"id\":\"" + server.getRootFolderId() + "\""));
+			String fate = server.folder("Fate");
+			assertTrue(list(url, "'" + server.getRootFolderId() + "' in parents  and mimeType = '"
+					+ FakeDriveServer.FOLDER + "' and name = 'Fate'", "").contains("\"id\":\"" + fate + "\""));
+
+			//les trois scripts de Fate sont dans le dossier du jour 1, deux par page
+			String day = server.folder("Fate/Jour 01");
+			String q = "'" + day + "' in parents  and mimeType = '" + FakeDriveServer.DOCUMENT + "'";
+			String first = list(url, q, "&pageSize=2");
+			assertTrue(first.contains("\"nextPageToken\":\"2\""));
+			String last = list(url, q, "&pageSize=2&pageToken=2");
+			assertFalse(last.contains("nextPageToken"));
+			assertTrue(last.contains(CorpusGenerator.scenarioName(6)));
+
+			String id = server.addDocument("Fate/Jour 01", "Test", () -> {
+				try {
+					return CorpusGenerator.docx(generator.scenario(0));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			HttpURLConnection connection = (HttpURLConnection) new URL(url + "drive/v3/files/" + id
+					+ "/export?mimeType=" + URLEncoder.encode(FakeDriveServer.DOCX, "UTF-8")).openConnection();
+			try (InputStream in = connection.getInputStream()) {
+				assertEquals(generator.scenario(0), Utils.docxToTxt(new ByteArrayInputStream(readAll(in))));
+			}
+			assertTrue(get(url + "drive/v3/files/inconnu/export?mimeType=text/plain", 404).contains("notFound"));
+		}
+	}
+
+	@Test
+	public void testFaults() throws Exception {
+		try (FakeDriveServer server = new FakeDriveServer(1)) {
+			String id = server.addDocument("Fate", "Test", () -> new byte[10000]);
+			String url = server.start(0);
+			String export = url + "drive/v3/files/" + id + "/export?mimeType="
+					+ URLEncoder.encode(FakeDriveServer.DOCX, "UTF-8");
+
+			server.setRateLimitRate(1);
+			assertTrue(get(export, 403).contains("userRateLimitExceeded"));
+			assertEquals(1, server.getRateLimited());
+
+			server.setRateLimitRate(0);
+			server.setServerErrorRate(1);
+			HttpURLConnection connection = (HttpURLConnection) new URL(export).openConnection();
+			assertTrue(connection.getResponseCode() >= 500);
+			connection.getErrorStream().close();
+
+			server.setServerErrorRate(0);
+			server.setTruncateRate(1);
+			connection = (HttpURLConnection) new URL(export).openConnection();
+			assertEquals(10000, connection.getContentLengthLong());
+			//selon le client, fin de flux prématurée ou exception
+			int received;
+			try (InputStream in = connection.getInputStream()) {
+				received = readAll(in).length;
+			} catch (IOException e) {
+				received = 0;
+			}
+			assertTrue(received < 10000);
+			assertEquals(1, server.getTruncated());
+			assertEquals(3, server.getRequests());
+		}
+	}
+}